@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners(CatalogChangeListener.class)
 public class Author {
     @Id
     @GeneratedValue(strategy=GenerationType.AUTO)
@@ -0,0 +1,39 @@
+package bookstore.inventory;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+
+/**
+ * Controller for search box completions
+ * @author Maisha Abdullah
+ */
+@Controller
+public class AutocompleteController {
+
+    private final AutocompleteService autocompleteService;
+
+    /**
+     * Constructor for AutocompleteController
+     * @param autocompleteService completion service
+     * @author Maisha Abdullah
+     */
+    public AutocompleteController(AutocompleteService autocompleteService) {
+        this.autocompleteService = autocompleteService;
+    }
+
+    /**
+     * Get title and author completions for the search box
+     * @param prefix text typed so far
+     * @return completions as JSON
+     * @author Maisha Abdullah
+     */
+    @GetMapping("/autocomplete")
+    @ResponseBody
+    public List<AutocompleteIndex.Completion> autocomplete(@RequestParam(name = "prefix", required = false, defaultValue = "") String prefix) {
+        return autocompleteService.complete(prefix);
+    }
+}
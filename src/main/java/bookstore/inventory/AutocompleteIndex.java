@@ -0,0 +1,212 @@
+/**
+ * Prefix index of book titles and author names for search box completions.
+ * Word starts are kept as packed longs in one sorted array and found by binary search rather than in a trie or
+ * FST: the catalog has thousands of names, not millions, so the array costs 8 bytes a word against a node object
+ * per character, is built with one sort, and a lookup is a few string compares. It is rebuilt whole, only when
+ * a book or author changes, so a trie's cheap inserts wouldn't be used
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class AutocompleteIndex {
+
+    public static final String TITLE = "title";
+    public static final String AUTHOR = "author";
+
+    // how many matches to look at before picking the best ones to return
+    private static final int CANDIDATES_PER_COMPLETION = 4;
+
+    private final String[] values;
+    private final String[] types;
+    private final String[] normalizedValues;
+
+    // every word start of every value as (value << 32 | offset), sorted by the text from there to the end
+    private final long[] wordStarts;
+
+    /**
+     * Build the index from the titles and author names of the given books
+     * @param books books to index
+     * @author Maisha Abdullah
+     */
+    public AutocompleteIndex(Iterable<Book> books) {
+        Map<String, Completion> completions = new LinkedHashMap<>();
+        for (Book book : books) {
+            addCompletion(completions, book.getTitle(), TITLE);
+            for (Author author : book.getAuthor()) {
+                addCompletion(completions, author.getFirstName() + " " + author.getLastName(), AUTHOR);
+            }
+        }
+
+        int size = completions.size();
+        values = new String[size];
+        types = new String[size];
+        normalizedValues = new String[size];
+        List<Long> starts = new ArrayList<>();
+        int index = 0;
+        for (Completion completion : completions.values()) {
+            values[index] = completion.getText();
+            types[index] = completion.getType();
+            normalizedValues[index] = normalize(completion.getText());
+            String normalized = normalizedValues[index];
+            for (int offset = 0; offset < normalized.length(); offset++) {
+                boolean wordStart = Character.isLetterOrDigit(normalized.charAt(offset))
+                        && (offset == 0 || !Character.isLetterOrDigit(normalized.charAt(offset - 1)));
+                if (wordStart) {
+                    starts.add(((long) index << 32) | offset);
+                }
+            }
+            index++;
+        }
+
+        starts.sort(Comparator.comparing((Long start) -> suffix(start)));
+        wordStarts = new long[starts.size()];
+        for (int i = 0; i < wordStarts.length; i++) {
+            wordStarts[i] = starts.get(i);
+        }
+    }
+
+    /**
+     * Get the titles and author names with a word starting with the prefix
+     * @param prefix text typed so far
+     * @param limit maximum number of completions
+     * @return completions, those starting with the prefix first, then shorter ones first
+     * @author Maisha Abdullah
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        String normalizedPrefix = normalize(prefix);
+        List<Completion> completions = new ArrayList<>();
+        if (normalizedPrefix.isEmpty() || limit <= 0) {
+            return completions;
+        }
+
+        // word starts sharing the prefix are next to each other, find the first one
+        int low = 0;
+        int high = wordStarts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareSuffix(wordStarts[middle], normalizedPrefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        Set<Integer> matches = new LinkedHashSet<>();
+        Set<Integer> startMatches = new LinkedHashSet<>();
+        for (int i = low; i < wordStarts.length && matches.size() < limit * CANDIDATES_PER_COMPLETION; i++) {
+            int value = (int) (wordStarts[i] >>> 32);
+            int offset = (int) wordStarts[i];
+            if (!normalizedValues[value].startsWith(normalizedPrefix, offset)) {
+                break;
+            }
+            matches.add(value);
+            if (offset == 0) {
+                startMatches.add(value);
+            }
+        }
+
+        Integer[] ranked = matches.toArray(new Integer[0]);
+        Arrays.sort(ranked, Comparator.comparing((Integer value) -> !startMatches.contains(value))
+                .thenComparing(value -> values[value].length())
+                .thenComparing(value -> values[value]));
+        for (int i = 0; i < ranked.length && i < limit; i++) {
+            completions.add(new Completion(values[ranked[i]], types[ranked[i]]));
+        }
+        return completions;
+    }
+
+    /**
+     * Get the number of distinct titles and author names
+     * @return number of values
+     * @author Maisha Abdullah
+     */
+    public int size() {
+        return values.length;
+    }
+
+    private static void addCompletion(Map<String, Completion> completions, String text, String type) {
+        if (text != null && !normalize(text).isEmpty()) {
+            completions.putIfAbsent(type + ":" + normalize(text), new Completion(text.trim(), type));
+        }
+    }
+
+    private String suffix(long start) {
+        return normalizedValues[(int) (start >>> 32)].substring((int) start);
+    }
+
+    /**
+     * Compare the text from a word start with a prefix, without copying it
+     * @param start packed value and offset
+     * @param prefix normalized prefix
+     * @return negative, zero or positive as the text is before, starts with or is after the prefix
+     * @author Maisha Abdullah
+     */
+    private int compareSuffix(long start, String prefix) {
+        String value = normalizedValues[(int) (start >>> 32)];
+        int offset = (int) start;
+        int length = Math.min(value.length() - offset, prefix.length());
+        for (int i = 0; i < length; i++) {
+            int difference = value.charAt(offset + i) - prefix.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length == prefix.length() ? 0 : -1;
+    }
+
+    /**
+     * Lowercase text and collapse whitespace to single spaces
+     * @param text text to normalize
+     * @return normalized text
+     * @author Maisha Abdullah
+     */
+    static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * A title or author name suggested for the search box
+     */
+    public static class Completion {
+        private final String text;
+        private final String type;
+
+        /**
+         * Create a completion
+         * @param text text to fill in
+         * @param type either title or author
+         * @author Maisha Abdullah
+         */
+        public Completion(String text, String type) {
+            this.text = text;
+            this.type = type;
+        }
+
+        /**
+         * Get the text to fill in
+         * @return title or author name
+         * @author Maisha Abdullah
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Get what kind of value the completion is
+         * @return title or author
+         * @author Maisha Abdullah
+         */
+        public String getType() {
+            return type;
+        }
+    }
+}
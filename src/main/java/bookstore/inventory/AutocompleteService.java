@@ -0,0 +1,101 @@
+/**
+ * Serves search box completions, rebuilding the prefix index in the background when a book or author changes.
+ * Stock changes and orders don't touch titles or author names, so they leave the index alone
+ */
+
+package bookstore.inventory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class AutocompleteService {
+
+    private static final int MAX_COMPLETIONS = 10;
+    private static final Logger log = LoggerFactory.getLogger(AutocompleteService.class);
+
+    private final BookRepository bookRepository;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    private volatile AutocompleteIndex index;
+    private volatile long indexedVersion = -1;
+
+    /**
+     * Constructor for AutocompleteService
+     * @param bookRepository repository of books
+     * @author Maisha Abdullah
+     */
+    public AutocompleteService(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    /**
+     * Get completions for the text typed so far, served from the last index built
+     * @param prefix text typed so far
+     * @return titles and author names with a word starting with the prefix
+     * @author Maisha Abdullah
+     */
+    public List<AutocompleteIndex.Completion> complete(String prefix) {
+        if (indexedVersion != CatalogVersion.currentBookDetails()) {
+            requestRebuild();
+        }
+        AutocompleteIndex current = index;
+        if (current == null) {
+            return new ArrayList<>();
+        }
+        return current.complete(prefix, MAX_COMPLETIONS);
+    }
+
+    /**
+     * Build the first index once the sample books are in place
+     * @author Maisha Abdullah
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        requestRebuild();
+    }
+
+    /**
+     * Start a rebuild unless one is already running; a change during a rebuild triggers another one later
+     * @author Maisha Abdullah
+     */
+    private void requestRebuild() {
+        if (rebuilding.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                try {
+                    long version = CatalogVersion.currentBookDetails();
+                    index = new AutocompleteIndex(bookRepository.findAll());
+                    indexedVersion = version;
+                } catch (RuntimeException e) {
+                    log.error("Exception occurred while rebuilding autocomplete index: ", e);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the rebuild thread
+     * @author Maisha Abdullah
+     */
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+}
@@ -7,6 +7,12 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 @Entity
+@EntityListeners(CatalogChangeListener.class)
+@Table(indexes = {
+        // keyset paging seeks on (price, isbn) and (title, isbn), see InventoryItemRepository
+        @Index(name = "idx_book_price_isbn", columnList = "price, isbn"),
+        @Index(name = "idx_book_title_isbn", columnList = "title, isbn")
+})
 public class Book {
     @Id
     private String isbn = null;
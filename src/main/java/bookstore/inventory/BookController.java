@@ -47,6 +47,12 @@ public class BookController {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private CatalogIndex catalogIndex;
+
     /**
      * Handler method to display the form for uploading a new book
      * @param model
@@ -117,7 +123,12 @@ public class BookController {
 
         if (inventory != null) {
             inventory.addItemToInventory(inventoryItem);
-            inventoryRepository.save(inventory);
+            Inventory savedInventory = inventoryRepository.save(inventory);
+            stockLedger.forget(book.getIsbn()); // count from the new stock, even if the isbn was counted before
+            InventoryItem savedItem = savedInventory.findAvailableBook(book.getIsbn());
+            if (savedItem != null) {
+                catalogIndex.stockChanged(savedItem); // list the new book from the next request on
+            }
         }
 
         // Redirecting to homepage which should now include the new book
@@ -199,7 +210,12 @@ public class BookController {
             if (!inventoryItems.isEmpty()) {
                 InventoryItem inventoryItem = inventoryItems.get(0); // Get the first item
                 inventoryItem.setQuantity(quantity); // Update quantity
-                inventoryItemRepository.save(inventoryItem); // Save the updated item
+                InventoryItem savedItem = inventoryItemRepository.save(inventoryItem); // Save the updated item
+                stockLedger.forget(book.getIsbn()); // count from the new stock from now on
+
+                // the shared index serves the next requests, so give it the edited details and stock
+                catalogIndex.edited(savedItem);
+                catalogIndex.stockChanged(savedItem);
             }
             return "redirect:/viewBook?isbn=" + book.getIsbn();        }
         catch (Exception e){
@@ -0,0 +1,118 @@
+/**
+ * Order placed at checkout, keeping a copy of each cart line as it was bought
+ */
+
+package bookstore.inventory;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "book_order", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"userId", "confirmationNumber"}) // one order per checkout form of a user
+})
+public class BookOrder {
+
+    @Id
+    @GeneratedValue (strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // handed out with the checkout form and sent back with it, so a form submitted twice finds the same order
+    @Column(nullable = false)
+    private String confirmationNumber;
+    private Long userId;
+    private LocalDateTime placedAt;
+    private long totalCents;
+
+    @OneToMany(mappedBy = "bookOrder", cascade = CascadeType.ALL)
+    private List<OrderLine> lines = new ArrayList<>();
+
+    /**
+     * Default constructor
+     * @author Maisha Abdullah
+     */
+    public BookOrder() {
+    }
+
+    /**
+     * Constructor for BookOrder
+     * @param confirmationNumber confirmation number of the checkout
+     * @param userId id of the user placing the order
+     * @param placedAt when the order was placed
+     * @author Maisha Abdullah
+     */
+    public BookOrder(String confirmationNumber, Long userId, LocalDateTime placedAt) {
+        this.confirmationNumber = confirmationNumber;
+        this.userId = userId;
+        this.placedAt = placedAt;
+    }
+
+    /**
+     * Add a line for copies of a book, priced as it is now
+     * @param book the book
+     * @param quantity number of copies
+     * @author Maisha Abdullah
+     */
+    public void addLine(Book book, int quantity) {
+        OrderLine line = new OrderLine(this, book, quantity);
+        lines.add(line);
+        totalCents += line.getLineTotalCents();
+    }
+
+    /**
+     * Method to get the ID of the order
+     * @return the ID
+     * @author Maisha Abdullah
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Method to get the confirmation number of the order
+     * @return the confirmation number
+     * @author Maisha Abdullah
+     */
+    public String getConfirmationNumber() {
+        return confirmationNumber;
+    }
+
+    /**
+     * Method to get the ID of the user who placed the order
+     * @return the user ID
+     * @author Maisha Abdullah
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Method to get when the order was placed
+     * @return the time
+     * @author Maisha Abdullah
+     */
+    public LocalDateTime getPlacedAt() {
+        return placedAt;
+    }
+
+    /**
+     * Method to get the total price of the order in cents
+     * @return the total price in cents
+     * @author Maisha Abdullah
+     */
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    /**
+     * Method to get the lines of the order
+     * @return the lines
+     * @author Maisha Abdullah
+     */
+    public List<OrderLine> getLines() {
+        return lines;
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Repository for placed orders
+ * @author Maisha Abdullah
+ */
+package bookstore.inventory;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface BookOrderRepository extends CrudRepository<BookOrder, Long> {
+    // scoped to the user, a confirmation number sent by someone else never finds another user's order
+    BookOrder findByUserIdAndConfirmationNumber(Long userId, String confirmationNumber);
+}
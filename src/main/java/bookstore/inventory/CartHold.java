@@ -0,0 +1,84 @@
+/**
+ * Copies of a book a cart took from the stored stock, and when they go back unless bought. Written in the same
+ * transaction as the stock statements, while the cart line holding the copies is written behind, so after a
+ * restart the copies a cart took are known even if its line wasn't written. Copies given back leave the row at 0
+ * until checkout, so a line still showing them can be told apart from one that was never held.
+ */
+
+package bookstore.inventory;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"cartId", "isbn"}) // one row per book of a cart, the statements add to it
+})
+public class CartHold {
+
+    @Id
+    @GeneratedValue (strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long cartId;
+    private String isbn;
+    private int quantity;
+    private long heldUntil; // deadline of the newest copies, in epoch millis
+
+    /**
+     * Default constructor
+     * @author Maisha Abdullah
+     */
+    public CartHold() {
+    }
+
+    /**
+     * Constructor for CartHold
+     * @param cartId id of the cart
+     * @param isbn isbn of the book
+     * @param quantity number of copies held
+     * @param heldUntil deadline of the newest copies, in epoch millis
+     * @author Maisha Abdullah
+     */
+    public CartHold(Long cartId, String isbn, int quantity, long heldUntil) {
+        this.cartId = cartId;
+        this.isbn = isbn;
+        this.quantity = quantity;
+        this.heldUntil = heldUntil;
+    }
+
+    /**
+     * Get the id of the cart
+     * @return id of the cart
+     * @author Maisha Abdullah
+     */
+    public Long getCartId() {
+        return cartId;
+    }
+
+    /**
+     * Get the isbn of the book
+     * @return isbn of the book
+     * @author Maisha Abdullah
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Get the number of copies held
+     * @return number of copies, 0 once they were all given back
+     * @author Maisha Abdullah
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get when the newest copies go back unless bought
+     * @return deadline in epoch millis
+     * @author Maisha Abdullah
+     */
+    public long getHeldUntil() {
+        return heldUntil;
+    }
+}
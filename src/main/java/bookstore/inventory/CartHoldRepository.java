@@ -0,0 +1,29 @@
+/**
+ * Repository for the copies held by carts
+ * @author Maisha Abdullah
+ */
+package bookstore.inventory;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface CartHoldRepository extends CrudRepository<CartHold, Long> {
+
+    // hold statements, sent as batches by CartReservations in the transaction of the stock change
+    String HOLD = "UPDATE cart_hold SET quantity = quantity + :quantity, held_until = :heldUntil"
+            + " WHERE cart_id = :cartId AND isbn = :isbn";
+    String NEW_HOLD = "INSERT INTO cart_hold (cart_id, isbn, quantity, held_until) VALUES (:cartId, :isbn, :quantity, :heldUntil)";
+    String RELEASE = "UPDATE cart_hold SET quantity = GREATEST(quantity - :quantity, 0) WHERE cart_id = :cartId AND isbn = :isbn";
+
+    /**
+     * Delete the holds of a cart, e.g. once its copies were bought; must run in a transaction
+     * @param cartId id of the cart
+     * @return number of rows deleted
+     * @author Maisha Abdullah
+     */
+    @Modifying
+    @Query(value = "DELETE FROM cart_hold WHERE cart_id = :cartId", nativeQuery = true)
+    int deleteOfCart(@Param("cartId") long cartId);
+}
@@ -0,0 +1,455 @@
+/**
+ * Copies held by shopping carts, which go back to the inventory once they were held longer than the
+ * reservation time. Holds wait in a timer wheel, so a tick only looks at the holds that are due instead of
+ * scanning every cart. Every hold due in a tick goes back to the stored stock in one batch of statements by isbn,
+ * changing all of their carts in memory in the same update, so a batch that fails is simply tried again next tick.
+ * Holds live in the memory of the instance whose cart took the copies, and only carts that instance keeps in
+ * memory are reclaimed. The copies each cart holds are also stored as CartHold rows, written in the transaction
+ * of the stock change, while the cart lines are written behind. When the app starts, the stored carts are made to
+ * match their rows: copies that never reached a stored line go back to the stock, copies a line still shows after
+ * they went back are taken out of it, and the rest are held again until the deadline of their newest copies.
+ * With several app instances, each reclaims its own carts.
+ */
+
+package bookstore.inventory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class CartReservations {
+
+    private static final int WHEEL_SLOTS = 512;
+    private static final long TICK_MILLIS = 1000;
+    private static final int MAX_CARTS_PER_BATCH = 50; // same as the jdbc batch size
+    private static final Logger log = LoggerFactory.getLogger(CartReservations.class);
+
+    private final StockLedger stockLedger;
+    private final InventoryStock inventoryStock;
+    private final CartStore cartStore;
+    private final CartHoldRepository cartHoldRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CartTotalEvents cartTotalEvents;
+    private final long ttlMillis;
+
+    private final ExpiryWheel<Hold> wheel = new ExpiryWheel<>(WHEEL_SLOTS, TICK_MILLIS, System.currentTimeMillis());
+    // holds of each cart by isbn, newest last
+    private final Map<Long, Map<String, Deque<ExpiryWheel.Entry<Hold>>>> holdsByCart = new HashMap<>();
+    private final ScheduledExecutorService reclaimExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cart-reservations");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for CartReservations
+     * @param stockLedger copies left of each book, shared by all carts
+     * @param inventoryStock writes stock changes as atomic statements
+     * @param cartStore keeps carts in memory and writes them behind
+     * @param cartHoldRepository repository of the stored holds, read when the app starts
+     * @param jdbcTemplate sends the hold statements of a stock change as one batch
+     * @param cartTotalEvents pushes the new total of a cart after its copies were taken back
+     * @param ttl how long a cart holds a copy, e.g. 15m
+     * @author Maisha Abdullah
+     */
+    public CartReservations(StockLedger stockLedger, InventoryStock inventoryStock, CartStore cartStore,
+                            CartHoldRepository cartHoldRepository, NamedParameterJdbcTemplate jdbcTemplate,
+                            CartTotalEvents cartTotalEvents, @Value("${bookstore.cart.reservation-ttl:15m}") Duration ttl) {
+        this.stockLedger = stockLedger;
+        this.inventoryStock = inventoryStock;
+        this.cartStore = cartStore;
+        this.cartHoldRepository = cartHoldRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cartTotalEvents = cartTotalEvents;
+        this.ttlMillis = ttl.toMillis();
+        cartStore.keepWhile(this::holdsCopies); // reclaiming needs the cart in memory
+    }
+
+    /**
+     * Start timing copies a cart just took
+     * @param cartId id of the cart
+     * @param isbn isbn of the book
+     * @param quantity number of copies
+     * @author Maisha Abdullah
+     */
+    public synchronized void hold(Long cartId, String isbn, int quantity) {
+        if (cartId == null || quantity <= 0) {
+            return;
+        }
+        schedule(new Hold(cartId, isbn, quantity, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Store the copies a cart takes with one batch of statements; must run in the transaction taking them from
+     * the stored stock
+     * @param cartId id of the cart
+     * @param isbns isbns of the books taken, a book listed twice is held twice
+     * @param quantity number of copies of each
+     * @author Maisha Abdullah
+     */
+    public void store(Long cartId, List<String> isbns, int quantity) {
+        if (cartId == null || quantity <= 0 || isbns.isEmpty()) {
+            return;
+        }
+        long heldUntil = System.currentTimeMillis() + ttlMillis;
+        List<SqlParameterSource> holds = holdParameters(cartId, isbns, quantity, heldUntil);
+        int[] rows = jdbcTemplate.batchUpdate(CartHoldRepository.HOLD, holds.toArray(new SqlParameterSource[0]));
+        List<SqlParameterSource> newHolds = new ArrayList<>();
+        for (int i = 0; i < holds.size(); i++) {
+            if (rows[i] == 0) {
+                newHolds.add(holds.get(i)); // the cart's first copy of the book
+            }
+        }
+        if (!newHolds.isEmpty()) {
+            jdbcTemplate.batchUpdate(CartHoldRepository.NEW_HOLD, newHolds.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    /**
+     * Store that copies of a cart went back, with one batch of statements; must run in the transaction putting
+     * them back into the stored stock
+     * @param cartId id of the cart
+     * @param isbns isbns of the books put back, a book listed twice is put back twice
+     * @param quantity number of copies of each
+     * @author Maisha Abdullah
+     */
+    public void storeReleases(Long cartId, List<String> isbns, int quantity) {
+        if (cartId == null || quantity <= 0 || isbns.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(CartHoldRepository.RELEASE, holdParameters(cartId, isbns, quantity, 0).toArray(new SqlParameterSource[0]));
+    }
+
+    /**
+     * Make the stored carts holding copies match their stored holds and hold their copies again, e.g. after a
+     * restart: copies that never reached a stored line go back to the stock, copies a line still shows after
+     * they went back are taken out of it, and copies whose deadline passed go back on the next tick
+     * @return number of holds rebuilt
+     * @author Maisha Abdullah
+     */
+    public int restore() {
+        Map<Long, List<CartHold>> storedHolds = new LinkedHashMap<>();
+        for (CartHold cartHold : cartHoldRepository.findAll()) {
+            storedHolds.computeIfAbsent(cartHold.getCartId(), key -> new ArrayList<>()).add(cartHold);
+        }
+        List<ShoppingCart> carts = cartStore.restore(storedHolds.keySet());
+        if (carts.isEmpty()) {
+            return 0;
+        }
+
+        List<Hold> kept = new ArrayList<>();
+        List<Hold> returned = new ArrayList<>();
+        cartStore.updateAll(carts, inMemory -> {
+            List<Hold> lost = new ArrayList<>();
+            for (ShoppingCart shoppingCart : inMemory) {
+                for (CartHold cartHold : storedHolds.get(shoppingCart.getId())) {
+                    ShoppingCartItem cartItem = shoppingCart.findCartItem(cartHold.getIsbn());
+                    int inCart = cartItem == null ? 0 : cartItem.getQuantity();
+                    if (inCart > cartHold.getQuantity()) {
+                        // given back already, the line was written before
+                        shoppingCart.takeOutOfCart(cartHold.getIsbn(), inCart - cartHold.getQuantity());
+                    } else if (inCart < cartHold.getQuantity()) {
+                        // taken from the stock, the line wasn't written after
+                        lost.add(new Hold(shoppingCart.getId(), cartHold.getIsbn(), cartHold.getQuantity() - inCart, cartHold.getHeldUntil()));
+                    }
+                    if (Math.min(inCart, cartHold.getQuantity()) > 0) {
+                        kept.add(new Hold(shoppingCart.getId(), cartHold.getIsbn(), Math.min(inCart, cartHold.getQuantity()), cartHold.getHeldUntil()));
+                    }
+                }
+            }
+            returned.addAll(inventoryStock.putBackBooks(CatalogIndex.INVENTORY_ID, lost, hold -> hold.isbn,
+                    hold -> hold.quantity, hold -> true, this::storeReleases));
+            return returned;
+        });
+
+        synchronized (this) {
+            for (Hold hold : kept) {
+                if (!holdsByCart.containsKey(hold.cartId) || !holdsByCart.get(hold.cartId).containsKey(hold.isbn)) {
+                    schedule(hold);
+                }
+            }
+        }
+        for (Hold hold : returned) {
+            stockLedger.release(hold.isbn, hold.quantity);
+        }
+        for (ShoppingCart cart : carts) {
+            cartTotalEvents.publish(cart.getId(), cart.getTotalQuantityOfCart());
+        }
+        return kept.size();
+    }
+
+    /**
+     * Stop timing copies a cart put back itself, newest holds first
+     * @param cartId id of the cart
+     * @param isbn isbn of the book
+     * @param quantity number of copies
+     * @author Maisha Abdullah
+     */
+    public synchronized void release(Long cartId, String isbn, int quantity) {
+        Map<String, Deque<ExpiryWheel.Entry<Hold>>> holds = holdsByCart.get(cartId);
+        Deque<ExpiryWheel.Entry<Hold>> bookHolds = holds == null ? null : holds.get(isbn);
+        while (bookHolds != null && !bookHolds.isEmpty() && quantity > 0) {
+            ExpiryWheel.Entry<Hold> entry = bookHolds.pollLast();
+            wheel.cancel(entry);
+            Hold hold = entry.getValue();
+            if (hold.quantity > quantity) {
+                // only part of it was put back, keep timing the rest
+                schedule(new Hold(cartId, isbn, hold.quantity - quantity, hold.deadlineMillis));
+            }
+            quantity -= hold.quantity;
+        }
+        forgetIfEmpty(cartId, isbn);
+    }
+
+    /**
+     * Stop timing every copy of a cart, e.g. because they were bought
+     * @param cartId id of the cart
+     * @author Maisha Abdullah
+     */
+    public synchronized void clear(Long cartId) {
+        Map<String, Deque<ExpiryWheel.Entry<Hold>>> holds = holdsByCart.remove(cartId);
+        if (holds != null) {
+            for (Deque<ExpiryWheel.Entry<Hold>> bookHolds : holds.values()) {
+                for (ExpiryWheel.Entry<Hold> entry : bookHolds) {
+                    wheel.cancel(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a cart holds copies that aren't reclaimed yet
+     * @param cartId id of the cart
+     * @return if the cart holds copies
+     * @author Maisha Abdullah
+     */
+    public synchronized boolean holdsCopies(Long cartId) {
+        return holdsByCart.containsKey(cartId);
+    }
+
+    /**
+     * Take the copies of every expired hold out of its cart and give them back to the inventory
+     * @param nowMillis current time
+     * @return number of copies given back
+     * @author Maisha Abdullah
+     */
+    public int reclaimExpired(long nowMillis) {
+        List<Hold> expired;
+        synchronized (this) {
+            expired = wheel.advance(nowMillis);
+            for (Hold hold : expired) {
+                Deque<ExpiryWheel.Entry<Hold>> bookHolds = holdsByCart.get(hold.cartId).get(hold.isbn);
+                bookHolds.removeIf(entry -> entry.getValue() == hold);
+                forgetIfEmpty(hold.cartId, hold.isbn);
+            }
+        }
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, List<Hold>> holdsOfCart = new LinkedHashMap<>();
+        for (Hold hold : expired) {
+            holdsOfCart.computeIfAbsent(hold.cartId, key -> new ArrayList<>()).add(hold);
+        }
+        List<Hold> failed = new ArrayList<>();
+        Map<Long, Integer> cartTotals = new LinkedHashMap<>();
+        List<Hold> returned = new ArrayList<>();
+        Map<ShoppingCart, List<Hold>> batch = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<Hold>> cartHolds : holdsOfCart.entrySet()) {
+            ShoppingCart cart = cartStore.cached(cartHolds.getKey());
+            if (cart == null) {
+                continue; // holds are only made on carts in memory
+            }
+            batch.put(cart, cartHolds.getValue());
+            if (batch.size() == MAX_CARTS_PER_BATCH) {
+                returned.addAll(takeBack(batch, cartTotals, failed));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            returned.addAll(takeBack(batch, cartTotals, failed));
+        }
+        if (!failed.isEmpty()) {
+            synchronized (this) {
+                for (Hold hold : failed) {
+                    schedule(hold);
+                }
+            }
+        }
+
+        int copies = 0;
+        for (Hold hold : returned) {
+            stockLedger.release(hold.isbn, hold.quantity);
+            copies += hold.quantity;
+        }
+        cartTotals.forEach(cartTotalEvents::publish);
+        return copies;
+    }
+
+    /**
+     * Start reclaiming expired holds every tick
+     * @author Maisha Abdullah
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            log.info("Restored {} cart holds", restore());
+        } catch (RuntimeException e) {
+            log.error("Exception occurred while restoring cart holds: ", e);
+        }
+        reclaimExecutor.scheduleAtFixedRate(() -> {
+            try {
+                reclaimExpired(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                // an exception would cancel the schedule
+                log.error("Exception occurred while reclaiming expired cart holds: ", e);
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the reclaim thread
+     * @author Maisha Abdullah
+     */
+    @PreDestroy
+    public void shutdown() {
+        reclaimExecutor.shutdownNow();
+    }
+
+    /**
+     * Take expired copies out of their carts, putting them back into the inventory with one batch of statements
+     * @param holdsOfCart expired holds, by cart in memory
+     * @param cartTotals filled with the new total of each cart changed
+     * @param failed filled with the holds that couldn't be given back, to be tried again
+     * @return the holds whose copies were still in the cart and were given back
+     * @author Maisha Abdullah
+     */
+    private List<Hold> takeBack(Map<ShoppingCart, List<Hold>> holdsOfCart, Map<Long, Integer> cartTotals, List<Hold> failed) {
+        List<Hold> returned = new ArrayList<>();
+        List<List<Hold>> holdsInOrder = new ArrayList<>(holdsOfCart.values());
+        // the carts in memory are changed and written behind like any other cart change
+        cartStore.updateAll(new ArrayList<>(holdsOfCart.keySet()), carts -> {
+            List<Hold> due = new ArrayList<>();
+            Map<Long, ShoppingCart> cartOfId = new HashMap<>();
+            for (int i = 0; i < carts.size(); i++) {
+                ShoppingCart shoppingCart = carts.get(i);
+                cartOfId.put(shoppingCart.getId(), shoppingCart);
+                Map<String, Integer> left = new HashMap<>(); // copies of each book not given back by an earlier hold
+                for (Hold hold : holdsInOrder.get(i)) {
+                    ShoppingCartItem cartItem = shoppingCart.findCartItem(hold.isbn);
+                    int inCart = left.getOrDefault(hold.isbn, cartItem == null ? 0 : cartItem.getQuantity());
+                    int quantity = Math.min(hold.quantity, inCart);
+                    if (quantity <= 0) {
+                        continue; // already removed or bought
+                    }
+                    left.put(hold.isbn, inCart - quantity);
+                    due.add(new Hold(hold.cartId, hold.isbn, quantity, hold.deadlineMillis));
+                }
+            }
+            try {
+                // by isbn, the inventory the carts were loaded with is long out of date by now
+                returned.addAll(inventoryStock.putBackBooks(CatalogIndex.INVENTORY_ID, due, hold -> hold.isbn,
+                        hold -> hold.quantity, hold -> cartOfId.get(hold.cartId).takeOutOfCart(hold.isbn, hold.quantity),
+                        this::storeReleases));
+            } catch (RuntimeException e) {
+                // nothing was given back, the copies are still in the carts
+                log.error("Exception occurred while reclaiming expired cart holds, trying again next tick: ", e);
+                for (List<Hold> holds : holdsInOrder) {
+                    failed.addAll(holds);
+                }
+            }
+            for (ShoppingCart shoppingCart : carts) {
+                cartTotals.put(shoppingCart.getId(), shoppingCart.getTotalQuantityOfCart());
+            }
+            return returned;
+        });
+        return returned;
+    }
+
+    /**
+     * Store that the copies of some holds went back; must run in the transaction putting them back
+     * @param holds the holds given back
+     * @author Maisha Abdullah
+     */
+    private void storeReleases(List<Hold> holds) {
+        List<SqlParameterSource> releases = new ArrayList<>();
+        for (Hold hold : holds) {
+            releases.addAll(holdParameters(hold.cartId, List.of(hold.isbn), hold.quantity, 0));
+        }
+        jdbcTemplate.batchUpdate(CartHoldRepository.RELEASE, releases.toArray(new SqlParameterSource[0]));
+    }
+
+    /**
+     * Get the parameters of one hold statement per book, adding up the copies of a book listed more than once
+     * @param cartId id of the cart
+     * @param isbns isbns of the books
+     * @param quantity number of copies of each
+     * @param heldUntil deadline of the copies, in epoch millis
+     * @return the parameters
+     * @author Maisha Abdullah
+     */
+    private static List<SqlParameterSource> holdParameters(Long cartId, List<String> isbns, int quantity, long heldUntil) {
+        Map<String, Integer> copies = new LinkedHashMap<>();
+        for (String isbn : isbns) {
+            copies.merge(isbn, quantity, Integer::sum);
+        }
+        List<SqlParameterSource> parameters = new ArrayList<>(copies.size());
+        copies.forEach((isbn, bookCopies) -> parameters.add(new MapSqlParameterSource("cartId", cartId)
+                .addValue("isbn", isbn).addValue("quantity", bookCopies).addValue("heldUntil", heldUntil)));
+        return parameters;
+    }
+
+    private void schedule(Hold hold) {
+        ExpiryWheel.Entry<Hold> entry = wheel.schedule(hold, hold.deadlineMillis);
+        holdsByCart.computeIfAbsent(hold.cartId, key -> new HashMap<>())
+                .computeIfAbsent(hold.isbn, key -> new ArrayDeque<>())
+                .addLast(entry);
+    }
+
+    private void forgetIfEmpty(Long cartId, String isbn) {
+        Map<String, Deque<ExpiryWheel.Entry<Hold>>> holds = holdsByCart.get(cartId);
+        if (holds != null && holds.containsKey(isbn) && holds.get(isbn).isEmpty()) {
+            holds.remove(isbn);
+            if (holds.isEmpty()) {
+                holdsByCart.remove(cartId);
+            }
+        }
+    }
+
+    /**
+     * Copies of a book held by a cart until a deadline
+     */
+    private static class Hold {
+        private final Long cartId;
+        private final String isbn;
+        private final int quantity;
+        private final long deadlineMillis;
+
+        Hold(Long cartId, String isbn, int quantity, long deadlineMillis) {
+            this.cartId = cartId;
+            this.isbn = isbn;
+            this.quantity = quantity;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/**
+ * Shopping carts kept in memory between requests, so adding to or removing from a cart doesn't write it to the
+ * database. Changed carts are written behind in batches, every flush interval or as soon as enough of them are
+ * waiting, and a cart is written right away when it's checked out. The stock itself is still written by
+ * InventoryStock as each change is made, along with the copies the cart holds (see CartHold), so a cart change lost
+ * with its instance can be made good when the app starts again. A cart that was written and then left idle is let go after a while,
+ * and copied from the database again when it's next used. Carts live in the memory of one app instance, so all
+ * requests of a user need to reach the same instance.
+ */
+
+package bookstore.inventory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+@Service
+public class CartStore {
+
+    private static final int FLUSH_BATCH_SIZE = 50; // same as the jdbc batch size
+    private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+
+    private final ShoppingCartRepository shoppingCartRepository;
+    private final ShoppingCartItemRepository shoppingCartItemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long flushIntervalMillis;
+    private final long idleMillis;
+
+    private final Map<Long, ShoppingCart> carts = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastUsedMillis = new ConcurrentHashMap<>();
+    // carts kept however long they're idle, e.g. while they hold copies waiting to be reclaimed
+    private volatile Predicate<Long> keep = cartId -> false;
+    // ids of the carts changed since they were last written
+    private final Set<Long> waiting = ConcurrentHashMap.newKeySet();
+    // one write at a time, so an older copy of a cart never lands after a newer one
+    private final Object writeLock = new Object();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cart-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for CartStore, keeping written carts for ten minutes after they were last used
+     * @param shoppingCartRepository repository of shopping carts
+     * @param shoppingCartItemRepository repository of shopping cart items
+     * @param transactionManager writes each batch of carts in one transaction
+     * @param flushInterval how long a changed cart may wait before it's written, e.g. 2s
+     * @author Maisha Abdullah
+     */
+    public CartStore(ShoppingCartRepository shoppingCartRepository, ShoppingCartItemRepository shoppingCartItemRepository,
+                     PlatformTransactionManager transactionManager, Duration flushInterval) {
+        this(shoppingCartRepository, shoppingCartItemRepository, transactionManager, flushInterval, Duration.ofMinutes(10));
+    }
+
+    /**
+     * Constructor for CartStore
+     * @param shoppingCartRepository repository of shopping carts
+     * @param shoppingCartItemRepository repository of shopping cart items
+     * @param transactionManager writes each batch of carts in one transaction
+     * @param flushInterval how long a changed cart may wait before it's written, e.g. 2s
+     * @param idleTime how long a written cart is kept in memory after it was last used, e.g. 10m
+     * @author Maisha Abdullah
+     */
+    @Autowired
+    public CartStore(ShoppingCartRepository shoppingCartRepository, ShoppingCartItemRepository shoppingCartItemRepository,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${bookstore.cart.flush-interval:2s}") Duration flushInterval,
+                     @Value("${bookstore.cart.idle-time:10m}") Duration idleTime) {
+        this.shoppingCartRepository = shoppingCartRepository;
+        this.shoppingCartItemRepository = shoppingCartItemRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushIntervalMillis = flushInterval.toMillis();
+        this.idleMillis = idleTime.toMillis();
+    }
+
+    /**
+     * Keep the carts matching a test in memory however long they're idle
+     * @param keep tests the id of a cart, e.g. if it holds copies waiting to be reclaimed
+     * @author Maisha Abdullah
+     */
+    public void keepWhile(Predicate<Long> keep) {
+        this.keep = keep;
+    }
+
+    /**
+     * Get the cart kept in memory for a stored cart, copying the stored one the first time
+     * @param stored the cart as loaded with its user
+     * @return the cart in memory, or the given cart if it was never saved
+     * @author Maisha Abdullah
+     */
+    public ShoppingCart cartOf(ShoppingCart stored) {
+        if (stored == null || stored.getId() == null) {
+            return stored; // no row to write behind
+        }
+        lastUsedMillis.put(stored.getId(), System.currentTimeMillis());
+        return carts.computeIfAbsent(stored.getId(), id -> new ShoppingCart(stored));
+    }
+
+    /**
+     * Get the cart kept in memory with an id
+     * @param cartId id of the cart
+     * @return the cart in memory, or null if it isn't kept
+     * @author Maisha Abdullah
+     */
+    public ShoppingCart cached(Long cartId) {
+        return cartId == null ? null : carts.get(cartId);
+    }
+
+    /**
+     * Read a cart in memory while no one is changing it
+     * @param stored the cart as loaded with its user
+     * @param reader reads the cart in memory
+     * @return what the reader returned
+     * @author Maisha Abdullah
+     */
+    public <T> T read(ShoppingCart stored, Function<ShoppingCart, T> reader) {
+        while (true) {
+            ShoppingCart cart = cartOf(stored);
+            synchronized (cart) {
+                if (isKept(cart)) {
+                    return reader.apply(cart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Change a cart in memory, one change of the cart at a time, and queue it to be written
+     * @param stored the cart as loaded with its user
+     * @param change changes the cart in memory, through the items the caller loaded rather than an inventory
+     *               kept with the cart
+     * @return what the change returned
+     * @author Maisha Abdullah
+     */
+    public <T> T update(ShoppingCart stored, Function<ShoppingCart, T> change) {
+        while (true) {
+            ShoppingCart cart = cartOf(stored);
+            synchronized (cart) {
+                if (!isKept(cart)) {
+                    continue; // let go in the meantime, change the copy that replaces it
+                }
+                T result = change.apply(cart);
+                if (cart.getId() != null) {
+                    waiting.add(cart.getId());
+                }
+                if (waiting.size() >= FLUSH_BATCH_SIZE) {
+                    queueFlush();
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Change several carts in memory as one change, holding every one of them, and queue them to be written
+     * @param stored the carts as loaded, or as kept in memory
+     * @param change changes the carts in memory, given in the same order
+     * @return what the change returned
+     * @author Maisha Abdullah
+     */
+    public <T> T updateAll(List<ShoppingCart> stored, Function<List<ShoppingCart>, T> change) {
+        while (true) {
+            List<ShoppingCart> carts = new ArrayList<>(stored.size());
+            for (ShoppingCart cart : stored) {
+                carts.add(cartOf(cart));
+            }
+            boolean[] kept = {true};
+            T result = updateHolding(carts, 0, change, kept);
+            if (kept[0]) {
+                return result;
+            }
+            // one was let go in the meantime, change the copies that replace it
+        }
+    }
+
+    /**
+     * Copy stored carts into memory, e.g. after a restart to give back the copies they hold
+     * @param cartIds ids of the carts
+     * @return the carts in memory, leaving out ids that aren't stored
+     * @author Maisha Abdullah
+     */
+    public List<ShoppingCart> restore(Collection<Long> cartIds) {
+        List<ShoppingCart> restored = new ArrayList<>();
+        if (cartIds.isEmpty()) {
+            return restored;
+        }
+        for (ShoppingCart stored : shoppingCartRepository.findAllWithLines(cartIds)) {
+            restored.add(cartOf(stored));
+        }
+        return restored;
+    }
+
+    /**
+     * Check out a cart and write it right away, along with any change still waiting, in one transaction with
+     * the record of what was bought
+     * @param stored the cart as loaded with its user
+     * @param record records what is bought from the cart in memory, e.g. as an order, or returns null to leave
+     *               the cart as it is
+     * @return what the record returned
+     * @author Maisha Abdullah
+     */
+    public <T> T checkout(ShoppingCart stored, Function<ShoppingCart, T> record) {
+        ShoppingCart cart = cartOf(stored);
+        if (cart == stored) {
+            synchronized (cart) {
+                return transactionTemplate.execute(status -> {
+                    T result = record.apply(cart);
+                    if (result != null) {
+                        shoppingCartItemRepository.deleteAll(cart.checkout());
+                        shoppingCartRepository.save(cart);
+                    }
+                    return result;
+                });
+            }
+        }
+        // written by the flush thread, whose transaction reads the stored cart as it is now, not as the request loaded it
+        return runOnFlushThread(() -> writeCheckout(cart, record));
+    }
+
+    /**
+     * Write every cart waiting, with one transaction for the whole batch
+     * @return number of carts written
+     * @author Maisha Abdullah
+     */
+    public int flush() {
+        synchronized (writeLock) {
+            Map<Long, ShoppingCart> snapshots = new LinkedHashMap<>();
+            for (Long cartId : new ArrayList<>(waiting)) {
+                waiting.remove(cartId);
+                ShoppingCart cart = carts.get(cartId);
+                if (cart != null) {
+                    synchronized (cart) {
+                        snapshots.put(cartId, new ShoppingCart(cart));
+                    }
+                }
+            }
+            if (snapshots.isEmpty()) {
+                return 0;
+            }
+
+            Map<Long, ShoppingCart> written;
+            try {
+                written = transactionTemplate.execute(status -> write(snapshots));
+            } catch (RuntimeException e) {
+                log.error("Exception occurred while writing carts, trying again next flush: ", e);
+                waiting.addAll(snapshots.keySet());
+                return 0;
+            }
+            written.forEach(this::copyIds);
+            return written.size();
+        }
+    }
+
+    /**
+     * Let go of the carts that were written and haven't been used for the idle time
+     * @param nowMillis current time
+     * @return number of carts let go
+     * @author Maisha Abdullah
+     */
+    public int evictIdle(long nowMillis) {
+        int evicted = 0;
+        for (Map.Entry<Long, ShoppingCart> entry : carts.entrySet()) {
+            Long cartId = entry.getKey();
+            ShoppingCart cart = entry.getValue();
+            Long lastUsed = lastUsedMillis.get(cartId);
+            if (waiting.contains(cartId) || (lastUsed != null && nowMillis - lastUsed < idleMillis) || keep.test(cartId)) {
+                continue;
+            }
+            synchronized (cart) {
+                // checked again while no one can change it
+                if (!waiting.contains(cartId) && carts.remove(cartId, cart)) {
+                    lastUsedMillis.remove(cartId, lastUsed);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Method to get the number of carts kept in memory
+     * @return the number of carts
+     * @author Maisha Abdullah
+     */
+    public int inMemory() {
+        return carts.size();
+    }
+
+    /**
+     * Method to get the number of carts waiting to be written
+     * @return the number of carts
+     * @author Maisha Abdullah
+     */
+    public int waiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Start writing waiting carts every flush interval
+     * @author Maisha Abdullah
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the flush thread and write what is still waiting
+     * @author Maisha Abdullah
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Write a cart together with its checkout and the record of what was bought
+     * @param cart the cart in memory
+     * @param record records what is bought from the cart, or returns null to leave the cart as it is
+     * @return what the record returned
+     * @author Maisha Abdullah
+     */
+    private <T> T writeCheckout(ShoppingCart cart, Function<ShoppingCart, T> record) {
+        synchronized (writeLock) {
+            synchronized (cart) {
+                T result = transactionTemplate.execute(status -> {
+                    T recorded = record.apply(cart);
+                    ShoppingCart current = shoppingCartRepository.findById((long) cart.getId());
+                    if (recorded != null && current != null) {
+                        shoppingCartItemRepository.deleteAll(current.copyLinesFrom(cart));
+                        shoppingCartItemRepository.deleteAll(current.checkout()); // bought, kept with the order
+                        shoppingCartRepository.save(current);
+                    }
+                    return recorded;
+                });
+                if (result != null) {
+                    cart.checkout();
+                    waiting.remove(cart.getId());
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Make the stored carts match their snapshots, deleting the lines emptied since
+     * @param snapshots copies of the carts in memory, by id
+     * @return the stored carts written, by id
+     * @author Maisha Abdullah
+     */
+    private Map<Long, ShoppingCart> write(Map<Long, ShoppingCart> snapshots) {
+        Map<Long, ShoppingCart> written = new LinkedHashMap<>();
+        List<ShoppingCartItem> emptied = new ArrayList<>();
+        for (ShoppingCart current : shoppingCartRepository.findAllById(snapshots.keySet())) {
+            emptied.addAll(current.copyLinesFrom(snapshots.get(current.getId())));
+            written.put(current.getId(), current);
+        }
+        shoppingCartItemRepository.deleteAll(emptied);
+        shoppingCartRepository.saveAll(written.values());
+        return written;
+    }
+
+    /**
+     * Give the lines added in memory the ids they got when they were first written
+     * @param cartId id of the cart
+     * @param current the cart as written
+     * @author Maisha Abdullah
+     */
+    private void copyIds(Long cartId, ShoppingCart current) {
+        ShoppingCart cart = carts.get(cartId);
+        if (cart == null) {
+            return;
+        }
+        Map<String, Long> idOfLine = new HashMap<>();
+        for (ShoppingCartItem cartItem : current.getBooksInCart()) {
+            if (cartItem.getQuantity() > 0) {
+                idOfLine.put(cartItem.getBook().getIsbn(), cartItem.getId());
+            }
+        }
+        synchronized (cart) {
+            for (ShoppingCartItem cartItem : cart.getBooksInCart()) {
+                if (cartItem.getId() == null) {
+                    cartItem.setId(idOfLine.get(cartItem.getBook().getIsbn()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hold the carts one after the other, then change them once every one is held and still kept
+     * @param carts the carts in memory
+     * @param held number of carts held so far
+     * @param change changes the carts
+     * @param kept set to false if a cart was let go, the change isn't made then
+     * @return what the change returned, or null if it wasn't made
+     * @author Maisha Abdullah
+     */
+    private <T> T updateHolding(List<ShoppingCart> carts, int held, Function<List<ShoppingCart>, T> change, boolean[] kept) {
+        if (held < carts.size()) {
+            synchronized (carts.get(held)) {
+                return updateHolding(carts, held + 1, change, kept);
+            }
+        }
+        for (ShoppingCart cart : carts) {
+            if (!isKept(cart)) {
+                kept[0] = false;
+                return null;
+            }
+        }
+        T result = change.apply(carts);
+        for (ShoppingCart cart : carts) {
+            if (cart.getId() != null) {
+                waiting.add(cart.getId());
+            }
+        }
+        if (waiting.size() >= FLUSH_BATCH_SIZE) {
+            queueFlush();
+        }
+        return result;
+    }
+
+    private boolean isKept(ShoppingCart cart) {
+        return cart.getId() == null || carts.get(cart.getId()) == cart;
+    }
+
+    private <T> T runOnFlushThread(Supplier<T> task) {
+        Future<T> done;
+        try {
+            done = flushExecutor.submit(task::get);
+        } catch (RejectedExecutionException e) {
+            return task.get(); // shutting down, run it here
+        }
+        try {
+            return done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing a cart", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Failed to write a cart", e.getCause());
+        }
+    }
+
+    private void queueFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushQueued.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                flushQueued.set(false); // shutting down, the last flush writes it
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+            evictIdle(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule
+            log.error("Exception occurred while writing carts: ", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Pushes the number of copies in a cart to every page showing it, as Server-Sent Events. A page opens one
+ * stream when it loads and gets the current total right away, then a new one only when the cart changes,
+ * instead of asking the server for it again. Streams are kept in memory, so each app instance only pushes
+ * the changes made through it.
+ */
+
+package bookstore.inventory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Service
+public class CartTotalEvents {
+
+    static final String EVENT_NAME = "total";
+    private static final long STREAM_TIMEOUT_MILLIS = 30 * 60 * 1000L; // the browser opens a new one after this
+    private static final Logger log = LoggerFactory.getLogger(CartTotalEvents.class);
+
+    private final Map<Long, List<SseEmitter>> streamsByCart = new ConcurrentHashMap<>();
+
+    /**
+     * Open a stream of the total of a cart, starting with its current total
+     * @param cartId id of the cart
+     * @param total current number of copies in the cart
+     * @return the stream
+     * @author Maisha Abdullah
+     */
+    public SseEmitter subscribe(Long cartId, int total) {
+        SseEmitter stream = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+        streamsByCart.compute(cartId, (key, streams) -> {
+            List<SseEmitter> cartStreams = streams == null ? new CopyOnWriteArrayList<>() : streams;
+            cartStreams.add(stream);
+            return cartStreams;
+        });
+        stream.onCompletion(() -> forget(cartId, stream));
+        stream.onTimeout(() -> forget(cartId, stream));
+        stream.onError(error -> forget(cartId, stream));
+        send(cartId, stream, total);
+        return stream;
+    }
+
+    /**
+     * Push the new total of a cart to every stream of it
+     * @param cartId id of the cart
+     * @param total number of copies in the cart
+     * @author Maisha Abdullah
+     */
+    public void publish(Long cartId, int total) {
+        if (cartId == null) {
+            return;
+        }
+        List<SseEmitter> streams = streamsByCart.get(cartId);
+        if (streams != null) {
+            for (SseEmitter stream : streams) {
+                send(cartId, stream, total);
+            }
+        }
+    }
+
+    /**
+     * Method to get the number of open streams of a cart
+     * @param cartId id of the cart
+     * @return the number of streams
+     * @author Maisha Abdullah
+     */
+    public int subscribers(Long cartId) {
+        List<SseEmitter> streams = streamsByCart.get(cartId);
+        return streams == null ? 0 : streams.size();
+    }
+
+    private void send(Long cartId, SseEmitter stream, int total) {
+        try {
+            stream.send(SseEmitter.event().name(EVENT_NAME).data(total));
+        } catch (IOException | IllegalStateException e) {
+            // the page was closed, its stream is done
+            log.debug("Dropping closed cart total stream of cart {}", cartId);
+            forget(cartId, stream);
+            stream.complete();
+        }
+    }
+
+    private void forget(Long cartId, SseEmitter stream) {
+        streamsByCart.computeIfPresent(cartId, (key, streams) -> {
+            streams.remove(stream);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Entity listener that bumps the catalog version whenever a catalog entity is written, and the book details
+ * version when the entity is a book or author
+ */
+
+package bookstore.inventory;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+public class CatalogChangeListener {
+
+    /**
+     * Called by JPA after a catalog entity is inserted or deleted
+     * @param entity the changed entity
+     * @author Maisha Abdullah
+     */
+    @PostPersist
+    @PostRemove
+    public void catalogChanged(Object entity) {
+        bump(entity);
+    }
+
+    /**
+     * Called by JPA after a catalog entity is updated
+     * @param entity the changed entity
+     * @author Maisha Abdullah
+     */
+    @PostUpdate
+    public void catalogUpdated(Object entity) {
+        // stock levels change on every cart update but don't change which books are listed
+        if (!(entity instanceof InventoryItem)) {
+            bump(entity);
+        }
+    }
+
+    /**
+     * Bump the catalog version, and the book details version too if a book or author changed
+     * @param entity the changed entity
+     * @author Maisha Abdullah
+     */
+    private static void bump(Object entity) {
+        if (entity instanceof Book || entity instanceof Author) {
+            CatalogVersion.bumpBookDetails();
+        } else {
+            CatalogVersion.bump();
+        }
+    }
+}
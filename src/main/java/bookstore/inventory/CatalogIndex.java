@@ -0,0 +1,442 @@
+/**
+ * Indexes over the books in stock, shared by every request instead of hanging off the inventory each request
+ * loads. They're built once when the app starts, so a listing never has to index the catalog first. The indexes
+ * live in the memory of one app instance.
+ * A book selling out stays in the indexes, marked sold out, and every read leaves it out. Coming back clears the
+ * mark, so neither touches the indexes. Once sold out books make up half the indexes, or the facet index has piled
+ * up enough changes, the indexes are rebuilt on a background thread and swapped in only if nothing was written while
+ * they were built, so no request waits for a rebuild.
+ */
+
+package bookstore.inventory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+@Service
+public class CatalogIndex {
+
+    static final long INVENTORY_ID = 1L; // assuming one inventory, as the controllers do
+    private static final int MIN_SOLD_OUT_BEFORE_COMPACTION = 64;
+    private static final int MAX_COMPACTION_ATTEMPTS = 3;
+    private static final Logger log = LoggerFactory.getLogger(CatalogIndex.class);
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final SearchRanking ranking;
+
+    // one write at a time, readers go through the indexes without waiting
+    private final Object writeLock = new Object();
+    private volatile SearchIndex searchIndex = new SearchIndex(List.of());
+    private volatile SortedInventoryViews sortedViews = new SortedInventoryViews(List.of());
+    private volatile FacetIndex facetIndex = new FacetIndex(List.of());
+    // every indexed item, sold out ones included until the next rebuild
+    private volatile Map<String, InventoryItem> itemsByIsbn = new ConcurrentHashMap<>();
+    private volatile Set<String> soldOut = ConcurrentHashMap.newKeySet();
+    private long writes; // guarded by writeLock, a compaction built before the last write is thrown away
+    private final List<Consumer<String>> listingListeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    /**
+     * Constructor for CatalogIndex, ranking search results with the default boosts
+     * @param inventoryItemRepository repository of inventory items, read once to build the indexes
+     * @author Maisha Abdullah
+     */
+    public CatalogIndex(InventoryItemRepository inventoryItemRepository) {
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.ranking = new SearchRanking();
+    }
+
+    /**
+     * Constructor for CatalogIndex, ranking search results with the configured boosts
+     * @param inventoryItemRepository repository of inventory items, read once to build the indexes
+     * @param titleBoost weight of a match in the title
+     * @param authorBoost weight of a match in an author's name
+     * @param genreBoost weight of a match in the genre
+     * @param publisherBoost weight of a match in the publisher
+     * @param descriptionBoost weight of a match in the description
+     * @author Maisha Abdullah
+     */
+    @Autowired
+    public CatalogIndex(InventoryItemRepository inventoryItemRepository,
+                        @Value("${bookstore.search.boost.title:3.0}") double titleBoost,
+                        @Value("${bookstore.search.boost.author:2.5}") double authorBoost,
+                        @Value("${bookstore.search.boost.genre:1.5}") double genreBoost,
+                        @Value("${bookstore.search.boost.publisher:1.5}") double publisherBoost,
+                        @Value("${bookstore.search.boost.description:1.0}") double descriptionBoost) {
+        this(inventoryItemRepository);
+        ranking.setBoost(SearchField.TITLE, titleBoost);
+        ranking.setBoost(SearchField.AUTHOR, authorBoost);
+        ranking.setBoost(SearchField.GENRE, genreBoost);
+        ranking.setBoost(SearchField.PUBLISHER, publisherBoost);
+        ranking.setBoost(SearchField.DESCRIPTION, descriptionBoost);
+        searchIndex.setRanking(ranking);
+    }
+
+    /**
+     * Build the indexes once the sample books are in place
+     * @author Maisha Abdullah
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        List<InventoryItem> items = inventoryItemRepository.findInStock(INVENTORY_ID);
+        rebuild(items);
+        log.info("Indexed {} books in stock", items.size());
+    }
+
+    /**
+     * Replace the indexes with new ones over the given items
+     * @param items items in stock, in catalog order
+     * @author Maisha Abdullah
+     */
+    public void rebuild(List<InventoryItem> items) {
+        rebuild(items, -1);
+    }
+
+    /**
+     * Build new indexes over the given items, then swap them in unless the indexes were written since
+     * @param items items in stock, in catalog order
+     * @param seen number of writes the items were read at, or -1 to swap them in anyway
+     * @return if the new indexes were swapped in
+     * @author Maisha Abdullah
+     */
+    private boolean rebuild(List<InventoryItem> items, long seen) {
+        Map<String, InventoryItem> byIsbn = new LinkedHashMap<>();
+        for (InventoryItem item : items) {
+            byIsbn.putIfAbsent(item.getBook().getIsbn(), item);
+        }
+        List<InventoryItem> indexed = new ArrayList<>(byIsbn.values());
+        SearchIndex index = new SearchIndex(indexed);
+        index.setRanking(ranking);
+        SortedInventoryViews views = new SortedInventoryViews(indexed);
+        FacetIndex facets = new FacetIndex(indexed);
+        Map<String, InventoryItem> indexedByIsbn = new ConcurrentHashMap<>(byIsbn);
+        synchronized (writeLock) {
+            if (seen >= 0 && writes != seen) {
+                return false;
+            }
+            writes++;
+            itemsByIsbn = indexedByIsbn;
+            soldOut = ConcurrentHashMap.newKeySet();
+            searchIndex = index;
+            sortedViews = views;
+            facetIndex = facets;
+            return true;
+        }
+    }
+
+    /**
+     * Be told whenever a book is listed or stops being listed because of its stock
+     * @param listener called with the isbn of the book, e.g. to drop cached listings holding it
+     * @author Maisha Abdullah
+     */
+    public void whenListingChanges(Consumer<String> listener) {
+        listingListeners.add(listener);
+    }
+
+    /**
+     * Apply a change of an item's stock, e.g. a new book uploaded, the last copy sold or copies put back
+     * @param item the changed item, holding its new quantity
+     * @author Maisha Abdullah
+     */
+    public void stockChanged(InventoryItem item) {
+        String isbn = item.getBook().getIsbn();
+        synchronized (writeLock) {
+            InventoryItem indexed = itemsByIsbn.get(isbn);
+            if (item.getQuantity() <= 0) {
+                if (indexed == null || soldOut.contains(isbn)) {
+                    return; // not listed anyway
+                }
+                writes++;
+                indexed.setQuantity(0);
+                soldOut.add(isbn);
+                if (tooManySoldOut()) {
+                    requestCompaction();
+                }
+            } else if (indexed == null) {
+                writes++;
+                InventoryItem copy = copyOf(item);
+                itemsByIsbn.put(isbn, copy);
+                searchIndex.add(copy);
+                sortedViews.add(copy);
+                setFacetIndex(facetIndex.withAdded(copy));
+                // a book the indexes never had could match any search, not just the ones naming it
+                CatalogVersion.bump();
+                return;
+            } else {
+                indexed.setQuantity(item.getQuantity());
+                if (!soldOut.contains(isbn)) {
+                    return; // still listed, only the number of copies changed
+                }
+                writes++;
+                soldOut.remove(isbn);
+            }
+        }
+        for (Consumer<String> listener : listingListeners) {
+            listener.accept(isbn);
+        }
+    }
+
+    /**
+     * Apply an edit of a book's details
+     * @param item the item holding the edited book
+     * @author Maisha Abdullah
+     */
+    public void edited(InventoryItem item) {
+        String isbn = item.getBook().getIsbn();
+        synchronized (writeLock) {
+            InventoryItem indexed = itemsByIsbn.get(isbn);
+            if (indexed == null) {
+                return; // not in stock, indexed with its new details once it is
+            }
+            writes++;
+            // a new copy rather than changing the indexed one, lists already handed out keep the old details
+            InventoryItem copy = copyOf(item);
+            itemsByIsbn.put(isbn, copy);
+            searchIndex.update(copy);
+            sortedViews.replace(indexed, copy);
+            setFacetIndex(facetIndex.withReplaced(indexed, copy));
+        }
+    }
+
+    /**
+     * Get the indexed books in a sort order, without sorting them. Books sold out since the last rebuild are
+     * still in it, filter and countFacets leave them out
+     * @param criteria sort order, relevance keeps the order books were added in
+     * @return read only list of the items
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> sortedBy(SortCriteria criteria) {
+        return sortedViews.get(criteria);
+    }
+
+    /**
+     * Keep the items matching the filters: any selected value within a filter, every filter with a selection
+     * @param items items of this index to filter, in the order they should be returned
+     * @param plan the compiled filters
+     * @return the matching items in stock, in the same order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> filter(List<InventoryItem> items, FilterPlan plan) {
+        return facetIndex.filter(items, plan, this::isListed);
+    }
+
+    /**
+     * Count the items in stock having each author, genre and publisher, within the other selected filters,
+     * and find their price bounds
+     * @param items items of this index to count, e.g. the search results
+     * @param plan the compiled filters
+     * @return counts of each value and the price bounds
+     * @author Maisha Abdullah
+     */
+    public FacetCounts countFacets(List<InventoryItem> items, FilterPlan plan) {
+        return facetIndex.count(items, plan, this::isListed);
+    }
+
+    /**
+     * Find books in stock by isbn, without loading the inventory
+     * @param isbns the isbns
+     * @return the indexed items in the same order, skipping isbns that are not in stock
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> findAll(List<String> isbns) {
+        List<InventoryItem> items = new ArrayList<>(isbns.size());
+        for (String isbn : isbns) {
+            InventoryItem item = itemsByIsbn.get(isbn);
+            if (item != null && !soldOut.contains(isbn)) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Search the books in stock
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit matching items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> search(String searchValue, int limit) {
+        return searchIndex.search(searchValue, limit, this::isListed);
+    }
+
+    /**
+     * Search the indexed books, sold out ones included, e.g. to know every book that could change a listing
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit matching items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> searchWithSoldOut(String searchValue, int limit) {
+        return searchIndex.search(searchValue, limit);
+    }
+
+    /**
+     * Search the books in stock allowing for typos, e.g. "hoseini" finds Khaled Hosseini
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit similar items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> searchSimilar(String searchValue, int limit) {
+        return searchIndex.searchSimilar(searchValue, limit, this::isListed);
+    }
+
+    /**
+     * Search the indexed books allowing for typos, sold out ones included
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit similar items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> searchSimilarWithSoldOut(String searchValue, int limit) {
+        return searchIndex.searchSimilar(searchValue, limit);
+    }
+
+    /**
+     * Check if an item handed out by this index is in stock
+     * @param item the item
+     * @return if the item's book is listed
+     * @author Maisha Abdullah
+     */
+    public boolean isListed(InventoryItem item) {
+        // an item sold out before the last rebuild is no longer marked, but kept no copies
+        return !soldOut.contains(item.getBook().getIsbn()) && item.getQuantity() > 0;
+    }
+
+    /**
+     * Wait for the compaction running or requested so far to finish, e.g. for tests
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the wait itself failed
+     * @author Maisha Abdullah
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        compactionExecutor.submit(() -> { }).get();
+    }
+
+    /**
+     * Stop the compaction thread
+     * @author Maisha Abdullah
+     */
+    @PreDestroy
+    public void shutdown() {
+        compactionExecutor.shutdownNow();
+    }
+
+    /**
+     * Check if sold out books make up enough of the indexes to rebuild them without
+     * @return if the indexes should be rebuilt
+     * @author Maisha Abdullah
+     */
+    private boolean tooManySoldOut() {
+        int soldOutCount = soldOut.size();
+        return soldOutCount > Math.max(MIN_SOLD_OUT_BEFORE_COMPACTION, itemsByIsbn.size() - soldOutCount);
+    }
+
+    /**
+     * Start a compaction on the background thread unless one is already running; a write that needs one while
+     * it runs either lands in it or requests another
+     * @author Maisha Abdullah
+     */
+    private void requestCompaction() {
+        if (compacting.compareAndSet(false, true)) {
+            compactionExecutor.execute(() -> {
+                try {
+                    for (int attempt = 0; attempt < MAX_COMPACTION_ATTEMPTS && !compact(); attempt++) {
+                        log.debug("Catalog changed while compacting, building again");
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Exception occurred while compacting catalog indexes: ", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rebuild the indexes without the sold out books, or just the facet index once it piled up enough changes,
+     * outside the write lock
+     * @return false if the indexes were written while building, so the rebuild was thrown away
+     * @author Maisha Abdullah
+     */
+    private boolean compact() {
+        long seen;
+        SortedInventoryViews views;
+        synchronized (writeLock) {
+            seen = writes;
+            views = sortedViews;
+        }
+        List<InventoryItem> indexed = views.get(SortCriteria.RELEVANCE);
+        if (tooManySoldOut()) {
+            List<InventoryItem> listed = new ArrayList<>();
+            for (InventoryItem item : indexed) {
+                if (isListed(item)) {
+                    listed.add(item);
+                }
+            }
+            return rebuild(listed, seen);
+        }
+        if (!facetIndex.needsCompaction()) {
+            return true;
+        }
+        FacetIndex compacted = new FacetIndex(indexed);
+        synchronized (writeLock) {
+            if (writes != seen) {
+                return false;
+            }
+            facetIndex = compacted;
+            return true;
+        }
+    }
+
+    /**
+     * Swap in a changed facet index, asking for it to be rebuilt from the books in stock once enough changes
+     * built up
+     * @param changed the changed index
+     * @author Maisha Abdullah
+     */
+    private void setFacetIndex(FacetIndex changed) {
+        facetIndex = changed;
+        if (changed.needsCompaction()) {
+            requestCompaction();
+        }
+    }
+
+    /**
+     * Copy an item for the indexes, so they don't keep the inventory of the request that changed it
+     * @param item the inventory item
+     * @return an item with the same id, book and quantity
+     * @author Maisha Abdullah
+     */
+    private static InventoryItem copyOf(InventoryItem item) {
+        InventoryItem copy = new InventoryItem(item.getBook(), item.getQuantity());
+        copy.setId(item.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Counter of catalog changes, lets data derived from the catalog tell when it is out of date. Changes of the
+ * books and authors themselves are also counted on their own, for data built from book details only, which
+ * stock and inventory changes leave alone
+ */
+
+package bookstore.inventory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class CatalogVersion {
+
+    private static final AtomicLong version = new AtomicLong();
+    private static final AtomicLong bookDetailsVersion = new AtomicLong();
+
+    private CatalogVersion() {
+    }
+
+    /**
+     * Get the current catalog version
+     * @return the version
+     * @author Maisha Abdullah
+     */
+    public static long current() {
+        return version.get();
+    }
+
+    /**
+     * Record a catalog change
+     * @return the new version
+     * @author Maisha Abdullah
+     */
+    public static long bump() {
+        return version.incrementAndGet();
+    }
+
+    /**
+     * Get the current version of the book details, e.g. titles and author names
+     * @return the version
+     * @author Maisha Abdullah
+     */
+    public static long currentBookDetails() {
+        return bookDetailsVersion.get();
+    }
+
+    /**
+     * Record a change of a book or author, which is also a catalog change
+     * @return the new book details version
+     * @author Maisha Abdullah
+     */
+    public static long bumpBookDetails() {
+        version.incrementAndGet();
+        return bookDetailsVersion.incrementAndGet();
+    }
+}
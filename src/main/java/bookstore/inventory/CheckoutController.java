@@ -2,47 +2,83 @@ package bookstore.inventory;
 
 import bookstore.users.BookUser;
 import bookstore.users.UserController;
-import bookstore.users.UserRepository;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.ui.Model;
+import org.springframework.web.util.UriComponentsBuilder;
+
 import java.util.stream.Collectors;
 
 @Controller
 public class CheckoutController {
 
+    private static final int MAX_CACHED_ISBNS = 200_000; // across all cached listings, a few MB of isbns
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_RESULTS = 10 * MAX_PAGE_SIZE; // best matches listed for a plain search, nobody pages further
+    private static final int PARALLEL_FILTER_THRESHOLD = 50_000; // items, below this threads cost more than they save
+    private static final int MAX_CACHED_RECOMMENDATIONS = 10_000; // users, cheap to work out again
+    private static final Logger log = LoggerFactory.getLogger(CheckoutController.class);
+
     private final AuthorRepository authorRepository;
     private final BookRepository bookRepository;
     private final InventoryRepository inventoryRepository;
     private final ShoppingCartRepository shoppingCartRepository;
     private final ShoppingCartItemRepository shoppingCartItemRepository;
     private final InventoryItemRepository inventoryItemRepository;
-    private final UserRepository userRepository;
-    private UserController userController;
-    private boolean checkoutFlag = false;
+    private final OrderLineRepository orderLineRepository;
+    private final StockLedger stockLedger;
+    private final CartReservations cartReservations;
+    private final InventoryStock inventoryStock;
+    private final CartTotalEvents cartTotalEvents;
+    private final CartStore cartStore;
+    private final OrderService orderService;
+    private final CatalogIndex catalogIndex;
+    private final UserController userController;
+    private final SearchResultCache searchResultCache = new SearchResultCache(MAX_CACHED_ISBNS);
+    // worked out once per user and dropped when an order changes them, see refreshRecommendations
+    private final Map<Long, List<Book>> recommendationsByUser = new ConcurrentHashMap<>();
+    private final AtomicLong ordersSeen = new AtomicLong();
 
     /**
      * Constructor for checkout controller
      *
      * @param authorRepo repository of authors
      * @param bookRepo   repository of books
+     * @param orderLineRepository lines of placed orders, the books each user bought
+     * @param stockLedger copies left of each book, shared by all carts
+     * @param cartReservations copies held by carts, given back when a hold runs out
+     * @param inventoryStock writes stock changes as atomic statements
+     * @param cartTotalEvents pushes the total in a cart to the pages showing it
+     * @param cartStore keeps carts in memory and writes them behind
+     * @param orderService places orders at checkout, and works the buyer's recommendations out again after each order
+     * @param catalogIndex indexes over the books in stock, shared by every request
      * @author Shrimei Chock
      * @author Maisha Abdullah
      */
-    public CheckoutController(AuthorRepository authorRepo, BookRepository bookRepo, InventoryRepository inventoryRepo, InventoryItemRepository inventoryItemRepo, ShoppingCartRepository shoppingCartRepository, ShoppingCartItemRepository shoppingCartItemRepository, UserController userController, UserRepository userRepository) {
+    public CheckoutController(AuthorRepository authorRepo, BookRepository bookRepo, InventoryRepository inventoryRepo, InventoryItemRepository inventoryItemRepo, ShoppingCartRepository shoppingCartRepository, ShoppingCartItemRepository shoppingCartItemRepository, UserController userController, OrderLineRepository orderLineRepository, StockLedger stockLedger, CartReservations cartReservations, InventoryStock inventoryStock, CartTotalEvents cartTotalEvents, CartStore cartStore, OrderService orderService, CatalogIndex catalogIndex) {
         this.authorRepository = authorRepo;
         this.bookRepository = bookRepo;
         this.inventoryRepository = inventoryRepo;
@@ -50,12 +86,25 @@ public class CheckoutController {
         this.shoppingCartRepository = shoppingCartRepository;
         this.shoppingCartItemRepository = shoppingCartItemRepository;
         this.userController = userController;
-        this.userRepository = userRepository;
+        this.orderLineRepository = orderLineRepository;
+        this.stockLedger = stockLedger;
+        this.cartReservations = cartReservations;
+        this.inventoryStock = inventoryStock;
+        this.cartTotalEvents = cartTotalEvents;
+        this.cartStore = cartStore;
+        this.orderService = orderService;
+        this.catalogIndex = catalogIndex;
+        orderService.afterEachOrder("recommendations", this::refreshRecommendations);
+        catalogIndex.whenListingChanges(searchResultCache::invalidate); // only the listings holding the book
     }
 
     /**
-     * List all books in inventory
+     * List all books in inventory, one page at a time
      *
+     * @param sort sort criteria, searches are listed by relevance and browsing by lowest price unless one is chosen
+     * @param page page number, starting at 0
+     * @param size number of books on a page
+     * @param cursor position after the previous page, from the next page link
      * @param model container
      * @return reroute to html page to display all books
      * @author Maisha Abdullah
@@ -66,74 +115,353 @@ public class CheckoutController {
     public String listAvailableBooks
     (HttpServletRequest request, HttpServletResponse response,
      @RequestParam(name = "searchValue", required = false, defaultValue = "") String searchValue,
-     @RequestParam(name = "sort", required = false, defaultValue = "low_to_high") String sort,
+     @RequestParam(name = "sort", required = false) String sort,
      @RequestParam(name = "author", required = false) List<String> authors,
      @RequestParam(name = "genre", required = false) List<String> genres,
      @RequestParam(name = "publisher", required = false) List<String> publishers,
      @RequestParam(name = "priceRange", required = false) String price, //default is max price
+     @RequestParam(name = "page", required = false, defaultValue = "0") int page,
+     @RequestParam(name = "size", required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+     @RequestParam(name = "cursor", required = false) String cursor,
      Model model) {
-        checkoutFlag = false;
         BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
         if(loggedInUser != null){
+            if (sort == null) {
+                sort = searchValue.isEmpty() ? SortCriteria.LOW_TO_HIGH.label : SortCriteria.RELEVANCE.label;
+            }
 
             Inventory inventory = inventoryRepository.findById(1); // assuming one inventory
+            page = Math.max(page, 0);
+            size = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
 
-            //Search
             List<InventoryItem> inventoryItems;
-            if (searchValue.isEmpty()) {
-                inventoryItems = inventory.getAvailableBooks();
+            Integer totalPages; // null when paging with a cursor, counting would cost as much as the offset it avoids
+            boolean hasNextPage;
+            String nextCursor = null;
+            if (inventory.getId() != null && searchValue.isEmpty() && !sort.equals(SortCriteria.RELEVANCE.label)
+                    && hasSelection(authors) && hasSelection(genres) && hasSelection(publishers)) {
+                // plain browsing, let the database sort and page so only the shown page is loaded
+                Long inventoryId = inventory.getId();
+                FacetCounts facetCounts = inventoryItemRepository.countFacets(inventoryId, authors == null, orPlaceholder(authors),
+                        genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers),
+                        price == null ? Double.MAX_VALUE : Double.parseDouble(price));
+                double maxPrice = Double.parseDouble(price == null ? priceText(facetCounts.getMaxPrice()) : price);
+
+                ListingCursor after = cursor == null ? null : ListingCursor.decode(cursor, sort);
+                Slice<InventoryItem> itemSlice;
+                if (after != null) {
+                    // seek past the last book shown instead of skipping the pages before it
+                    itemSlice = seekPage(inventoryId, sort, authors, genres, publishers, maxPrice, after, PageRequest.of(0, size));
+                    totalPages = null;
+                } else {
+                    Page<InventoryItem> itemPage = findPage(inventoryId, sort, authors, genres, publishers, maxPrice, PageRequest.of(page, size));
+                    itemSlice = itemPage;
+                    totalPages = itemPage.getTotalPages();
+                }
+                inventoryItems = itemSlice.getContent();
+                hasNextPage = itemSlice.hasNext();
+                if (hasNextPage) {
+                    nextCursor = ListingCursor.after(sort, inventoryItems.get(inventoryItems.size() - 1)).encode();
+                }
+
+                addFacets(model, facetCounts);
             } else {
-                inventoryItems = inventory.getBooksMatchingSearch(searchValue);
-                if (inventoryItems.isEmpty()) {
+                String cacheKey = SearchResultCache.key(inventory.getId(), searchValue, sort, authors, genres, publishers, price);
+                SearchResultCache.Result result = searchResultCache.get(cacheKey);
+                List<String> pageIsbns = null;
+                inventoryItems = null;
+                if (result != null) {
+                    pageIsbns = pageOf(result.getIsbns(), page, size);
+                    inventoryItems = catalogIndex.findAll(pageIsbns);
+                    if (inventoryItems.size() != pageIsbns.size()) {
+                        result = null; // a listed book is gone, work the listing out again
+                    }
+                }
+                if (result == null) {
+                    result = findBooks(inventory, searchValue, sort, authors, genres, publishers, price);
+                    searchResultCache.put(cacheKey, result);
+                    pageIsbns = pageOf(result.getIsbns(), page, size);
+                    inventoryItems = catalogIndex.findAll(pageIsbns);
+                }
+                totalPages = (result.getIsbns().size() + size - 1) / size;
+                hasNextPage = page + 1 < totalPages;
+
+                if (result.isNoMatches()) {
                     model.addAttribute("error", "No items match \"" + searchValue + "\".");
+                } else if (result.isSimilarMatches()) {
+                    model.addAttribute("searchNotice", "No exact matches for \"" + searchValue + "\", showing similar results.");
                 }
+                addFacets(model, result.getFacetCounts());
             }
 
-            // Sort after searching
-            System.out.println("SORT BY: " + sort);
-
-            if (sort.equals(SortCriteria.LOW_TO_HIGH.label)) {
-                inventoryItems.sort(Comparator.comparing(item -> item.getBook().getPrice())); //TODO replace with methods in inventoryItem repo?
-            } else if (sort.equals(SortCriteria.HIGH_TO_LOW.label)) {
-                inventoryItems.sort(Comparator.comparing(item -> item.getBook().getPrice(), Comparator.reverseOrder()));
-            } else if (sort.equals(SortCriteria.ALPHABETICAL.label)) {
-                inventoryItems.sort(Comparator.comparing(item -> item.getBook().getTitle()));
-            } else {
-                System.out.println("ERROR: Sort criteria not found");
+            model.addAttribute("page", page);
+            model.addAttribute("size", size);
+            model.addAttribute("totalPages", totalPages);
+            if (page > 0) {
+                model.addAttribute("previousPageUrl", pageUrl(searchValue, sort, authors, genres, publishers, price, page - 1, size, null));
             }
-
-            //filter
-            List<Book> bookList = BookFiltering.createBookList(inventoryItems);
-            List<String> authorList = BookFiltering.getAllAuthors(bookList);
-            List<String> genreList = BookFiltering.getAllGenres(bookList);
-            List<String> publisherList = BookFiltering.getAllPublishers(bookList);
-            String min_price = BookFiltering.getBookWithLowestPrice(bookList).getPrice().toString();
-            String max_price = BookFiltering.getBookWithHighestPrice(bookList).getPrice().toString();
-
-            //price stuff
-            if (price == null){
-                price = max_price;
+            if (hasNextPage) {
+                model.addAttribute("nextPageUrl", pageUrl(searchValue, sort, authors, genres, publishers, price, page + 1, size, nextCursor));
             }
-            System.out.println("---PRICE: " + price);
 
-            inventoryItems = BookFiltering.getItemsMatchingFilters(inventoryItems, authors, genres, publishers, Double.parseDouble(price));
-            List<Book> x = recommendBooks(loggedInUser.getId());
+            List<Book> x = recommendationsFor(loggedInUser.getId());
 
             model.addAttribute("books", x);
             model.addAttribute("user", loggedInUser);
             model.addAttribute("inventoryItems", inventoryItems);
             model.addAttribute("sort", sort);
-            model.addAttribute("authors", authorList);
-            model.addAttribute("genres", genreList);
-            model.addAttribute("publishers", publisherList);
-            model.addAttribute("min", min_price);
-            model.addAttribute("max", max_price);
             return "home";
         } else {
             return "access-denied";
         }
     }
 
+    /**
+     * Search, sort and filter the inventory for a book listing
+     * @param inventory the inventory
+     * @param searchValue value to search with
+     * @param sort sort criteria
+     * @param authors authors to keep, or null for all
+     * @param genres genres to keep, or null for all
+     * @param publishers publishers to keep, or null for all
+     * @param price maximum price, or null for the highest price
+     * @return the listing, ready to be cached
+     * @author Maisha Abdullah
+     * @author Thanuja Sivaananthan
+     * @author Shrimei Chock
+     */
+    private SearchResultCache.Result findBooks(Inventory inventory, String searchValue, String sort, List<String> authors,
+                                               List<String> genres, List<String> publishers, String price) {
+        // read these first so a change made while working this out leaves the result stale
+        long catalogVersion = CatalogVersion.current();
+        long invalidationsSeen = searchResultCache.invalidations();
+
+        // Sort
+        log.debug("Sort by: {}", sort);
+        SortCriteria sortCriteria = SortCriteria.fromLabel(sort);
+        if (sortCriteria == null) {
+            log.warn("Sort criteria not found: {}", sort);
+            sortCriteria = SortCriteria.RELEVANCE; // keep the order the books come in
+        }
+
+        //Search
+        List<InventoryItem> inventoryItems;
+        Set<String> dependsOn = null; // browsing depends on every book
+        boolean similarMatches = false;
+        boolean noMatches = false;
+        if (searchValue.isEmpty()) {
+            // kept sorted by the shared index as books come and go, read only so nothing is sorted here
+            inventoryItems = catalogIndex.sortedBy(sortCriteria);
+        } else {
+            // searched in the shared index, built once rather than for the inventory of this request. Every match is
+            // kept, the facets are counted over all of them and the filters and sort order may pick any of them.
+            // Sold out matches are kept too, the listing has to be worked out again once one comes back
+            inventoryItems = catalogIndex.searchWithSoldOut(searchValue, Integer.MAX_VALUE);
+            dependsOn = new HashSet<>();
+            addIsbns(dependsOn, inventoryItems);
+            if (inventoryItems.stream().noneMatch(catalogIndex::isListed)) {
+                // fall back to similar spellings before giving up
+                inventoryItems = catalogIndex.searchSimilarWithSoldOut(searchValue, Integer.MAX_VALUE);
+                addIsbns(dependsOn, inventoryItems);
+                similarMatches = inventoryItems.stream().anyMatch(catalogIndex::isListed);
+                noMatches = !similarMatches;
+            }
+        }
+
+        //filter
+        // compiled once per set of filters and kept next to the listings, without a price the cap is over every book
+        double maxPrice = price == null ? Double.MAX_VALUE : Double.parseDouble(price);
+        FilterPlan filterPlan = searchResultCache.plan(SearchResultCache.filterKey(authors, genres, publishers, price),
+                        () -> FilterPlan.compile(authors, genres, publishers, maxPrice))
+                .runInParallel(inventoryItems.size() >= PARALLEL_FILTER_THRESHOLD);
+        // counted over the search results in one pass, before the filters narrow them down
+        FacetCounts facetCounts = catalogIndex.countFacets(inventoryItems, filterPlan);
+
+        //price stuff
+        boolean unfiltered = authors == null && genres == null && publishers == null && price == null;
+        if (price == null){
+            price = priceText(facetCounts.getMaxPrice());
+        }
+        log.debug("Price: {}", price);
+
+        inventoryItems = catalogIndex.filter(inventoryItems, filterPlan);
+        if (!searchValue.isEmpty()) {
+            // search results are a new list for this request, ranked best match first unless another order was chosen
+            if (sortCriteria.comparator != null) {
+                inventoryItems.sort(sortCriteria.comparator);
+            } else if (unfiltered && inventoryItems.size() > MAX_SEARCH_RESULTS) {
+                // only the best matches of a plain search are listed, a filter or sort order lists all it picks
+                inventoryItems = inventoryItems.subList(0, MAX_SEARCH_RESULTS);
+            }
+        }
+        List<String> isbns = inventoryItems.stream().map(item -> item.getBook().getIsbn()).collect(Collectors.toList());
+        return new SearchResultCache.Result(catalogVersion, invalidationsSeen, isbns, dependsOn, facetCounts, similarMatches, noMatches);
+    }
+
+    /**
+     * Add the isbns of some items to a set
+     * @param isbns the set
+     * @param items the items
+     * @author Maisha Abdullah
+     */
+    private static void addIsbns(Set<String> isbns, List<InventoryItem> items) {
+        for (InventoryItem item : items) {
+            isbns.add(item.getBook().getIsbn());
+        }
+    }
+
+    /**
+     * Get one page of the in stock items matching the filters from the database, in the given order
+     * @param inventoryId id of the inventory
+     * @param sort sort criteria, one of the price or alphabetical orders
+     * @param authors authors to keep, or null for all
+     * @param genres genres to keep, or null for all
+     * @param publishers publishers to keep, or null for all
+     * @param maxPrice highest price to keep
+     * @param pageable page to get
+     * @return the page
+     * @author Maisha Abdullah
+     */
+    private Page<InventoryItem> findPage(Long inventoryId, String sort, List<String> authors, List<String> genres,
+                                         List<String> publishers, double maxPrice, Pageable pageable) {
+        if (sort.equals(SortCriteria.HIGH_TO_LOW.label)) {
+            return inventoryItemRepository.sortByPriceDesc(inventoryId, authors == null, orPlaceholder(authors),
+                    genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice, pageable);
+        } else if (sort.equals(SortCriteria.ALPHABETICAL.label)) {
+            return inventoryItemRepository.sortByTitleAsc(inventoryId, authors == null, orPlaceholder(authors),
+                    genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice, pageable);
+        }
+        // low to high is also the default order
+        return inventoryItemRepository.sortByPriceAsc(inventoryId, authors == null, orPlaceholder(authors),
+                genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice, pageable);
+    }
+
+    /**
+     * Get the in stock items matching the filters that come after a cursor from the database, in the given order
+     * @param inventoryId id of the inventory
+     * @param sort sort criteria, one of the price or alphabetical orders
+     * @param authors authors to keep, or null for all
+     * @param genres genres to keep, or null for all
+     * @param publishers publishers to keep, or null for all
+     * @param maxPrice highest price to keep
+     * @param after position of the last item already shown
+     * @param pageable number of items to get
+     * @return the items after the cursor
+     * @author Maisha Abdullah
+     */
+    private Slice<InventoryItem> seekPage(Long inventoryId, String sort, List<String> authors, List<String> genres,
+                                          List<String> publishers, double maxPrice, ListingCursor after, Pageable pageable) {
+        if (sort.equals(SortCriteria.HIGH_TO_LOW.label)) {
+            return inventoryItemRepository.seekByPriceDesc(inventoryId, authors == null, orPlaceholder(authors),
+                    genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice,
+                    after.getPrice(), after.getIsbn(), pageable);
+        } else if (sort.equals(SortCriteria.ALPHABETICAL.label)) {
+            return inventoryItemRepository.seekByTitleAsc(inventoryId, authors == null, orPlaceholder(authors),
+                    genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice,
+                    after.getTitle(), after.getIsbn(), pageable);
+        }
+        return inventoryItemRepository.seekByPriceAsc(inventoryId, authors == null, orPlaceholder(authors),
+                genres == null, orPlaceholder(genres), publishers == null, orPlaceholder(publishers), maxPrice,
+                after.getPrice(), after.getIsbn(), pageable);
+    }
+
+    /**
+     * Show the filter values with their counts and the price range
+     * @param model container
+     * @param facetCounts counts of the listing
+     * @author Maisha Abdullah
+     */
+    private static void addFacets(Model model, FacetCounts facetCounts) {
+        model.addAttribute("authors", facetCounts.getAuthors());
+        model.addAttribute("genres", facetCounts.getGenres());
+        model.addAttribute("publishers", facetCounts.getPublishers());
+        model.addAttribute("min", priceText(facetCounts.getMinPrice()));
+        model.addAttribute("max", priceText(facetCounts.getMaxPrice()));
+    }
+
+    /**
+     * Format a price bound for the price slider
+     * @param price the price, or null if there are no books
+     * @return the price as text
+     * @author Maisha Abdullah
+     */
+    private static String priceText(Double price) {
+        return price == null ? "0" : price.toString(); // no books to show
+    }
+
+    /**
+     * Get filter values to bind to an IN clause, which needs at least one value
+     * @param values selected filter values, or null for all
+     * @return the values, or a placeholder that the query ignores when the filter is off
+     * @author Maisha Abdullah
+     */
+    private static List<String> orPlaceholder(List<String> values) {
+        return values == null ? List.of("") : values;
+    }
+
+    /**
+     * Check a filter either keeps everything or names at least one value, an empty selection matches nothing
+     * @param values selected filter values
+     * @return if the database can apply the filter
+     * @author Maisha Abdullah
+     */
+    private static boolean hasSelection(List<String> values) {
+        return values == null || !values.isEmpty();
+    }
+
+    /**
+     * Get one page of a listing
+     * @param isbns isbns of the whole listing
+     * @param page page number, starting at 0
+     * @param size number of books on a page
+     * @return isbns on the page
+     * @author Maisha Abdullah
+     */
+    private static List<String> pageOf(List<String> isbns, int page, int size) {
+        int from = (int) Math.min((long) page * size, isbns.size());
+        return isbns.subList(from, Math.min(from + size, isbns.size()));
+    }
+
+    /**
+     * Build the link to another page of the same listing
+     * @param searchValue value searched with
+     * @param sort sort criteria
+     * @param authors selected authors, or null
+     * @param genres selected genres, or null
+     * @param publishers selected publishers, or null
+     * @param price maximum price, or null
+     * @param page page number to link to
+     * @param size number of books on a page
+     * @param cursor position to continue from, or null to skip to the page by number
+     * @return the link
+     * @author Maisha Abdullah
+     */
+    private static String pageUrl(String searchValue, String sort, List<String> authors, List<String> genres,
+                                  List<String> publishers, String price, int page, int size, String cursor) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/listAvailableBooks")
+                .queryParam("searchValue", searchValue)
+                .queryParam("sort", sort);
+        if (authors != null) {
+            builder.queryParam("author", authors.toArray());
+        }
+        if (genres != null) {
+            builder.queryParam("genre", genres.toArray());
+        }
+        if (publishers != null) {
+            builder.queryParam("publisher", publishers.toArray());
+        }
+        if (price != null) {
+            builder.queryParam("priceRange", price);
+        }
+        if (cursor != null) {
+            builder.queryParam("cursor", cursor);
+        }
+        return builder.queryParam("page", page)
+                .queryParam("size", size)
+                .encode()
+                .toUriString();
+    }
+
     /**
      * View details for a single book
      * @param model container
@@ -180,7 +508,7 @@ public class CheckoutController {
         if(loggedInUser == null){
             return "access-denied";
         }
-        List<Book> x = recommendBooks(loggedInUser.getId());
+        List<Book> x = recommendationsFor(loggedInUser.getId());
         model.addAttribute("inventory", inventoryItemRepository.findAll());
         model.addAttribute("books", x);
         return "home";
@@ -189,6 +517,7 @@ public class CheckoutController {
     /**
      * Method to submit an add to cart form
      * @param selectedItems the items selected from the checklist in the form
+     * @param fromCheckout if the form is on the checkout page, where the items are the isbns of cart lines instead of inventory item ids
      * @param model container
      * @return route to html page to display home page with list of available books
      * @author Maisha Abdullah
@@ -196,59 +525,185 @@ public class CheckoutController {
      */
     @PostMapping("/addToCart")
     public String addToCart(HttpServletRequest request, HttpServletResponse response,
-                            @RequestParam(name = "selectedItems", required = false) String[] selectedItems, Model model) {
+                            @RequestParam(name = "selectedItems", required = false) String[] selectedItems,
+                            @RequestParam(name = "fromCheckout", required = false, defaultValue = "false") boolean fromCheckout,
+                            Model model) {
         
-        System.out.println("-- ADD TO CART METHOD --");
-        System.out.println("\tSELECTED ITEM: " + Arrays.toString(selectedItems));
+        log.debug("Add to cart, selected items: {}", (Object) selectedItems); // formatted only when logged
 
         //get user and their shopping cart
         BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
-        ShoppingCart shoppingCart = loggedInUser.getShoppingCart();
 
         if (selectedItems != null) {
-            for (String selectedItem : selectedItems) {
-                if (checkoutFlag) {
-                    ShoppingCartItem cartItem = shoppingCartItemRepository.findById(Integer.parseInt(selectedItem));
-                    if (cartItem != null) {
-                        shoppingCart.addToCart(cartItem.getBook(), 1);
-//                        shoppingCartItemRepository.save(cartItem);
-                    }
-                } else {
-
-                    //find item in inventory and add to cart
-                    InventoryItem invItem = inventoryItemRepository.findById(Integer.parseInt(selectedItem));
-                    System.out.println("\tINVENTORY ITEM QUANTITY --BEFORE-- ADD TO CART: " + invItem.getQuantity());
-                    shoppingCart.addToCart(invItem.getBook(), 1);
-                    System.out.println("\tINVENTORY ITEM QUANTITY --AFTER-- ADD TO CART: " + invItem.getQuantity());
+            // the stock is written right away, the cart in memory is written behind
+            ShoppingCart shoppingCart = cartStore.update(loggedInUser.getShoppingCart(), cart -> {
+                addAllReserved(cart, selectedBooks(cart, selectedItems, fromCheckout));
+                return cart;
+            });
+            log.debug("Total in cart: {}", shoppingCart.getTotalQuantityOfCart());
+            cartTotalEvents.publish(shoppingCart.getId(), shoppingCart.getTotalQuantityOfCart());
+        }
 
-                    inventoryItemRepository.save(invItem);
+        return fromCheckout ? "redirect:/checkout" : "redirect:/listAvailableBooks";
+    }
 
-                    //print number of books in cart
-                    System.out.println("\tTOTAL IN CART: " + shoppingCart.getTotalQuantityOfCart());
+    /**
+     * Find the books of the selected items, keeping the order and repeats of the selection. Inventory items are
+     * loaded with one query, cart items are looked up in the cart itself
+     * @param shoppingCart the cart
+     * @param selectedItems ids of the selected inventory items, or isbns of the selected cart lines
+     * @param fromCheckout if the items are cart lines instead of inventory items
+     * @return the books, leaving out items that aren't found
+     * @author Maisha Abdullah
+     */
+    private List<Book> selectedBooks(ShoppingCart shoppingCart, String[] selectedItems, boolean fromCheckout) {
+        if (selectedItems == null) {
+            return List.of();
+        }
+        if (fromCheckout) {
+            // lines added since the cart was last written have no id yet, so they're selected by isbn
+            List<Book> books = new ArrayList<>();
+            for (String selectedItem : selectedItems) {
+                ShoppingCartItem cartItem = shoppingCart.findCartItem(selectedItem.trim());
+                if (cartItem != null) {
+                    books.add(cartItem.getBook());
                 }
-                //update the user's shopping cart and inventory
-                shoppingCartRepository.save(shoppingCart);
-                shoppingCartItemRepository.saveAll(shoppingCart.getBooksInCart());
-                inventoryRepository.save(inventoryRepository.findById(1));
+            }
+            return books;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (String selectedItem : selectedItems) {
+            try {
+                ids.add(Long.parseLong(selectedItem.trim()));
+            } catch (NumberFormatException e) {
+                log.debug("Not an item id: {}", selectedItem);
             }
         }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
 
-        //if on checkout page, recalculate total price
-        if(checkoutFlag){
-            double totalPrice = 0;
-            for (ShoppingCartItem item : shoppingCart.getBooksInCart()) {
-                totalPrice += item.getBook().getPrice() * item.getQuantity();
+        Map<Long, Book> bookOfItem = new HashMap<>();
+        for (InventoryItem item : inventoryItemRepository.findAllById(ids)) {
+            bookOfItem.put(item.getId(), item.getBook());
+        }
+        List<Book> books = new ArrayList<>();
+        for (Long id : ids) {
+            Book book = bookOfItem.get(id);
+            if (book != null) {
+                books.add(book);
             }
+        }
+        return books;
+    }
 
-            double roundedPrice = Math.round(totalPrice * 100.0) / 100.0;
+    /**
+     * Add one copy of each book to a cart if the shared stock ledger can spare it, take them from the stored stock
+     * in one batch of conditional updates, so concurrent carts can't both take the last copy, and hold them for the
+     * reservation time. The holds are stored in the same transaction as the stock, the cart itself is written behind
+     * @param shoppingCart the cart
+     * @param books the books, a book listed twice is added twice
+     * @author Maisha Abdullah
+     */
+    private void addAllReserved(ShoppingCart shoppingCart, List<Book> books) {
+        Map<String, InventoryItem> storedItems = storedItemsOf(books);
+        List<InventoryItem> reserved = new ArrayList<>();
+        for (Book book : books) {
+            InventoryItem inventoryItem = storedItems.get(book.getIsbn());
+            if (inventoryItem != null && stockLedger.reserve(book.getIsbn(), 1, inventoryItem::getQuantity)) {
+                reserved.add(inventoryItem);
+            } else {
+                log.debug("Out of stock: {}", book.getTitle());
+            }
+        }
 
-//            model.addAttribute("items", shoppingCart.getBooksInCart());
-//            model.addAttribute("totalPrice", roundedPrice);
+        List<InventoryItem> taken;
+        try {
+            taken = inventoryStock.takeAll(reserved, 1, inventoryItem -> shoppingCart.addToCart(inventoryItem, 1),
+                    written -> cartReservations.store(shoppingCart.getId(), isbnsOf(written), 1));
+        } catch (RuntimeException e) {
+            // rolled back, nothing was taken from the stored stock
+            for (InventoryItem inventoryItem : reserved) {
+                stockLedger.release(inventoryItem.getBook().getIsbn(), 1);
+            }
+            throw e;
+        }
+        for (InventoryItem inventoryItem : taken) {
+            reserved.remove(inventoryItem);
+            cartReservations.hold(shoppingCart.getId(), inventoryItem.getBook().getIsbn(), 1);
+        }
+        for (InventoryItem inventoryItem : reserved) {
+            // sold out in the database, e.g. by another instance: count from the stored stock again
+            stockLedger.forget(inventoryItem.getBook().getIsbn());
+            log.debug("Out of stock: {}", inventoryItem.getBook().getTitle());
+        }
+    }
 
-            return "redirect:/checkout";
+    /**
+     * Load the stored items of the books in this request, in one query, so cart changes are made on items
+     * this request's transaction can write and reload rather than on an inventory the cart kept
+     * @param books the books
+     * @return the items by isbn, sold out ones included
+     * @author Maisha Abdullah
+     */
+    private Map<String, InventoryItem> storedItemsOf(List<Book> books) {
+        Map<String, InventoryItem> storedItems = new HashMap<>();
+        if (books.isEmpty()) {
+            return storedItems;
+        }
+        Set<String> isbns = new HashSet<>();
+        for (Book book : books) {
+            isbns.add(book.getIsbn());
+        }
+        for (InventoryItem inventoryItem : inventoryItemRepository.findStored(CatalogIndex.INVENTORY_ID, isbns)) {
+            storedItems.putIfAbsent(inventoryItem.getBook().getIsbn(), inventoryItem);
+        }
+        return storedItems;
+    }
+
+    /**
+     * Get the isbns of the books of some items
+     * @param inventoryItems the items
+     * @return the isbns, in the same order
+     * @author Maisha Abdullah
+     */
+    private static List<String> isbnsOf(List<InventoryItem> inventoryItems) {
+        List<String> isbns = new ArrayList<>(inventoryItems.size());
+        for (InventoryItem inventoryItem : inventoryItems) {
+            isbns.add(inventoryItem.getBook().getIsbn());
+        }
+        return isbns;
+    }
+
+    /**
+     * Remove one copy of each book from a cart, putting them back into the stored stock in one batch and into
+     * the stock ledger
+     * @param shoppingCart the cart
+     * @param books the books, a book listed twice is removed twice
+     * @author Maisha Abdullah
+     */
+    private void removeAllReturned(ShoppingCart shoppingCart, List<Book> books) {
+        Map<String, InventoryItem> storedItems = storedItemsOf(books);
+        List<Book> removed = new ArrayList<>();
+        List<InventoryItem> inventoryItems = new ArrayList<>();
+        for (Book book : books) {
+            InventoryItem inventoryItem = storedItems.get(book.getIsbn());
+            if (inventoryItem != null) {
+                inventoryItems.add(inventoryItem);
+            } else if (shoppingCart.takeOutOfCart(book.getIsbn(), 1)) {
+                removed.add(book); // no longer stored, nowhere to put it back
+            }
+        }
+        List<InventoryItem> returned = inventoryStock.putBackAll(inventoryItems, 1, inventoryItem -> shoppingCart.removeFromCart(inventoryItem, 1),
+                written -> cartReservations.storeReleases(shoppingCart.getId(), isbnsOf(written), 1));
+        for (InventoryItem inventoryItem : returned) {
+            removed.add(inventoryItem.getBook());
+        }
+
+        for (Book book : removed) {
+            stockLedger.release(book.getIsbn(), 1);
+            cartReservations.release(shoppingCart.getId(), book.getIsbn(), 1);
         }
-      
-        return "redirect:/listAvailableBooks";
     }
 
     /**
@@ -262,11 +717,29 @@ public class CheckoutController {
         System.out.println("going into get total in cart");
 
         BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
-        ShoppingCart shoppingCart = loggedInUser.getShoppingCart();
+        ShoppingCart shoppingCart = cartStore.cartOf(loggedInUser.getShoppingCart());
 
         return shoppingCart.getTotalQuantityOfCart();
     }
 
+    /**
+     * Method to stream the total in cart to the html, sent once when the page opens it and again whenever the cart changes
+     * @return the stream of totals, or nothing if no user is logged in
+     * @author Maisha Abdullah
+     */
+    @GetMapping(path = "/cartTotal/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter streamTotalInCart(HttpServletRequest request, HttpServletResponse response) {
+        BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
+        if (loggedInUser == null) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT); // tells the browser not to reconnect
+            return null;
+        }
+        ShoppingCart shoppingCart = cartStore.cartOf(loggedInUser.getShoppingCart());
+
+        return cartTotalEvents.subscribe(shoppingCart.getId(), shoppingCart.getTotalQuantityOfCart());
+    }
+
     /**
      * Method to go to remove from cart form
      * @param model container
@@ -283,7 +756,7 @@ public class CheckoutController {
 
         model.addAttribute("inventory", inventoryItemRepository.findAll());
 
-//        List<Book> x = recommendBooks(loggedInUser.getId());
+//        List<Book> x = recommendationsFor(loggedInUser.getId());
 //        model.addAttribute("books", x);
 
         return "home";
@@ -292,76 +765,33 @@ public class CheckoutController {
     /**
      * Method to submit a remove from cart form
      * @param selectedItems the items selected from the checklist in the form
+     * @param fromCheckout if the form is on the checkout page, where the items are the isbns of cart lines instead of inventory item ids
      * @param model container
      * @return route to html page to display home page with list of available books
      * @author Maisha Abdullah
      */
     @PostMapping("/removeFromCart")
     public String removeFromCart (HttpServletRequest request, HttpServletResponse response,
-                                  @RequestParam(name = "selectedItems", required = false) String[]selectedItems, Model
-            model){
+                                  @RequestParam(name = "selectedItems", required = false) String[]selectedItems,
+                                  @RequestParam(name = "fromCheckout", required = false, defaultValue = "false") boolean fromCheckout,
+                                  Model model){
 
-        System.out.println("-- REMOVE FROM CART METHOD --");
-        System.out.println("\tSELECTED ITEM: " + Arrays.toString(selectedItems));
+        log.debug("Remove from cart, selected items: {}", (Object) selectedItems); // formatted only when logged
 
         //get user and their shopping cart
         BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
-        ShoppingCart shoppingCart = loggedInUser.getShoppingCart();
 
         if (selectedItems != null) {
-            for (String selectedItem : selectedItems) {
-
-                //if user is removing from checkout page
-                if(checkoutFlag){
-                    ShoppingCartItem cartItem = shoppingCartItemRepository.findById(Integer.parseInt(selectedItem));
-                    if (cartItem != null) {
-                        shoppingCart.removeFromCart(cartItem.getBook(), 1);
-                        shoppingCartItemRepository.delete(cartItem);
-                    }
-                } else {
-                    //find item in inventory and remove from cart
-                    InventoryItem invItem = inventoryItemRepository.findById(Integer.parseInt(selectedItem));
-                    System.out.println("\tINVENTORY ITEM QUANTITY --BEFORE--  REMOVE FROM CART: " + invItem.getQuantity());
-                    shoppingCart.removeFromCart(invItem.getBook(), 1);
-                    System.out.println("\tINVENTORY ITEM QUANTITY --AFTER-- REMOVE FROM CART: " + invItem.getQuantity());
-
-                    //remove items from cart that have a quantity of 0
-                    for (ShoppingCartItem shoppingCartItem : shoppingCartItemRepository.findByQuantity(0)){
-                        System.out.println("\tFOUND EMPTY ITEM, WILL DELETE " + shoppingCartItem.getBook().getTitle());
-                        shoppingCartItemRepository.delete(shoppingCartItem);
-                    }
-
-                    //update inventory
-                    inventoryItemRepository.save(invItem);
-
-                    System.out.println("\tTOTAL IN CART: " + shoppingCart.getTotalQuantityOfCart());
-                }
-
-                //update shopping cart in repo
-                shoppingCartRepository.save(shoppingCart);
-                shoppingCartItemRepository.saveAll(shoppingCart.getBooksInCart());
-
-                //update inventory
-                inventoryRepository.save(inventoryRepository.findById(1));
-            }
-        }
-      
-        //if on checkout page, recalculate total price
-        if(checkoutFlag){
-            double totalPrice = 0;
-            for (ShoppingCartItem item : shoppingCart.getBooksInCart()) {
-                totalPrice += item.getBook().getPrice() * item.getQuantity();
-            }
-    
-            double roundedPrice = Math.round(totalPrice * 100.0) / 100.0;
-            
-//            model.addAttribute("items", shoppingCart.getBooksInCart());
-//            model.addAttribute("totalPrice", roundedPrice);
-    
-            return "redirect:/checkout";
+            // the stock is written right away, the cart in memory is written behind
+            ShoppingCart shoppingCart = cartStore.update(loggedInUser.getShoppingCart(), cart -> {
+                removeAllReturned(cart, selectedBooks(cart, selectedItems, fromCheckout));
+                return cart;
+            });
+            log.debug("Total in cart: {}", shoppingCart.getTotalQuantityOfCart());
+            cartTotalEvents.publish(shoppingCart.getId(), shoppingCart.getTotalQuantityOfCart());
         }
 
-        return "redirect:/listAvailableBooks";
+        return fromCheckout ? "redirect:/checkout" : "redirect:/listAvailableBooks";
     }
 
     /** 
@@ -379,105 +809,154 @@ public class CheckoutController {
             return "access-denied";
         }
 
-        checkoutFlag = true;
-        ShoppingCart shoppingCart = loggedInUser.getShoppingCart();
-
-        //Calculate total price
-        double totalPrice = 0;
-        for (ShoppingCartItem item : shoppingCart.getBooksInCart()) {
-            totalPrice += item.getBook().getPrice() * item.getQuantity();
-        }
-
-        double roundedPrice = Math.round(totalPrice * 100.0) / 100.0;
-        
-        model.addAttribute("items", shoppingCart.getBooksInCart());
-        model.addAttribute("totalPrice", roundedPrice);
+        // copied while no one changes the cart, the page is rendered after the lock is let go
+        cartStore.read(loggedInUser.getShoppingCart(), shoppingCart -> {
+            model.addAttribute("items", new ArrayList<>(shoppingCart.getBooksInCart()));
+            model.addAttribute("totalPrice", shoppingCart.getTotalPrice()); // kept up to date in cents, nothing to add up
+            return shoppingCart;
+        });
+        // sent back with the form, so submitting it twice places one order
+        model.addAttribute("confirmationNumber", UUID.randomUUID().toString());
 
         return "checkout";
    }
 
     /**
     * Method to process checkout
+    * @param confirmationNumber confirmation number handed out with the checkout form, the same one for a form submitted twice
     * @param model container
-    * @return route to html page to display order confirmation page
+    * @return route to html page to display order confirmation page, or back to checkout if there was nothing to order
     * @author Waheeb Hashmi
+    * @author Maisha Abdullah
     */
     @PostMapping("/checkout")
-    public String confirmOrder(HttpServletRequest request, HttpServletResponse response, Model model) {
-        // Generate a random confirmation number
-        String confirmationNumber = UUID.randomUUID().toString();
-        model.addAttribute("confirmationNumber", confirmationNumber);
-        model.addAttribute("confirmationMessage", "Order Completed!");
-
+    public String confirmOrder(HttpServletRequest request, HttpServletResponse response,
+                               @RequestParam(name = "confirmationNumber", required = false) String confirmationNumber,
+                               Model model) {
         BookUser loggedInUser = userController.getLoggedInUser(request.getCookies());
+        if(loggedInUser == null){
+            return "access-denied";
+        }
+        if (confirmationNumber == null || confirmationNumber.isBlank()) {
+            // Generate a random confirmation number
+            confirmationNumber = UUID.randomUUID().toString();
+        }
         ShoppingCart shoppingCart = loggedInUser.getShoppingCart();
 
-        shoppingCart.checkout();
-
-        shoppingCartRepository.save(shoppingCart);
-        // shoppingCartItemRepository.deleteAll(shoppingCartItemRepository.findByQuantity(0));
-        // shoppingCartItemRepository.saveAll(shoppingCart.getBooksInCart()); // not sure if we need this
-        inventoryRepository.save(inventoryRepository.findById(1));
+        BookOrder order = orderService.confirm(loggedInUser.getId(), shoppingCart, confirmationNumber);
+        if (order == null) {
+            return "redirect:/checkout";
+        }
+        cartReservations.clear(shoppingCart.getId()); // bought, no longer held
+        cartTotalEvents.publish(shoppingCart.getId(), 0);
 
+        model.addAttribute("confirmationNumber", order.getConfirmationNumber());
+        model.addAttribute("confirmationMessage", "Order Completed!");
         return "order-confirmation";
     }
 
+    /**
+     * Get the books recommended to a user, worked out on first use and kept until an order changes them
+     * @param userId user's id
+     * @return the recommended books, read only
+     * @author Maisha Abdullah
+     */
+    private List<Book> recommendationsFor(Long userId) {
+        if (userId == null) {
+            return List.of();
+        }
+        List<Book> cached = recommendationsByUser.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long seen = ordersSeen.get();
+        List<Book> recommended = Collections.unmodifiableList(recommendBooks(userId));
+        if (recommendationsByUser.size() >= MAX_CACHED_RECOMMENDATIONS) {
+            recommendationsByUser.clear(); // cheap to work out again, not worth tracking which are in use
+        }
+        recommendationsByUser.put(userId, recommended);
+        if (ordersSeen.get() != seen) {
+            // an order was placed while working them out, they may have been read from before it
+            recommendationsByUser.remove(userId, recommended);
+        }
+        return recommended;
+    }
+
+    /**
+     * Drop the recommendations an order changed and work out the buyer's again, in the background after the order.
+     * Every user who bought one of the buyer's books is at a new distance from the buyer, so theirs are dropped too.
+     * Orders placed on another app instance don't reach this one
+     * @param order the order just placed
+     * @author Maisha Abdullah
+     */
+    void refreshRecommendations(BookOrder order) {
+        ordersSeen.incrementAndGet();
+        Set<String> isbns = new HashSet<>();
+        for (Book book : orderLineRepository.findBooksBoughtBy(order.getUserId())) {
+            isbns.add(book.getIsbn());
+        }
+        if (!isbns.isEmpty()) {
+            for (Long buyer : orderLineRepository.findBuyersOf(isbns)) {
+                recommendationsByUser.remove(buyer);
+            }
+        }
+        recommendationsByUser.remove(order.getUserId());
+        recommendationsFor(order.getUserId()); // ready before the buyer's next page
+    }
+
     /**
      * Method that recommends the books based on the jaccard dizstance between a user and other users
      * @author Waheeb Hashmi
      * @param userId user's id
      * @return ArrayList<Book>
      */
-  public ArrayList<Book> recommendBooks(Long userId) {
+    public ArrayList<Book> recommendBooks(Long userId) {
         Set<Book> recommendedBooks = new HashSet<>();
-        if(userId != null){
-            Set<Book> userBooks = getBooksInCartByUserId(userId);
+        if (userId != null) {
+            Set<Book> userBooks = new HashSet<>(orderLineRepository.findBooksBoughtBy(userId));
             if (!userBooks.isEmpty()) {
+                // only users who share a book can be closer than the farthest distance, so only their purchases are read
+                Set<String> isbns = new HashSet<>();
+                for (Book book : userBooks) {
+                    isbns.add(book.getIsbn());
+                }
+                Map<Long, Set<Book>> booksByUser = new HashMap<>();
+                for (Object[] purchase : orderLineRepository.findPurchasesOfBuyersOf(isbns)) {
+                    booksByUser.computeIfAbsent((Long) purchase[0], id -> new HashSet<>()).add((Book) purchase[1]);
+                }
 
-            Map<Long, Double> userDistances = new HashMap<>();
+                Map<Long, Double> userDistances = new HashMap<>();
 
-            for (BookUser otherUser : userRepository.findAll()) {
-                if (!otherUser.getId().equals(userId)) {
-                    Set<Book> otherUserBooks = getBooksInCartByUserId(otherUser.getId());
-                    double distance = userController.calculateJaccardDistance(userBooks, otherUserBooks);
-                    if (distance < 1) {
-                        userDistances.put(otherUser.getId(), distance);
+                for (Map.Entry<Long, Set<Book>> otherUser : booksByUser.entrySet()) {
+                    if (!otherUser.getKey().equals(userId)) {
+                        double distance = userController.calculateJaccardDistance(userBooks, otherUser.getValue());
+                        if (distance < 1) {
+                            userDistances.put(otherUser.getKey(), distance);
+                        }
                     }
                 }
-            }
 
-            List<Long> similarUserIds = new ArrayList<>();
-            List<Map.Entry<Long, Double>> entries = new ArrayList<>(userDistances.entrySet());
-            entries.sort(Map.Entry.comparingByValue());
+                List<Map.Entry<Long, Double>> entries = new ArrayList<>(userDistances.entrySet());
+                entries.sort(Map.Entry.comparingByValue());
 
-            for (Map.Entry<Long, Double> entry : entries) {
-                similarUserIds.add(entry.getKey());
+                for (Map.Entry<Long, Double> entry : entries) {
+                    Set<Book> books = new HashSet<>(booksByUser.get(entry.getKey()));
+                    books.removeAll(userBooks);
+                    recommendedBooks.addAll(books);
+                }
             }
-            
-        for (Long similarUserId : similarUserIds) {
-            Set<Book> books = getBooksInCartByUserId(similarUserId);
-            books.removeAll(userBooks);
-            recommendedBooks.addAll(books);
         }
+        return new ArrayList<>(recommendedBooks);
     }
-}
-    return new ArrayList<>(recommendedBooks);
-}
 
-   /**
-    * Method that gets the books in the shopping cart by user id
-    * @author Waheeb Hashmi
-    * @param userId user's id
-    * @return Set<Book>
-    */
-   public Set<Book> getBooksInCartByUserId(long userId) {
-    BookUser user = userRepository.findById(userId);
-    ShoppingCart shoppingCart = user.getShoppingCart();
-    Set<Book> books = new HashSet<>();
-    for (ShoppingCartItem item : shoppingCart.getBooksForRecommendations()) {
-        books.add(item.getBook());
-        }
-    return books;
-}
+    /**
+     * Method that gets the books a user has bought, from the lines of their orders
+     * @author Waheeb Hashmi
+     * @param userId user's id
+     * @return Set<Book>
+     */
+    public Set<Book> getBooksInCartByUserId(long userId) {
+        return new HashSet<>(orderLineRepository.findBooksBoughtBy(userId));
+    }
 
 }
@@ -0,0 +1,133 @@
+/**
+ * Hashed timer wheel: entries are dropped into the slot their deadline falls in, and every tick only looks at
+ * the slot it lands on, so finding what expired costs nothing for the entries that didn't
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+public class ExpiryWheel<T> {
+
+    private final List<LinkedList<Entry<T>>> slots;
+    private final long tickMillis;
+    private long nextTick; // start of the next tick to process, in ticks since the epoch
+    private int size;
+
+    /**
+     * Create an empty wheel
+     * @param slotCount number of slots, a deadline further away than one turn waits extra turns in its slot
+     * @param tickMillis length of a tick, deadlines are only checked this often
+     * @param nowMillis current time
+     * @author Maisha Abdullah
+     */
+    public ExpiryWheel(int slotCount, long tickMillis, long nowMillis) {
+        slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new LinkedList<>());
+        }
+        this.tickMillis = tickMillis;
+        this.nextTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Add a value that expires at a deadline
+     * @param value the value
+     * @param deadlineMillis time it expires at
+     * @return handle to cancel it with
+     * @author Maisha Abdullah
+     */
+    public synchronized Entry<T> schedule(T value, long deadlineMillis) {
+        // never in a tick already processed, it would have to wait a whole turn
+        long tick = Math.max(deadlineMillis / tickMillis, nextTick);
+        Entry<T> entry = new Entry<>(value, deadlineMillis);
+        slots.get(slotOf(tick)).add(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Cancel a value so it never expires
+     * @param entry handle from schedule
+     * @return if it was still waiting
+     * @author Maisha Abdullah
+     */
+    public synchronized boolean cancel(Entry<T> entry) {
+        if (entry.done) {
+            return false;
+        }
+        // left in its slot until the wheel comes by, so cancelling doesn't search the slot
+        entry.done = true;
+        size--;
+        return true;
+    }
+
+    /**
+     * Move the wheel up to the current time
+     * @param nowMillis current time
+     * @return values whose deadline passed, oldest tick first
+     * @author Maisha Abdullah
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        // only ticks that are over, so no deadline in them is still to come when the wheel moves past
+        long lastTick = (nowMillis + 1) / tickMillis - 1;
+        // after a long pause every slot is due, one turn covers them all
+        long firstTick = Math.max(nextTick, lastTick - slots.size() + 1);
+        for (long tick = firstTick; tick <= lastTick; tick++) {
+            Iterator<Entry<T>> entries = slots.get(slotOf(tick)).iterator();
+            while (entries.hasNext()) {
+                Entry<T> entry = entries.next();
+                if (entry.done) {
+                    entries.remove(); // cancelled
+                } else if (entry.deadlineMillis <= nowMillis) {
+                    entries.remove();
+                    entry.done = true;
+                    size--;
+                    expired.add(entry.value);
+                }
+            }
+        }
+        nextTick = Math.max(nextTick, lastTick + 1);
+        return expired;
+    }
+
+    /**
+     * Get the number of values waiting
+     * @return number of values
+     * @author Maisha Abdullah
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.size());
+    }
+
+    /**
+     * A value waiting in the wheel
+     */
+    public static class Entry<T> {
+        private final T value;
+        private final long deadlineMillis;
+        private boolean done;
+
+        private Entry(T value, long deadlineMillis) {
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        /**
+         * Get the value
+         * @return the value
+         * @author Maisha Abdullah
+         */
+        public T getValue() {
+            return value;
+        }
+    }
+}
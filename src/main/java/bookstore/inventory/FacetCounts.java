@@ -0,0 +1,80 @@
+/**
+ * Number of books for each author, genre and publisher filter value, and the price bounds, of a listing
+ */
+
+package bookstore.inventory;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class FacetCounts {
+
+    private final Map<String, Integer> authors;
+    private final Map<String, Integer> genres;
+    private final Map<String, Integer> publishers;
+    private final Double minPrice;
+    private final Double maxPrice;
+
+    /**
+     * Create facet counts
+     * @param authors number of books by each author
+     * @param genres number of books in each genre
+     * @param publishers number of books from each publisher
+     * @param minPrice lowest price, or null if there are no books
+     * @param maxPrice highest price, or null if there are no books
+     * @author Maisha Abdullah
+     */
+    public FacetCounts(Map<String, Integer> authors, Map<String, Integer> genres, Map<String, Integer> publishers,
+                       Double minPrice, Double maxPrice) {
+        this.authors = Collections.unmodifiableMap(authors);
+        this.genres = Collections.unmodifiableMap(genres);
+        this.publishers = Collections.unmodifiableMap(publishers);
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * Get the number of books by each author
+     * @return count of each author name, alphabetically
+     * @author Maisha Abdullah
+     */
+    public Map<String, Integer> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Get the number of books in each genre
+     * @return count of each genre, alphabetically
+     * @author Maisha Abdullah
+     */
+    public Map<String, Integer> getGenres() {
+        return genres;
+    }
+
+    /**
+     * Get the number of books from each publisher
+     * @return count of each publisher, alphabetically
+     * @author Maisha Abdullah
+     */
+    public Map<String, Integer> getPublishers() {
+        return publishers;
+    }
+
+    /**
+     * Get the lowest price
+     * @return the price, or null if there are no books
+     * @author Maisha Abdullah
+     */
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * Get the highest price
+     * @return the price, or null if there are no books
+     * @author Maisha Abdullah
+     */
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+}
@@ -0,0 +1,451 @@
+/**
+ * Bitmaps of the inventory items having each author, genre and publisher, and the items sorted by price,
+ * used to answer the listing filters. The bitmaps and price order are built once and never change. Books added,
+ * edited or removed afterwards are kept in a small map by isbn that is checked before the bitmaps, so a change
+ * copies only that map. Once it holds more than about the square root of the catalog, the owner builds a new index.
+ * An index never changes once made, so any number of listings can read one without locking.
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class FacetIndex {
+
+    // changes tolerated before rebuilding pays off, each change copies them
+    private static final int MIN_CHANGES_BEFORE_COMPACTION = 64;
+
+    private final Map<InventoryItem, Integer> ordinals;
+    // for other copies of an indexed item, e.g. one listed before its book was edited
+    private final Map<String, Integer> ordinalsByIsbn;
+    // facet values each ordinal was indexed under
+    private final List<FacetValues> indexedValues;
+
+    private final Map<String, OrdinalBitmap> authors;
+    private final Map<String, OrdinalBitmap> genres;
+    private final Map<String, OrdinalBitmap> publishers;
+    private final PriceIndex prices;
+
+    // facet values of the books changed since the bitmaps were built, by isbn, REMOVED once a book is no longer indexed
+    private final Map<String, FacetValues> changes;
+    private final int size;
+
+    /**
+     * Index the facets of the given items
+     * @param items items to index
+     * @author Maisha Abdullah
+     */
+    public FacetIndex(List<InventoryItem> items) {
+        ordinals = new IdentityHashMap<>();
+        ordinalsByIsbn = new HashMap<>();
+        indexedValues = new ArrayList<>(items.size());
+        authors = new HashMap<>();
+        genres = new HashMap<>();
+        publishers = new HashMap<>();
+
+        long[] centsByOrdinal = new long[items.size()];
+        for (InventoryItem item : items) {
+            if (ordinals.containsKey(item)) {
+                continue;
+            }
+            int ordinal = indexedValues.size();
+            ordinals.put(item, ordinal);
+            ordinalsByIsbn.putIfAbsent(item.getBook().getIsbn(), ordinal);
+            FacetValues values = new FacetValues(item.getBook());
+            indexedValues.add(values);
+            for (String author : values.authors) {
+                addBit(authors, author, ordinal);
+            }
+            addBit(genres, values.genre, ordinal);
+            addBit(publishers, values.publisher, ordinal);
+            centsByOrdinal[ordinal] = values.priceCents;
+        }
+        // sorted once rather than inserting every price into place
+        prices = new PriceIndex(centsByOrdinal, indexedValues.size());
+        changes = Map.of();
+        size = ordinals.size();
+    }
+
+    /**
+     * Make a changed copy of an index, sharing everything but the changes
+     * @param index the index to copy
+     * @param changes facet values of the books changed since the bitmaps were built
+     * @param size number of items indexed with the changes
+     * @author Maisha Abdullah
+     */
+    private FacetIndex(FacetIndex index, Map<String, FacetValues> changes, int size) {
+        ordinals = index.ordinals;
+        ordinalsByIsbn = index.ordinalsByIsbn;
+        indexedValues = index.indexedValues;
+        authors = index.authors;
+        genres = index.genres;
+        publishers = index.publishers;
+        prices = index.prices;
+        this.changes = changes;
+        this.size = size;
+    }
+
+    /**
+     * Get the number of items indexed
+     * @return number of items
+     * @author Maisha Abdullah
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index a new item
+     * @param item the item
+     * @return a new index with the item, this one is left as it is
+     * @author Maisha Abdullah
+     */
+    public FacetIndex withAdded(InventoryItem item) {
+        if (isIndexed(item.getBook().getIsbn())) {
+            return withReplaced(item, item);
+        }
+        return withChange(item.getBook().getIsbn(), new FacetValues(item.getBook()), size + 1);
+    }
+
+    /**
+     * Re-index an item whose book changed, the changed item takes the old item's place
+     * @param item the item indexed so far
+     * @param changedItem the item holding the changed book, may be the same item
+     * @return a new index with the change, this one is left as it is
+     * @author Maisha Abdullah
+     */
+    public FacetIndex withReplaced(InventoryItem item, InventoryItem changedItem) {
+        if (!isIndexed(item.getBook().getIsbn())) {
+            return withAdded(changedItem);
+        }
+        return withChange(changedItem.getBook().getIsbn(), new FacetValues(changedItem.getBook()), size);
+    }
+
+    /**
+     * Stop indexing an item
+     * @param item the item
+     * @return a new index without the item, this one is left as it is
+     * @author Maisha Abdullah
+     */
+    public FacetIndex withRemoved(InventoryItem item) {
+        String isbn = item.getBook().getIsbn();
+        if (!isIndexed(isbn)) {
+            return this;
+        }
+        // a book added since the bitmaps were built is just forgotten, one in the bitmaps has to be masked
+        return withChange(isbn, ordinalsByIsbn.containsKey(isbn) ? FacetValues.REMOVED : null, size - 1);
+    }
+
+    /**
+     * Check if enough books changed that rebuilding would pay off: every change copies the changes made so far,
+     * so they are kept to about the square root of the catalog
+     * @return if the index should be rebuilt
+     * @author Maisha Abdullah
+     */
+    public boolean needsCompaction() {
+        return changes.size() > Math.max(MIN_CHANGES_BEFORE_COMPACTION, (int) Math.sqrt(size));
+    }
+
+    /**
+     * Keep the items matching the filters: any selected value within a facet, every facet with a selection.
+     * Items are checked through the bitmaps of their own or an equal book's ordinal, or through the values
+     * their book had when it last changed, never through their book. Items whose book isn't indexed are left out
+     * @param items items to filter, in the order they should be returned
+     * @param plan the compiled filters
+     * @return the matching items in the same order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> filter(List<InventoryItem> items, FilterPlan plan) {
+        return filter(items, plan, item -> true);
+    }
+
+    /**
+     * Keep the items matching the filters that also pass a test, see filter(items, plan)
+     * @param items items to filter, in the order they should be returned
+     * @param plan the compiled filters
+     * @param listed tests if an item is listed at all, e.g. if it is in stock
+     * @return the matching items in the same order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> filter(List<InventoryItem> items, FilterPlan plan, Predicate<InventoryItem> listed) {
+        // same order as the plan checks a single book in
+        long[] selected = selectAtMost(null, plan.getMaxCents());
+        selected = select(selected, genres, plan.getGenres());
+        selected = select(selected, publishers, plan.getPublishers());
+        long[] matching = select(selected, authors, plan.getAuthors());
+
+        if (plan.isParallel()) {
+            // only reads the index, which never changes once built
+            return IntStream.range(0, items.size()).parallel()
+                    .filter(i -> listed.test(items.get(i)) && matches(items.get(i), matching, plan))
+                    .mapToObj(items::get)
+                    .collect(Collectors.toList());
+        }
+        List<InventoryItem> kept = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            InventoryItem item = items.get(i);
+            if (listed.test(item) && matches(item, matching, plan)) {
+                kept.add(item);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Count the items having each facet value and find their price bounds, in one pass over the items.
+     * Each facet is counted within the selections of the other facets and the price cap but not its own,
+     * so a count tells how many books ticking that value would show. The price bounds are found within
+     * all facet selections. Items whose book isn't indexed aren't counted.
+     * @param items items to count, e.g. the search results
+     * @param plan the compiled filters
+     * @return counts of every value found in the items, alphabetically
+     * @author Maisha Abdullah
+     */
+    public FacetCounts count(List<InventoryItem> items, FilterPlan plan) {
+        return count(items, plan, item -> true);
+    }
+
+    /**
+     * Count the items that pass a test having each facet value and find their price bounds, see count(items, plan)
+     * @param items items to count, e.g. the search results
+     * @param plan the compiled filters
+     * @param listed tests if an item is listed at all, e.g. if it is in stock
+     * @return counts of every value found in the listed items, alphabetically
+     * @author Maisha Abdullah
+     */
+    public FacetCounts count(List<InventoryItem> items, FilterPlan plan, Predicate<InventoryItem> listed) {
+        long[] priceSelection = selectAtMost(null, plan.getMaxCents());
+        long[] genreSelection = select(null, genres, plan.getGenres());
+        long[] publisherSelection = select(null, publishers, plan.getPublishers());
+        long[] authorSelection = select(null, authors, plan.getAuthors());
+
+        Map<String, Integer> authorCounts = new TreeMap<>();
+        Map<String, Integer> genreCounts = new TreeMap<>();
+        Map<String, Integer> publisherCounts = new TreeMap<>();
+        long lowestCents = Long.MAX_VALUE;
+        long highestCents = Long.MIN_VALUE;
+
+        for (int i = 0; i < items.size(); i++) {
+            InventoryItem item = items.get(i);
+            if (!listed.test(item)) {
+                continue;
+            }
+            boolean inPrice;
+            boolean inGenres;
+            boolean inPublishers;
+            boolean inAuthors;
+            FacetValues values = changes.get(item.getBook().getIsbn());
+            if (values != null) {
+                if (values == FacetValues.REMOVED) {
+                    continue; // sold out since it was listed
+                }
+                // changed since the bitmaps were built, checked against its own values
+                inPrice = values.inPrice(plan);
+                inGenres = values.inGenres(plan);
+                inPublishers = values.inPublishers(plan);
+                inAuthors = values.inAuthors(plan);
+            } else {
+                Integer ordinal = ordinalOf(item);
+                if (ordinal == null) {
+                    continue; // sold out since it was listed
+                }
+                values = indexedValues.get(ordinal);
+                inPrice = isSelected(priceSelection, ordinal);
+                inGenres = isSelected(genreSelection, ordinal);
+                inPublishers = isSelected(publisherSelection, ordinal);
+                inAuthors = isSelected(authorSelection, ordinal);
+            }
+
+            for (String author : values.authors) {
+                addCount(authorCounts, author, inGenres && inPublishers && inPrice);
+            }
+            addCount(genreCounts, values.genre, inAuthors && inPublishers && inPrice);
+            addCount(publisherCounts, values.publisher, inAuthors && inGenres && inPrice);
+            if (inAuthors && inGenres && inPublishers) {
+                lowestCents = Math.min(lowestCents, values.priceCents);
+                highestCents = Math.max(highestCents, values.priceCents);
+            }
+        }
+
+        boolean anyPrice = lowestCents <= highestCents;
+        return new FacetCounts(authorCounts, genreCounts, publisherCounts,
+                anyPrice ? lowestCents / 100.0 : null, anyPrice ? highestCents / 100.0 : null);
+    }
+
+    private boolean matches(InventoryItem item, long[] selected, FilterPlan plan) {
+        FacetValues values = changes.get(item.getBook().getIsbn());
+        if (values != null) {
+            // changed since the bitmaps were built, same order as the plan checks a single book in
+            return values != FacetValues.REMOVED && values.inPrice(plan) && values.inGenres(plan)
+                    && values.inPublishers(plan) && values.inAuthors(plan);
+        }
+        Integer ordinal = ordinalOf(item);
+        // an item that isn't indexed sold out since it was listed
+        return ordinal != null && isSelected(selected, ordinal);
+    }
+
+    /**
+     * Find the ordinal of an item in the bitmaps, or of the indexed copy holding the same book
+     * @param item the item
+     * @return the ordinal, or null if the book isn't in the bitmaps
+     * @author Maisha Abdullah
+     */
+    private Integer ordinalOf(InventoryItem item) {
+        Integer ordinal = ordinals.get(item);
+        return ordinal != null ? ordinal : ordinalsByIsbn.get(item.getBook().getIsbn());
+    }
+
+    private boolean isIndexed(String isbn) {
+        FacetValues changed = changes.get(isbn);
+        return changed != null ? changed != FacetValues.REMOVED : ordinalsByIsbn.containsKey(isbn);
+    }
+
+    /**
+     * Make a new index with one more change
+     * @param isbn isbn of the changed book
+     * @param values its new facet values, REMOVED to mask it in the bitmaps, or null to drop an earlier change
+     * @param size number of items indexed with the change
+     * @return the new index
+     * @author Maisha Abdullah
+     */
+    private FacetIndex withChange(String isbn, FacetValues values, int size) {
+        Map<String, FacetValues> changed = new HashMap<>(changes);
+        if (values == null) {
+            changed.remove(isbn);
+        } else {
+            changed.put(isbn, values);
+        }
+        return new FacetIndex(this, changed, size);
+    }
+
+    private static void addCount(Map<String, Integer> counts, String value, boolean counted) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        // values whose books are all filtered out by the other facets still show, with a count of 0
+        counts.merge(value, counted ? 1 : 0, Integer::sum);
+    }
+
+    private static boolean isSelected(long[] selected, int ordinal) {
+        return selected == null || (selected[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Narrow the selected ordinals down to those having any of the values of a facet
+     * @param selected bitmap of the ordinals selected so far, or null if every ordinal is
+     * @param facet bitmaps of the facet
+     * @param values values to keep, or null for all
+     * @return bitmap of the ordinals still selected, or null if every ordinal is
+     * @author Maisha Abdullah
+     */
+    private long[] select(long[] selected, Map<String, OrdinalBitmap> facet, Collection<String> values) {
+        if (values == null) {
+            return selected;
+        }
+        long[] union = new long[(indexedValues.size() + Long.SIZE - 1) / Long.SIZE];
+        for (String value : values) {
+            OrdinalBitmap bitmap = facet.get(value);
+            if (bitmap != null) {
+                bitmap.orInto(union);
+            }
+        }
+        if (selected == null) {
+            return union;
+        }
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] &= union[i];
+        }
+        return selected;
+    }
+
+    /**
+     * Narrow the selected ordinals down to those priced at most a cap, using the price order
+     * @param selected bitmap of the ordinals selected so far, or null if every ordinal is
+     * @param maxCents highest price to keep, in cents
+     * @return bitmap of the ordinals still selected, or null if every ordinal is
+     * @author Maisha Abdullah
+     */
+    private long[] selectAtMost(long[] selected, long maxCents) {
+        Long highest = prices.highest();
+        if (highest == null || highest <= maxCents) {
+            return selected; // the cap is over every price
+        }
+        long[] atMost = new long[(indexedValues.size() + Long.SIZE - 1) / Long.SIZE];
+        prices.orAtMost(maxCents, atMost);
+        if (selected == null) {
+            return atMost;
+        }
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] &= atMost[i];
+        }
+        return selected;
+    }
+
+    private static void addBit(Map<String, OrdinalBitmap> facet, String value, int ordinal) {
+        if (value != null) {
+            facet.computeIfAbsent(value, unused -> new OrdinalBitmap()).add(ordinal);
+        }
+    }
+
+    /**
+     * The facet values of a book at the time it was indexed
+     */
+    private static class FacetValues {
+        // marks a book taken out of the index since the bitmaps were built
+        private static final FacetValues REMOVED = new FacetValues();
+
+        private final String[] authors;
+        private final String genre;
+        private final String publisher;
+        private final long priceCents;
+
+        FacetValues(Book book) {
+            authors = book.getAuthor().stream().map(Author::getFullName).distinct().toArray(String[]::new);
+            genre = book.getGenre();
+            publisher = book.getPublisher();
+            priceCents = PriceIndex.toCents(book.getPrice());
+        }
+
+        private FacetValues() {
+            authors = new String[0];
+            genre = null;
+            publisher = null;
+            priceCents = Long.MAX_VALUE;
+        }
+
+        boolean inPrice(FilterPlan plan) {
+            return priceCents <= plan.getMaxCents();
+        }
+
+        boolean inGenres(FilterPlan plan) {
+            return plan.getGenres() == null || plan.getGenres().contains(genre);
+        }
+
+        boolean inPublishers(FilterPlan plan) {
+            return plan.getPublishers() == null || plan.getPublishers().contains(publisher);
+        }
+
+        boolean inAuthors(FilterPlan plan) {
+            Set<String> selected = plan.getAuthors();
+            if (selected == null) {
+                return true;
+            }
+            for (String author : authors) {
+                if (selected.contains(author)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * The listing filters compiled once into lookup sets and a price in cents, checked cheapest and most selective first:
+ * price, then genre, then publisher, then authors
+ */
+
+package bookstore.inventory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class FilterPlan {
+
+    private final long maxCents;
+    private final Set<String> genres;
+    private final Set<String> publishers;
+    private final Set<String> authors;
+    private final boolean parallel;
+
+    private FilterPlan(long maxCents, Set<String> genres, Set<String> publishers, Set<String> authors, boolean parallel) {
+        this.maxCents = maxCents;
+        this.genres = genres;
+        this.publishers = publishers;
+        this.authors = authors;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Compile the selected filters into a plan
+     * @param authors author names to keep, or null for all
+     * @param genres genres to keep, or null for all
+     * @param publishers publishers to keep, or null for all
+     * @param maxPrice highest price to keep
+     * @return the plan, run sequentially
+     * @author Maisha Abdullah
+     */
+    public static FilterPlan compile(Collection<String> authors, Collection<String> genres, Collection<String> publishers, double maxPrice) {
+        // floor rather than round, a cap between two cents keeps the lower one
+        long maxCents = maxPrice >= Long.MAX_VALUE / 100.0 ? Long.MAX_VALUE : (long) Math.floor(maxPrice * 100 + 1e-6);
+        return new FilterPlan(maxCents, toSet(genres), toSet(publishers), toSet(authors), false);
+    }
+
+    /**
+     * Get the same plan, set to spread the work over several threads for very large catalogs
+     * @param parallel if the plan should run in parallel
+     * @return the plan with the mode switched
+     * @author Maisha Abdullah
+     */
+    public FilterPlan runInParallel(boolean parallel) {
+        return parallel == this.parallel ? this : new FilterPlan(maxCents, genres, publishers, authors, parallel);
+    }
+
+    /**
+     * Check if a book passes every filter, stopping at the first one it fails
+     * @param book the book
+     * @return if the book is kept
+     * @author Maisha Abdullah
+     */
+    public boolean matches(Book book) {
+        return matchesPrice(book) && matchesGenre(book) && matchesPublisher(book) && matchesAuthors(book);
+    }
+
+    /**
+     * Check if a book is within the price cap
+     * @param book the book
+     * @return if the book is kept
+     * @author Maisha Abdullah
+     */
+    public boolean matchesPrice(Book book) {
+        return PriceIndex.toCents(book.getPrice()) <= maxCents;
+    }
+
+    /**
+     * Check if a book has a selected genre
+     * @param book the book
+     * @return if the book is kept, always when no genre is selected
+     * @author Maisha Abdullah
+     */
+    public boolean matchesGenre(Book book) {
+        return genres == null || genres.contains(book.getGenre());
+    }
+
+    /**
+     * Check if a book has a selected publisher
+     * @param book the book
+     * @return if the book is kept, always when no publisher is selected
+     * @author Maisha Abdullah
+     */
+    public boolean matchesPublisher(Book book) {
+        return publishers == null || publishers.contains(book.getPublisher());
+    }
+
+    /**
+     * Check if a book has any selected author
+     * @param book the book
+     * @return if the book is kept, always when no author is selected
+     * @author Maisha Abdullah
+     */
+    public boolean matchesAuthors(Book book) {
+        if (authors == null) {
+            return true;
+        }
+        List<Author> bookAuthors = book.getAuthor();
+        for (int i = 0; i < bookAuthors.size(); i++) {
+            if (authors.contains(bookAuthors.get(i).getFullName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the price cap
+     * @return highest price to keep, in cents
+     * @author Maisha Abdullah
+     */
+    public long getMaxCents() {
+        return maxCents;
+    }
+
+    /**
+     * Get the selected genres
+     * @return genres to keep, or null for all
+     * @author Maisha Abdullah
+     */
+    public Set<String> getGenres() {
+        return genres;
+    }
+
+    /**
+     * Get the selected publishers
+     * @return publishers to keep, or null for all
+     * @author Maisha Abdullah
+     */
+    public Set<String> getPublishers() {
+        return publishers;
+    }
+
+    /**
+     * Get the selected authors
+     * @return author names to keep, or null for all
+     * @author Maisha Abdullah
+     */
+    public Set<String> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Get if the plan spreads the work over several threads
+     * @return if the plan runs in parallel
+     * @author Maisha Abdullah
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    private static Set<String> toSet(Collection<String> values) {
+        // not Set.copyOf, its contains throws on the null genre or publisher of an incomplete book
+        return values == null ? null : Collections.unmodifiableSet(new HashSet<>(values));
+    }
+}
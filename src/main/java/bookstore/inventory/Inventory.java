@@ -8,13 +8,23 @@ import jakarta.persistence.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Entity
+@EntityListeners(CatalogChangeListener.class)
 public class Inventory {
 
     @OneToMany(mappedBy = "inventory", cascade = CascadeType.MERGE)
     private List<InventoryItem> availableBooks;
 
+    // looked up by every cart change, kept in step with the list by the methods below
+    @Transient
+    private volatile Map<String, InventoryItem> itemsByIsbn;
+
+    @Transient
+    private int indexedSize;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
@@ -45,18 +55,21 @@ public class Inventory {
     public boolean addItemToInventory(InventoryItem newItem){
 
         if (newItem.getQuantity() > 0){ //quantity must be positive
-            for (InventoryItem existingItem : availableBooks){
+            InventoryItem existingItem = findAvailableBook(newItem.getBook().getIsbn());
 
-                //book exists in the inventory
-                if (existingItem.getBook().equals(newItem.getBook())){
-                    existingItem.setQuantity(existingItem.getQuantity() + newItem.getQuantity());
-                    return true;
-                }
+            //book exists in the inventory
+            if (existingItem != null && existingItem.getBook().equals(newItem.getBook())){
+                existingItem.setQuantity(existingItem.getQuantity() + newItem.getQuantity());
+                return true;
             }
 
             // Book does not exist
             // Book is not in the inventory, add a new InventoryItem
+            Map<String, InventoryItem> items = getItemsByIsbn();
             availableBooks.add(newItem);
+            items.putIfAbsent(newItem.getBook().getIsbn(), newItem);
+            indexedSize = availableBooks.size();
+            CatalogVersion.bump();
 
             return true;
         }
@@ -73,16 +86,17 @@ public class Inventory {
     public boolean reduceFromInventory(Book book, int quantity){
 
         if (quantity > 0) { //quantity must be positive
-            for (InventoryItem existingItem : availableBooks) {
-
-                //book exists in the inventory
-                if (existingItem.getBook().getIsbn().equals(book.getIsbn()) && quantity <= existingItem.getQuantity()) {
-                    existingItem.setQuantity(existingItem.getQuantity() - quantity);
-                    if (existingItem.getQuantity() == 0){
-                        availableBooks.remove(existingItem);
-                    }
-                    return true;
+            InventoryItem existingItem = findAvailableBook(book.getIsbn());
+
+            //book exists in the inventory
+            if (existingItem != null && quantity <= existingItem.getQuantity()) {
+                existingItem.setQuantity(existingItem.getQuantity() - quantity);
+                if (existingItem.getQuantity() == 0){
+                    availableBooks.remove(existingItem);
+                    itemsByIsbn.remove(book.getIsbn(), existingItem);
+                    indexedSize = availableBooks.size();
                 }
+                return true;
             }
 
             //book does not exist
@@ -101,13 +115,12 @@ public class Inventory {
     public boolean putBackIntoInventory(Book book, int quantity){
 
         if (quantity > 0) { //quantity must be positive
-            for (InventoryItem existingItem : availableBooks) {
+            InventoryItem existingItem = findAvailableBook(book.getIsbn());
 
-                //book exists in the inventory
-                if (existingItem.getBook().getIsbn().equals(book.getIsbn())) {
-                    existingItem.setQuantity(existingItem.getQuantity() + quantity);
-                    return true;
-                }
+            //book exists in the inventory
+            if (existingItem != null) {
+                existingItem.setQuantity(existingItem.getQuantity() + quantity);
+                return true;
             }
             //book does not exist
             return false;
@@ -117,6 +130,23 @@ public class Inventory {
     }
 
 
+    /**
+     * Method to apply an edit of a book's details to the inventory
+     * @param book the edited book
+     * @return if the book is in the inventory
+     * @author Maisha Abdullah
+     */
+    public boolean updateBookInInventory(Book book){
+        InventoryItem existingItem = findAvailableBook(book.getIsbn());
+        if (existingItem == null){
+            return false;
+        }
+
+        existingItem.setBook(book);
+        CatalogVersion.bump();
+        return true;
+    }
+
     /**
      * Method to find an available book in Inventory by checking the isbn
      * @param isbn the isbn
@@ -124,12 +154,26 @@ public class Inventory {
      * @author Maisha Abdullah
      */
     public InventoryItem findAvailableBook(String isbn){
-        for (InventoryItem existingItem : availableBooks) {
-            if (existingItem.getBook().getIsbn().equals(isbn)){
-                return existingItem;
+        return getItemsByIsbn().get(isbn);
+    }
+
+    /**
+     * Get the items by isbn, building the map when it is first needed or when the list changed outside this class
+     * @return the first available item of each isbn
+     * @author Maisha Abdullah
+     */
+    private Map<String, InventoryItem> getItemsByIsbn() {
+        Map<String, InventoryItem> items = itemsByIsbn;
+        // the list is also filled by JPA and by callers holding it, so check it still lines up
+        if (items == null || indexedSize != availableBooks.size()) {
+            items = new ConcurrentHashMap<>();
+            for (InventoryItem existingItem : availableBooks) {
+                items.putIfAbsent(existingItem.getBook().getIsbn(), existingItem);
             }
+            indexedSize = availableBooks.size();
+            itemsByIsbn = items;
         }
-        return null;
+        return items;
     }
 
     /**
@@ -142,54 +186,6 @@ public class Inventory {
     }
 
 
-    /**
-     * Search for specific inventory items
-     * @param searchValue   value to search with
-     * @return              list of matching inventory items
-     * @author Thanuja Sivaananthan
-     */
-    public List<InventoryItem> getBooksMatchingSearch(String searchValue) {
-
-        if (searchValue.isEmpty()){
-            return availableBooks;
-        }
-
-        List<InventoryItem> searchedBooks = new ArrayList<>();
-        searchValue = searchValue.toLowerCase();
-
-        // most related search items
-        for (InventoryItem inventoryItem : availableBooks){
-            Book book = inventoryItem.getBook();
-            // check title, genre, publisher
-            if (book.getTitle().toLowerCase().contains(searchValue)
-                    || book.getGenre().toLowerCase().contains(searchValue)
-                    || book.getPublisher().toLowerCase().contains(searchValue)){
-                searchedBooks.add(inventoryItem);
-            } else {
-                // check authors
-                for (Author author : book.getAuthor()){
-                    if (author.getFullName().toLowerCase().contains(searchValue)){
-                        searchedBooks.add(inventoryItem);
-                    }
-                }
-
-            }
-        }
-
-        // less related search items
-        for (InventoryItem inventoryItem : availableBooks){
-            if (!searchedBooks.contains(inventoryItem)) {
-                Book book = inventoryItem.getBook();
-                // check description
-                if (book.getDescription().toLowerCase().contains(searchValue)) {
-                    searchedBooks.add(inventoryItem);
-                }
-            }
-        }
-
-        return searchedBooks;
-    }
-
     /**
      * Method to set the ID of the inventory
      * @param id the ID
@@ -6,6 +6,7 @@ package bookstore.inventory;
 
 import jakarta.persistence.*;
 @Entity
+@EntityListeners(CatalogChangeListener.class)
 public class InventoryItem extends Item{
 
     @ManyToOne
@@ -3,15 +3,122 @@
  */
 package bookstore.inventory;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface InventoryItemRepository extends CrudRepository<InventoryItem, Long> {
+
+    // in stock items of one inventory, with each filter on its own so facet counts can leave one out;
+    // an any flag set to true turns that filter off
+    String IN_STOCK = " WHERE i.inventory.id = :inventoryId AND i.quantity > 0";
+    String PRICE_FILTER = "i.book.price <= :maxPrice";
+    String GENRE_FILTER = "(:anyGenre = true OR i.book.genre IN :genres)";
+    String PUBLISHER_FILTER = "(:anyPublisher = true OR i.book.publisher IN :publishers)";
+    String AUTHOR_FILTER = "(:anyAuthor = true OR EXISTS (SELECT fa FROM Book fb JOIN fb.author fa"
+            + " WHERE fb = i.book AND CONCAT(fa.firstName, ' ', fa.lastName) IN :authors))";
+
+    String LISTING = "SELECT i FROM InventoryItem i" + IN_STOCK + " AND " + PRICE_FILTER
+            + " AND " + GENRE_FILTER + " AND " + PUBLISHER_FILTER + " AND " + AUTHOR_FILTER;
+
+    // stock statements, shared with the batches InventoryStock sends through JDBC
+    String TAKE_FROM_STOCK = "UPDATE item SET quantity = quantity - :quantity, version = version + 1"
+            + " WHERE id = :id AND quantity >= :quantity";
+    String PUT_BACK_INTO_STOCK = "UPDATE item SET quantity = quantity + :quantity, version = version + 1 WHERE id = :id";
+    // the same by isbn, for writers without a loaded item
+    String OF_BOOK = " WHERE isbn = :isbn AND id IN (SELECT id FROM inventory_item WHERE inventory_id = :inventoryId)";
+    String TAKE_BOOK_FROM_STOCK = "UPDATE item SET quantity = quantity - :quantity, version = version + 1"
+            + OF_BOOK + " AND quantity >= :quantity";
+    String PUT_BOOK_BACK_INTO_STOCK = "UPDATE item SET quantity = quantity + :quantity, version = version + 1" + OF_BOOK;
+
     InventoryItem findById(long id);
     List<InventoryItem> findByBook(Book book);
 
+    /**
+     * Get the in stock items of one inventory, in the order they were added
+     * @param inventoryId id of the inventory
+     * @return the items
+     * @author Maisha Abdullah
+     */
+    @Query("SELECT i FROM InventoryItem i" + IN_STOCK + " ORDER BY i.id")
+    List<InventoryItem> findInStock(@Param("inventoryId") Long inventoryId);
+
+    /**
+     * Take copies of an item in one statement, only if enough are left, so app instances sharing the
+     * database can't sell the same copy; must run in a transaction
+     * @param id id of the inventory item
+     * @param quantity number of copies to take
+     * @return 1 if the copies were taken, 0 if not enough were left
+     * @author Maisha Abdullah
+     */
+    @Modifying
+    @Query(value = TAKE_FROM_STOCK, nativeQuery = true)
+    int takeFromStock(@Param("id") long id, @Param("quantity") int quantity);
+
+    /**
+     * Put copies of an item back in one statement; must run in a transaction
+     * @param id id of the inventory item
+     * @param quantity number of copies to put back
+     * @return 1 if the item exists
+     * @author Maisha Abdullah
+     */
+    @Modifying
+    @Query(value = PUT_BACK_INTO_STOCK, nativeQuery = true)
+    int putBackIntoStock(@Param("id") long id, @Param("quantity") int quantity);
+
+    /**
+     * Get the stored item of a book in one inventory
+     * @param inventoryId id of the inventory
+     * @param isbn isbn of the book
+     * @return the item, or null if the book isn't stored
+     * @author Maisha Abdullah
+     */
+    @Query("SELECT i FROM InventoryItem i WHERE i.inventory.id = :inventoryId AND i.book.isbn = :isbn")
+    InventoryItem findStored(@Param("inventoryId") Long inventoryId, @Param("isbn") String isbn);
+
+    /**
+     * Get the stored items of several books in one inventory, sold out ones included
+     * @param inventoryId id of the inventory
+     * @param isbns isbns of the books
+     * @return the items of the books that are stored
+     * @author Maisha Abdullah
+     */
+    @Query("SELECT i FROM InventoryItem i WHERE i.inventory.id = :inventoryId AND i.book.isbn IN :isbns")
+    List<InventoryItem> findStored(@Param("inventoryId") Long inventoryId, @Param("isbns") Collection<String> isbns);
+
+    /**
+     * Take copies of a book in one statement, only if enough are left; must run in a transaction
+     * @param inventoryId id of the inventory
+     * @param isbn isbn of the book
+     * @param quantity number of copies to take
+     * @return 1 if the copies were taken, 0 if not enough were left
+     * @author Maisha Abdullah
+     */
+    @Modifying
+    @Query(value = TAKE_BOOK_FROM_STOCK, nativeQuery = true)
+    int takeBookFromStock(@Param("inventoryId") long inventoryId, @Param("isbn") String isbn, @Param("quantity") int quantity);
+
+    /**
+     * Put copies of a book back in one statement, without loading its item first; must run in a transaction
+     * @param inventoryId id of the inventory
+     * @param isbn isbn of the book
+     * @param quantity number of copies to put back
+     * @return 1 if the book is stored
+     * @author Maisha Abdullah
+     */
+    @Modifying
+    @Query(value = PUT_BOOK_BACK_INTO_STOCK, nativeQuery = true)
+    int putBookBackIntoStock(@Param("inventoryId") long inventoryId, @Param("isbn") String isbn, @Param("quantity") int quantity);
+
     /**
      * Sort by title alphabetically
      * @return sorted list of inventory items
@@ -35,4 +142,219 @@ public interface InventoryItemRepository extends CrudRepository<InventoryItem, L
      */
     @Query("SELECT i FROM InventoryItem i ORDER BY i.book.price DESC")
     List<InventoryItem> sortByPriceDesc();
+
+    /**
+     * Get one page of the in stock items matching the filters, sorted by title alphabetically
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param pageable page to get
+     * @return page of inventory items
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " ORDER BY i.book.title ASC, i.book.isbn ASC")
+    Page<InventoryItem> sortByTitleAsc(@Param("inventoryId") Long inventoryId,
+                                       @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                       @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                       @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                       @Param("maxPrice") double maxPrice, Pageable pageable);
+
+    /**
+     * Get one page of the in stock items matching the filters, sorted by price low to high
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param pageable page to get
+     * @return page of inventory items
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " ORDER BY i.book.price ASC, i.book.isbn ASC")
+    Page<InventoryItem> sortByPriceAsc(@Param("inventoryId") Long inventoryId,
+                                       @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                       @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                       @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                       @Param("maxPrice") double maxPrice, Pageable pageable);
+
+    /**
+     * Get one page of the in stock items matching the filters, sorted by price high to low
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param pageable page to get
+     * @return page of inventory items
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " ORDER BY i.book.price DESC, i.book.isbn DESC")
+    Page<InventoryItem> sortByPriceDesc(@Param("inventoryId") Long inventoryId,
+                                        @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                        @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                        @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                        @Param("maxPrice") double maxPrice, Pageable pageable);
+
+    /**
+     * Get the in stock items matching the filters that come after a title and isbn, sorted by title alphabetically
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param title title of the last item already shown
+     * @param isbn isbn of the last item already shown
+     * @param pageable number of items to get, the page number should be 0
+     * @return the items after the given one
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " AND i.book.title >= :title AND (i.book.title > :title OR i.book.isbn > :isbn)"
+            + " ORDER BY i.book.title ASC, i.book.isbn ASC")
+    Slice<InventoryItem> seekByTitleAsc(@Param("inventoryId") Long inventoryId,
+                                        @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                        @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                        @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                        @Param("maxPrice") double maxPrice,
+                                        @Param("title") String title, @Param("isbn") String isbn, Pageable pageable);
+
+    /**
+     * Get the in stock items matching the filters that come after a price and isbn, sorted by price low to high
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param price price of the last item already shown
+     * @param isbn isbn of the last item already shown
+     * @param pageable number of items to get, the page number should be 0
+     * @return the items after the given one
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " AND i.book.price >= :price AND (i.book.price > :price OR i.book.isbn > :isbn)"
+            + " ORDER BY i.book.price ASC, i.book.isbn ASC")
+    Slice<InventoryItem> seekByPriceAsc(@Param("inventoryId") Long inventoryId,
+                                        @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                        @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                        @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                        @Param("maxPrice") double maxPrice,
+                                        @Param("price") double price, @Param("isbn") String isbn, Pageable pageable);
+
+    /**
+     * Get the in stock items matching the filters that come after a price and isbn, sorted by price high to low
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @param price price of the last item already shown
+     * @param isbn isbn of the last item already shown
+     * @param pageable number of items to get, the page number should be 0
+     * @return the items after the given one
+     * @author Maisha Abdullah
+     */
+    @Query(LISTING + " AND i.book.price <= :price AND (i.book.price < :price OR i.book.isbn < :isbn)"
+            + " ORDER BY i.book.price DESC, i.book.isbn DESC")
+    Slice<InventoryItem> seekByPriceDesc(@Param("inventoryId") Long inventoryId,
+                                         @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                         @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                         @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                         @Param("maxPrice") double maxPrice,
+                                         @Param("price") double price, @Param("isbn") String isbn, Pageable pageable);
+
+    /**
+     * Count the in stock items by each author, genre and publisher that match the other filters, and find the
+     * price bounds of the items matching every facet filter, as one statement. Values whose items are all
+     * filtered out are counted as 0.
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true to keep every author
+     * @param authors author names to keep, must not be empty
+     * @param anyGenre true to keep every genre
+     * @param genres genres to keep, must not be empty
+     * @param anyPublisher true to keep every publisher
+     * @param publishers publishers to keep, must not be empty
+     * @param maxPrice highest price to keep
+     * @return rows of facet ('a'uthor, 'g'enre, 'p'ublisher or price 'r'ange), value, count, lowest and highest price,
+     * by facet and value
+     * @author Maisha Abdullah
+     */
+    @Query("SELECT 'a', CONCAT(a.firstName, ' ', a.lastName),"
+            + " COUNT(DISTINCT CASE WHEN " + PRICE_FILTER + " AND " + GENRE_FILTER + " AND " + PUBLISHER_FILTER + " THEN i.id END),"
+            + " CAST(NULL AS Double), CAST(NULL AS Double)"
+            + " FROM InventoryItem i JOIN i.book b JOIN b.author a" + IN_STOCK
+            + " GROUP BY CONCAT(a.firstName, ' ', a.lastName)"
+            + " UNION ALL SELECT 'g', i.book.genre,"
+            + " COUNT(CASE WHEN " + PRICE_FILTER + " AND " + PUBLISHER_FILTER + " AND " + AUTHOR_FILTER + " THEN i.id END),"
+            + " CAST(NULL AS Double), CAST(NULL AS Double)"
+            + " FROM InventoryItem i" + IN_STOCK + " AND i.book.genre <> ''"
+            + " GROUP BY i.book.genre"
+            + " UNION ALL SELECT 'p', i.book.publisher,"
+            + " COUNT(CASE WHEN " + PRICE_FILTER + " AND " + GENRE_FILTER + " AND " + AUTHOR_FILTER + " THEN i.id END),"
+            + " CAST(NULL AS Double), CAST(NULL AS Double)"
+            + " FROM InventoryItem i" + IN_STOCK + " AND i.book.publisher <> ''"
+            + " GROUP BY i.book.publisher"
+            + " UNION ALL SELECT 'r', CAST(NULL AS String), COUNT(i.id), MIN(i.book.price), MAX(i.book.price)"
+            + " FROM InventoryItem i" + IN_STOCK
+            + " AND " + GENRE_FILTER + " AND " + PUBLISHER_FILTER + " AND " + AUTHOR_FILTER
+            + " ORDER BY 1, 2")
+    List<Object[]> countFacetRows(@Param("inventoryId") Long inventoryId,
+                                  @Param("anyAuthor") boolean anyAuthor, @Param("authors") Collection<String> authors,
+                                  @Param("anyGenre") boolean anyGenre, @Param("genres") Collection<String> genres,
+                                  @Param("anyPublisher") boolean anyPublisher, @Param("publishers") Collection<String> publishers,
+                                  @Param("maxPrice") double maxPrice);
+
+    /**
+     * Count the in stock items having each author, genre and publisher within the other selected filters,
+     * and find their price bounds
+     * @param inventoryId id of the inventory
+     * @param anyAuthor true if no author is selected
+     * @param authors selected author names, must not be empty
+     * @param anyGenre true if no genre is selected
+     * @param genres selected genres, must not be empty
+     * @param anyPublisher true if no publisher is selected
+     * @param publishers selected publishers, must not be empty
+     * @param maxPrice highest price selected
+     * @return counts of each value and the price bounds
+     * @author Maisha Abdullah
+     */
+    default FacetCounts countFacets(Long inventoryId, boolean anyAuthor, Collection<String> authors, boolean anyGenre,
+                                    Collection<String> genres, boolean anyPublisher, Collection<String> publishers, double maxPrice) {
+        Map<String, Integer> authorCounts = new LinkedHashMap<>();
+        Map<String, Integer> genreCounts = new LinkedHashMap<>();
+        Map<String, Integer> publisherCounts = new LinkedHashMap<>();
+        Double lowestPrice = null;
+        Double highestPrice = null;
+        // one round trip, the rows of each facet come out together and in order
+        for (Object[] row : countFacetRows(inventoryId, anyAuthor, authors, anyGenre, genres, anyPublisher, publishers, maxPrice)) {
+            switch ((String) row[0]) {
+                case "a" -> authorCounts.put((String) row[1], ((Number) row[2]).intValue());
+                case "g" -> genreCounts.put((String) row[1], ((Number) row[2]).intValue());
+                case "p" -> publisherCounts.put((String) row[1], ((Number) row[2]).intValue());
+                default -> {
+                    lowestPrice = (Double) row[3];
+                    highestPrice = (Double) row[4];
+                }
+            }
+        }
+        return new FacetCounts(authorCounts, genreCounts, publisherCounts, lowestPrice, highestPrice);
+    }
 }
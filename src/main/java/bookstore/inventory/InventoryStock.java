@@ -0,0 +1,372 @@
+/**
+ * Writes stock changes to the database as atomic conditional statements instead of saving a quantity read earlier,
+ * so several app instances sharing one database never lose each other's updates. The item in memory is reloaded
+ * around each statement, so its own copy of the quantity is never written over the stored one. A statement
+ * that can't get its row in time is retried a few times before giving up. A batch can write what goes with the
+ * copies in the same transaction, e.g. the holds of the cart taking them. The new quantities are passed on to the
+ * shared catalog index, so books selling out or coming back show up in the listings.
+ */
+
+package bookstore.inventory;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+@Service
+public class InventoryStock {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BACKOFF_MILLIS = 25;
+    private static final Logger log = LoggerFactory.getLogger(InventoryStock.class);
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogIndex catalogIndex;
+
+    /**
+     * Constructor for InventoryStock
+     * @param inventoryItemRepository repository of inventory items
+     * @param jdbcTemplate sends the statements of several items as one batch
+     * @param entityManager reloads items after their stock was written
+     * @param transactionManager runs each change in one transaction
+     * @param catalogIndex indexes of the books in stock, told about every new quantity
+     * @author Maisha Abdullah
+     */
+    public InventoryStock(InventoryItemRepository inventoryItemRepository, NamedParameterJdbcTemplate jdbcTemplate,
+                          EntityManager entityManager, PlatformTransactionManager transactionManager,
+                          CatalogIndex catalogIndex) {
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.catalogIndex = catalogIndex;
+    }
+
+    /**
+     * Take copies of an item from the stored stock, then make the matching change in memory, e.g. adding them to a cart
+     * @param item the inventory item
+     * @param quantity number of copies
+     * @param change the change in memory, returning if it was made
+     * @return if the copies were taken, false if not enough were stored or the change wasn't made
+     * @author Maisha Abdullah
+     */
+    public boolean take(InventoryItem item, int quantity, BooleanSupplier change) {
+        return write(List.of(item), markChanged -> {
+            if (inventoryItemRepository.takeFromStock(item.getId(), quantity) == 0) {
+                return false; // sold by another instance in the meantime
+            }
+            markChanged.run();
+            if (!change.getAsBoolean()) {
+                inventoryItemRepository.putBackIntoStock(item.getId(), quantity);
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Put copies of an item back into the stored stock, then make the matching change in memory, e.g. removing
+     * them from a cart
+     * @param item the inventory item
+     * @param quantity number of copies
+     * @param change the change in memory, returning if it was made
+     * @return if the copies were put back, false if the item isn't stored or the change wasn't made
+     * @author Maisha Abdullah
+     */
+    public boolean putBack(InventoryItem item, int quantity, BooleanSupplier change) {
+        // statement first, a quantity changed in memory before it would be flushed ahead of it and counted twice
+        return write(List.of(item), markChanged -> {
+            if (inventoryItemRepository.putBackIntoStock(item.getId(), quantity) == 0) {
+                return false;
+            }
+            markChanged.run();
+            if (!change.getAsBoolean()) {
+                inventoryItemRepository.takeFromStock(item.getId(), quantity); // the row is still locked by us
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Put copies of a book back into the stored stock by isbn, then make the matching change in memory, for
+     * writers that hold no up to date item of the book, e.g. the reclaim thread
+     * @param inventoryId id of the inventory
+     * @param isbn isbn of the book
+     * @param quantity number of copies
+     * @param change the change in memory, returning if it was made
+     * @return if the copies were put back, false if the book isn't stored or the change wasn't made
+     * @author Maisha Abdullah
+     */
+    public boolean putBack(long inventoryId, String isbn, int quantity, BooleanSupplier change) {
+        List<InventoryItem> stored = new ArrayList<>(1); // loaded once written, to pass its new quantity on
+        return write(stored, markChanged -> {
+            if (inventoryItemRepository.putBookBackIntoStock(inventoryId, isbn, quantity) == 0) {
+                return false;
+            }
+            markChanged.run();
+            if (!change.getAsBoolean()) {
+                inventoryItemRepository.takeBookFromStock(inventoryId, isbn, quantity); // the row is still locked by us
+                return false;
+            }
+            InventoryItem item = inventoryItemRepository.findStored(inventoryId, isbn);
+            if (item != null) {
+                stored.add(item);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Put copies of several books back by isbn with one batch of statements, then make the matching change in
+     * memory for each, for writers that hold no up to date items, e.g. the reclaim thread giving back every hold
+     * that ran out in a tick
+     * @param inventoryId id of the inventory
+     * @param returns what to put back, a book listed twice is put back twice
+     * @param isbnOf the isbn of the book of a return
+     * @param quantityOf the number of copies of a return
+     * @param change the change in memory for one return, returning if it was made
+     * @return the returns put back, in the given order
+     * @author Maisha Abdullah
+     */
+    public <T> List<T> putBackBooks(long inventoryId, List<T> returns, Function<T, String> isbnOf,
+                                    ToIntFunction<T> quantityOf, Predicate<T> change) {
+        return putBackBooks(inventoryId, returns, isbnOf, quantityOf, change, written -> { });
+    }
+
+    /**
+     * Put copies of several books back by isbn with one batch of statements, make the matching change in memory
+     * for each, and write what goes with the returns put back in the same transaction
+     * @param inventoryId id of the inventory
+     * @param returns what to put back, a book listed twice is put back twice
+     * @param isbnOf the isbn of the book of a return
+     * @param quantityOf the number of copies of a return
+     * @param change the change in memory for one return, returning if it was made
+     * @param record writes what goes with the returns put back, e.g. the holds they end
+     * @return the returns put back, in the given order
+     * @author Maisha Abdullah
+     */
+    public <T> List<T> putBackBooks(long inventoryId, List<T> returns, Function<T, String> isbnOf,
+                                    ToIntFunction<T> quantityOf, Predicate<T> change, Consumer<List<T>> record) {
+        if (returns.isEmpty()) {
+            return List.of();
+        }
+        List<InventoryItem> stored = new ArrayList<>(); // loaded once written, to pass their new quantities on
+        return write(stored, markChanged -> {
+            int[] rows = jdbcTemplate.batchUpdate(InventoryItemRepository.PUT_BOOK_BACK_INTO_STOCK,
+                    bookParameters(inventoryId, returns, isbnOf, quantityOf));
+            markChanged.run();
+            List<T> written = new ArrayList<>();
+            List<T> refused = new ArrayList<>();
+            Set<String> isbns = new LinkedHashSet<>();
+            for (int i = 0; i < returns.size(); i++) {
+                if (rows[i] > 0) {
+                    (change.test(returns.get(i)) ? written : refused).add(returns.get(i));
+                    isbns.add(isbnOf.apply(returns.get(i)));
+                }
+            }
+            if (!refused.isEmpty()) {
+                jdbcTemplate.batchUpdate(InventoryItemRepository.TAKE_BOOK_FROM_STOCK,
+                        bookParameters(inventoryId, refused, isbnOf, quantityOf)); // the rows are still locked by us
+            }
+            if (!isbns.isEmpty()) {
+                stored.addAll(inventoryItemRepository.findStored(inventoryId, isbns));
+            }
+            if (!written.isEmpty()) {
+                record.accept(written);
+            }
+            return written;
+        });
+    }
+
+    /**
+     * Take copies of several items with one batch of statements, then make the matching change in memory
+     * for every item that had enough
+     * @param items the inventory items, an item listed twice is taken twice
+     * @param quantity number of copies of each
+     * @param change the change in memory for one item, returning if it was made
+     * @return the items taken, in the given order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> takeAll(List<InventoryItem> items, int quantity, Predicate<InventoryItem> change) {
+        return takeAll(items, quantity, change, written -> { });
+    }
+
+    /**
+     * Take copies of several items with one batch of statements, make the matching change in memory for every
+     * item that had enough, and write what goes with the copies taken in the same transaction
+     * @param items the inventory items, an item listed twice is taken twice
+     * @param quantity number of copies of each
+     * @param change the change in memory for one item, returning if it was made
+     * @param record writes what goes with the items taken, e.g. the holds of the cart taking them
+     * @return the items taken, in the given order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> takeAll(List<InventoryItem> items, int quantity, Predicate<InventoryItem> change,
+                                       Consumer<List<InventoryItem>> record) {
+        return writeAll(items, quantity, InventoryItemRepository.TAKE_FROM_STOCK, InventoryItemRepository.PUT_BACK_INTO_STOCK, change, record);
+    }
+
+    /**
+     * Put copies of several items back with one batch of statements, then make the matching change in memory
+     * for every item
+     * @param items the inventory items, an item listed twice is put back twice
+     * @param quantity number of copies of each
+     * @param change the change in memory for one item, returning if it was made
+     * @return the items put back, in the given order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> putBackAll(List<InventoryItem> items, int quantity, Predicate<InventoryItem> change) {
+        return putBackAll(items, quantity, change, written -> { });
+    }
+
+    /**
+     * Put copies of several items back with one batch of statements, make the matching change in memory for
+     * every item, and write what goes with the copies put back in the same transaction
+     * @param items the inventory items, an item listed twice is put back twice
+     * @param quantity number of copies of each
+     * @param change the change in memory for one item, returning if it was made
+     * @param record writes what goes with the items put back, e.g. the holds they end
+     * @return the items put back, in the given order
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> putBackAll(List<InventoryItem> items, int quantity, Predicate<InventoryItem> change,
+                                          Consumer<List<InventoryItem>> record) {
+        return writeAll(items, quantity, InventoryItemRepository.PUT_BACK_INTO_STOCK, InventoryItemRepository.TAKE_FROM_STOCK, change, record);
+    }
+
+    /**
+     * Run one statement per item as a single batch, make the changes in memory for the rows it wrote,
+     * then undo the rows whose change wasn't made in a second batch
+     * @param items the inventory items
+     * @param quantity number of copies of each
+     * @param statement the stock statement
+     * @param undo the statement undoing it
+     * @param change the change in memory for one item
+     * @param record writes what goes with the items written and changed
+     * @return the items written and changed
+     * @author Maisha Abdullah
+     */
+    private List<InventoryItem> writeAll(List<InventoryItem> items, int quantity, String statement, String undo,
+                                         Predicate<InventoryItem> change, Consumer<List<InventoryItem>> record) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        return write(items, markChanged -> {
+            int[] rows = jdbcTemplate.batchUpdate(statement, parameters(items, quantity));
+            markChanged.run();
+            List<InventoryItem> written = new ArrayList<>();
+            List<InventoryItem> refused = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (rows[i] > 0) {
+                    (change.test(items.get(i)) ? written : refused).add(items.get(i));
+                }
+            }
+            if (!refused.isEmpty()) {
+                jdbcTemplate.batchUpdate(undo, parameters(refused, quantity));
+            }
+            if (!written.isEmpty()) {
+                record.accept(written);
+            }
+            return written;
+        });
+    }
+
+    /**
+     * Run a stock change in a transaction, retrying it while the change in memory wasn't made yet
+     * @param items the inventory items written
+     * @param steps runs the statements and the change, calling the given callback right before the change
+     * @return what the steps returned
+     * @author Maisha Abdullah
+     */
+    private <T> T write(Collection<InventoryItem> items, Function<Runnable, T> steps) {
+        boolean[] changed = {false};
+        // inside someone else's transaction a failure already marked it for rollback, so let its owner retry
+        boolean canRetry = !TransactionSynchronizationManager.isActualTransactionActive();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = transactionTemplate.execute(status -> {
+                    if (hasPendingChanges()) {
+                        reload(items); // drop any quantity changed in memory, only the statements write it
+                    }
+                    T written = steps.apply(() -> changed[0] = true);
+                    reload(items); // pick up the stored quantities and versions
+                    return written;
+                });
+                for (InventoryItem item : new LinkedHashSet<>(items)) {
+                    catalogIndex.stockChanged(item);
+                }
+                return result;
+            } catch (ConcurrencyFailureException e) {
+                if (!canRetry || changed[0] || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Stock is busy, trying again (attempt {} of {})", attempt + 1, MAX_ATTEMPTS);
+                try {
+                    Thread.sleep(BACKOFF_MILLIS * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean hasPendingChanges() {
+        try {
+            return entityManager.unwrap(Session.class).isDirty();
+        } catch (RuntimeException e) {
+            return true; // can't tell, reload to be safe
+        }
+    }
+
+    private void reload(Collection<InventoryItem> items) {
+        for (InventoryItem item : new LinkedHashSet<>(items)) {
+            if (item.getId() != null && entityManager.contains(item)) {
+                entityManager.refresh(item);
+            }
+        }
+    }
+
+    private static <T> SqlParameterSource[] bookParameters(long inventoryId, List<T> returns, Function<T, String> isbnOf,
+                                                           ToIntFunction<T> quantityOf) {
+        SqlParameterSource[] parameters = new SqlParameterSource[returns.size()];
+        for (int i = 0; i < returns.size(); i++) {
+            parameters[i] = new MapSqlParameterSource("inventoryId", inventoryId)
+                    .addValue("isbn", isbnOf.apply(returns.get(i)))
+                    .addValue("quantity", quantityOf.applyAsInt(returns.get(i)));
+        }
+        return parameters;
+    }
+
+    private static SqlParameterSource[] parameters(List<InventoryItem> items, int quantity) {
+        SqlParameterSource[] parameters = new SqlParameterSource[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            parameters[i] = new MapSqlParameterSource("id", items.get(i).getId()).addValue("quantity", quantity);
+        }
+        return parameters;
+    }
+}
@@ -15,6 +15,10 @@ public abstract class Item {
     private Book book;
     private int quantity;
 
+    // bumped on every write, so a write based on a stale quantity fails instead of overwriting a newer one
+    @Version
+    private Long version;
+
     /**
      * Default constructor
      * @author maisha abdullah
@@ -88,4 +92,13 @@ public abstract class Item {
             this.quantity = quantity;
         }
     }
+
+    /**
+     * Method to get the version of the item, bumped on every write
+     * @return  the version, null until the item is saved
+     * @author Maisha Abdullah
+     */
+    public Long getVersion() {
+        return version;
+    }
 }
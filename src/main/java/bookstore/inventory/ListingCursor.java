@@ -0,0 +1,103 @@
+/**
+ * Opaque position in a sorted book listing, used to fetch the next page without skipping rows
+ */
+
+package bookstore.inventory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class ListingCursor {
+
+    private static final String SEPARATOR = "\u001f";
+
+    private final String sort;
+    private final String isbn;
+    private final String key;
+
+    private ListingCursor(String sort, String isbn, String key) {
+        this.sort = sort;
+        this.isbn = isbn;
+        this.key = key;
+    }
+
+    /**
+     * Create the cursor for the position just after an item
+     * @param sort sort criteria of the listing, one of the price or alphabetical orders
+     * @param item last item shown
+     * @return the cursor
+     * @author Maisha Abdullah
+     */
+    public static ListingCursor after(String sort, InventoryItem item) {
+        Book book = item.getBook();
+        String key = sort.equals(SortCriteria.ALPHABETICAL.label) ? book.getTitle() : book.getPrice().toString();
+        return new ListingCursor(sort, book.getIsbn(), key);
+    }
+
+    /**
+     * Read a cursor given back by a client
+     * @param cursor encoded cursor
+     * @param sort sort criteria of the listing
+     * @return the cursor, or null if it is malformed or was made for another sort order
+     * @author Maisha Abdullah
+     */
+    public static ListingCursor decode(String cursor, String sort) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        // the title goes last as it is the only part that could hold anything
+        String[] parts = decoded.split(SEPARATOR, 3);
+        if (parts.length != 3 || !parts[0].equals(sort)) {
+            return null;
+        }
+        if (!sort.equals(SortCriteria.ALPHABETICAL.label)) {
+            try {
+                Double.parseDouble(parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new ListingCursor(parts[0], parts[1], parts[2]);
+    }
+
+    /**
+     * Encode the cursor to hand to the client
+     * @return encoded cursor, safe to put in a URL
+     * @author Maisha Abdullah
+     */
+    public String encode() {
+        String raw = sort + SEPARATOR + isbn + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the isbn of the last item shown
+     * @return the isbn
+     * @author Maisha Abdullah
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Get the title of the last item shown, for the alphabetical order
+     * @return the title
+     * @author Maisha Abdullah
+     */
+    public String getTitle() {
+        return key;
+    }
+
+    /**
+     * Get the price of the last item shown, for the price orders
+     * @return the price
+     * @author Maisha Abdullah
+     */
+    public double getPrice() {
+        return Double.parseDouble(key);
+    }
+}
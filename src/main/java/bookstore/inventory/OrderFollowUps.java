@@ -0,0 +1,98 @@
+/**
+ * Work that follows a placed order but doesn't need to hold up its confirmation page, such as sending the
+ * confirmation email or working out the buyer's recommendations again. Follow-ups are queued once the order is
+ * written and run one at a time on a background thread, so a slow or failing one never undoes or delays the order.
+ */
+
+package bookstore.inventory;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@Service
+public class OrderFollowUps {
+
+    private static final long SHUTDOWN_WAIT_SECONDS = 5;
+    private static final Logger log = LoggerFactory.getLogger(OrderFollowUps.class);
+
+    // registered by the parts of the app whose data an order changes, queued after the email
+    private final Map<String, Consumer<BookOrder>> followUps = new ConcurrentHashMap<>();
+    private final ExecutorService followUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-follow-ups");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Queue the follow-ups of an order that was just placed
+     * @param order the order
+     * @author Maisha Abdullah
+     */
+    public void orderPlaced(BookOrder order) {
+        queue("confirmation email", () -> sendConfirmation(order));
+        followUps.forEach((name, followUp) -> queue(name, () -> followUp.accept(order)));
+    }
+
+    /**
+     * Run some work after every order placed from now on
+     * @param name name of the work, for the logs, replacing any work registered with the same name
+     * @param followUp the work, given the order
+     * @author Maisha Abdullah
+     */
+    public void add(String name, Consumer<BookOrder> followUp) {
+        followUps.put(name, followUp);
+    }
+
+    /**
+     * Stop taking follow-ups, giving the ones queued a moment to finish
+     * @author Maisha Abdullah
+     */
+    @PreDestroy
+    public void shutdown() {
+        followUpExecutor.shutdown();
+        try {
+            if (!followUpExecutor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Order follow-ups still queued at shutdown were dropped");
+                followUpExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            followUpExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Send the confirmation of an order to its user
+     * @param order the order
+     * @author Maisha Abdullah
+     */
+    private void sendConfirmation(BookOrder order) {
+        // no mail server is set up yet, so the email is logged
+        log.info("Order {} confirmed for user {}: {} line(s), {} cents", order.getConfirmationNumber(),
+                order.getUserId(), order.getLines().size(), order.getTotalCents());
+    }
+
+    private void queue(String name, Runnable followUp) {
+        try {
+            followUpExecutor.execute(() -> {
+                try {
+                    followUp.run();
+                } catch (RuntimeException e) {
+                    log.error("Exception occurred while running the order follow-up '" + name + "': ", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Order follow-up '{}' dropped, shutting down", name);
+        }
+    }
+}
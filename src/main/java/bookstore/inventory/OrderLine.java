@@ -0,0 +1,128 @@
+/**
+ * Line of an order, a copy of what was bought that stays the same when the book or its price changes later.
+ * Lines are only ever added, and they double as the purchase history of each user: it's read through the
+ * (user, book) index without loading any order or cart.
+ */
+
+package bookstore.inventory;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+@Entity
+@Immutable
+@Table(indexes = {
+        @Index(name = "idx_order_line_user_isbn", columnList = "user_id, isbn"),
+        @Index(name = "idx_order_line_isbn", columnList = "isbn") // the buyers of a book
+})
+public class OrderLine {
+
+    @Id
+    @GeneratedValue (strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_id")
+    private BookOrder bookOrder;
+    @Column(name = "user_id")
+    private Long userId; // copied from the order, so the history of a user needs no join
+    private String isbn;
+    private String title;
+    private long unitPriceCents;
+    private int quantity;
+
+    /**
+     * Default constructor
+     * @author Maisha Abdullah
+     */
+    public OrderLine() {
+    }
+
+    /**
+     * Constructor for OrderLine
+     * @param bookOrder the order
+     * @param book the book bought
+     * @param quantity number of copies
+     * @author Maisha Abdullah
+     */
+    public OrderLine(BookOrder bookOrder, Book book, int quantity) {
+        this.bookOrder = bookOrder;
+        this.userId = bookOrder.getUserId();
+        this.isbn = book.getIsbn();
+        this.title = book.getTitle();
+        this.unitPriceCents = PriceIndex.toCents(book.getPrice());
+        this.quantity = quantity;
+    }
+
+    /**
+     * Method to get the ID of the line
+     * @return the ID
+     * @author Maisha Abdullah
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Method to get the order of the line
+     * @return the order
+     * @author Maisha Abdullah
+     */
+    public BookOrder getBookOrder() {
+        return bookOrder;
+    }
+
+    /**
+     * Method to get the ID of the user who bought the line
+     * @return the user ID
+     * @author Maisha Abdullah
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Method to get the isbn of the book bought
+     * @return the isbn
+     * @author Maisha Abdullah
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Method to get the title of the book bought
+     * @return the title
+     * @author Maisha Abdullah
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Method to get the price of one copy when it was bought
+     * @return the price in cents
+     * @author Maisha Abdullah
+     */
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    /**
+     * Method to get the number of copies bought
+     * @return the quantity
+     * @author Maisha Abdullah
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Method to get the total of the line
+     * @return price of one copy times the quantity, in cents
+     * @author Maisha Abdullah
+     */
+    public long getLineTotalCents() {
+        return unitPriceCents * quantity;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Repository for the lines of placed orders, which are also the purchase history of each user
+ * @author Maisha Abdullah
+ */
+package bookstore.inventory;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OrderLineRepository extends CrudRepository<OrderLine, Long> {
+
+    // books bought by one user, found through the (user_id, isbn) index
+    @Query("SELECT DISTINCT b FROM OrderLine l JOIN Book b ON b.isbn = l.isbn WHERE l.userId = :userId")
+    List<Book> findBooksBoughtBy(@Param("userId") Long userId);
+
+    // users who bought any of the books, found through the isbn index
+    @Query("SELECT DISTINCT l.userId FROM OrderLine l WHERE l.isbn IN :isbns")
+    List<Long> findBuyersOf(@Param("isbns") Collection<String> isbns);
+
+    // every (user id, book) bought by the users who bought any of the books, the buyers found through the isbn index
+    @Query("SELECT DISTINCT l.userId, b FROM OrderLine l JOIN Book b ON b.isbn = l.isbn"
+            + " WHERE l.userId IN (SELECT o.userId FROM OrderLine o WHERE o.isbn IN :isbns)")
+    List<Object[]> findPurchasesOfBuyersOf(@Param("isbns") Collection<String> isbns);
+}
@@ -0,0 +1,100 @@
+/**
+ * Places orders at checkout. An order and the checkout of its cart are written together in one short
+ * transaction, and the confirmation number handed out with the checkout form makes a form submitted twice
+ * return the order it already placed instead of checking out again. Orders are looked up by user and
+ * confirmation number, so one user's number never finds another user's order. Slower work that follows an
+ * order is left to OrderFollowUps, so the confirmation doesn't wait for it.
+ */
+
+package bookstore.inventory;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+@Service
+public class OrderService {
+
+    private final BookOrderRepository bookOrderRepository;
+    private final CartStore cartStore;
+    private final OrderFollowUps orderFollowUps;
+    private final CartHoldRepository cartHoldRepository;
+
+    /**
+     * Constructor for OrderService
+     * @param bookOrderRepository repository of placed orders
+     * @param cartStore keeps carts in memory and writes them behind
+     * @param orderFollowUps runs the work that follows an order in the background
+     * @param cartHoldRepository repository of the copies held by carts, no longer held once bought
+     * @author Maisha Abdullah
+     */
+    public OrderService(BookOrderRepository bookOrderRepository, CartStore cartStore, OrderFollowUps orderFollowUps,
+                        CartHoldRepository cartHoldRepository) {
+        this.bookOrderRepository = bookOrderRepository;
+        this.cartStore = cartStore;
+        this.orderFollowUps = orderFollowUps;
+        this.cartHoldRepository = cartHoldRepository;
+    }
+
+    /**
+     * Run some work after every order placed from now on, in the background with the other follow-ups
+     * @param name name of the work, for the logs
+     * @param followUp the work, given the order
+     * @author Maisha Abdullah
+     */
+    public void afterEachOrder(String name, Consumer<BookOrder> followUp) {
+        orderFollowUps.add(name, followUp);
+    }
+
+    /**
+     * Place an order for everything in a cart, once per confirmation number of a user
+     * @param userId id of the user checking out
+     * @param stored the cart as loaded with its user
+     * @param confirmationNumber confirmation number handed out with the checkout form
+     * @return the order placed with the confirmation number, or null if there was nothing to order
+     * @author Maisha Abdullah
+     */
+    public BookOrder confirm(Long userId, ShoppingCart stored, String confirmationNumber) {
+        BookOrder placed = bookOrderRepository.findByUserIdAndConfirmationNumber(userId, confirmationNumber);
+        if (placed != null) {
+            return placed; // submitted again by the same user
+        }
+
+        BookOrder order;
+        try {
+            order = cartStore.checkout(stored, cart -> place(userId, cart, confirmationNumber));
+        } catch (DataIntegrityViolationException e) {
+            order = null; // a submit that got there first placed it, e.g. on another instance
+        }
+        if (order == null) {
+            return bookOrderRepository.findByUserIdAndConfirmationNumber(userId, confirmationNumber);
+        }
+        orderFollowUps.orderPlaced(order);
+        return order;
+    }
+
+    /**
+     * Record the lines of a cart as an order, and drop the stored holds of its copies, in the transaction of its checkout
+     * @param userId id of the user checking out
+     * @param cart the cart in memory
+     * @param confirmationNumber confirmation number of the checkout
+     * @return the order, or null if the cart is empty or the order was already placed
+     * @author Maisha Abdullah
+     */
+    private BookOrder place(Long userId, ShoppingCart cart, String confirmationNumber) {
+        if (cart.getBooksInCart().isEmpty() || bookOrderRepository.findByUserIdAndConfirmationNumber(userId, confirmationNumber) != null) {
+            return null;
+        }
+        BookOrder order = new BookOrder(confirmationNumber, userId, LocalDateTime.now());
+        for (ShoppingCartItem cartItem : cart.getBooksInCart()) {
+            order.addLine(cartItem.getBook(), cartItem.getQuantity());
+        }
+        bookOrderRepository.save(order);
+        if (cart.getId() != null) {
+            cartHoldRepository.deleteOfCart(cart.getId());
+        }
+        return order;
+    }
+}
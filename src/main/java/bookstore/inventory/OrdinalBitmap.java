@@ -0,0 +1,207 @@
+/**
+ * Compressed set of item ordinals, split into chunks of 65536 like a Roaring bitmap.
+ * A chunk holding few ordinals keeps them in a sorted array, a fuller one switches to a plain bitmap.
+ */
+
+package bookstore.inventory;
+
+import java.util.Arrays;
+
+public class OrdinalBitmap {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+    // past this many ordinals an array chunk would take more room than a bitmap chunk
+    private static final int ARRAY_LIMIT = 4096;
+
+    private int[] chunkKeys = new int[0];
+    private Chunk[] chunks = new Chunk[0];
+    private int chunkCount;
+
+    /**
+     * Copy the set, changes to the copy leave this set as it is
+     * @return the copy
+     * @author Maisha Abdullah
+     */
+    public OrdinalBitmap copy() {
+        OrdinalBitmap copy = new OrdinalBitmap();
+        copy.chunkKeys = Arrays.copyOf(chunkKeys, chunkKeys.length);
+        copy.chunks = new Chunk[chunks.length];
+        for (int i = 0; i < chunkCount; i++) {
+            copy.chunks[i] = chunks[i].copy();
+        }
+        copy.chunkCount = chunkCount;
+        return copy;
+    }
+
+    /**
+     * Add an ordinal
+     * @param ordinal the ordinal, not negative
+     * @author Maisha Abdullah
+     */
+    public void add(int ordinal) {
+        int key = ordinal >>> CHUNK_BITS;
+        int index = Arrays.binarySearch(chunkKeys, 0, chunkCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            if (chunkCount == chunkKeys.length) {
+                int capacity = Math.max(4, chunkCount * 2);
+                chunkKeys = Arrays.copyOf(chunkKeys, capacity);
+                chunks = Arrays.copyOf(chunks, capacity);
+            }
+            System.arraycopy(chunkKeys, index, chunkKeys, index + 1, chunkCount - index);
+            System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+            chunkKeys[index] = key;
+            chunks[index] = new Chunk();
+            chunkCount++;
+        }
+        chunks[index].add((char) ordinal);
+    }
+
+    /**
+     * Remove an ordinal
+     * @param ordinal the ordinal
+     * @author Maisha Abdullah
+     */
+    public void remove(int ordinal) {
+        int index = Arrays.binarySearch(chunkKeys, 0, chunkCount, ordinal >>> CHUNK_BITS);
+        if (index < 0) {
+            return;
+        }
+        chunks[index].remove((char) ordinal);
+        if (chunks[index].cardinality == 0) {
+            System.arraycopy(chunkKeys, index + 1, chunkKeys, index, chunkCount - index - 1);
+            System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+            chunkCount--;
+            chunks[chunkCount] = null;
+        }
+    }
+
+    /**
+     * Check if an ordinal is in the set
+     * @param ordinal the ordinal
+     * @return if the ordinal was added and not removed since
+     * @author Maisha Abdullah
+     */
+    public boolean contains(int ordinal) {
+        int index = Arrays.binarySearch(chunkKeys, 0, chunkCount, ordinal >>> CHUNK_BITS);
+        return index >= 0 && chunks[index].contains((char) ordinal);
+    }
+
+    /**
+     * Get the number of ordinals in the set
+     * @return number of ordinals
+     * @author Maisha Abdullah
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Set the bits of all ordinals in the set in a plain bitmap, the way java.util.BitSet lays them out
+     * @param words bitmap to add to, ordinals past its end are left out
+     * @author Maisha Abdullah
+     */
+    public void orInto(long[] words) {
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i].orInto(words, chunkKeys[i] * CHUNK_WORDS);
+        }
+    }
+
+    /**
+     * Ordinals sharing the same upper 16 bits, stored by their lower 16 bits
+     */
+    private static class Chunk {
+        private char[] values = new char[4]; // sorted, used while the chunk is small
+        private long[] bits;                  // used once the chunk is large
+        private int cardinality;
+
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.values = values == null ? null : Arrays.copyOf(values, values.length);
+            copy.bits = bits == null ? null : Arrays.copyOf(bits, bits.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        void add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) == 0) {
+                    bits[value >>> 6] |= mask;
+                    cardinality++;
+                }
+                return;
+            }
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toBits();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        void remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) != 0) {
+                    bits[value >>> 6] &= ~mask;
+                    cardinality--;
+                }
+                return;
+            }
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+        }
+
+        boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        void orInto(long[] words, int offset) {
+            if (bits != null) {
+                int length = Math.min(CHUNK_WORDS, words.length - offset);
+                for (int i = 0; i < length; i++) {
+                    words[offset + i] |= bits[i];
+                }
+                return;
+            }
+            for (int i = 0; i < cardinality; i++) {
+                int word = offset + (values[i] >>> 6);
+                if (word < words.length) {
+                    words[word] |= 1L << values[i];
+                }
+            }
+        }
+
+        private void toBits() {
+            bits = new long[CHUNK_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Item ordinals sorted by the price of their book, kept in parallel primitive arrays of prices in cents and ordinals.
+ * The lowest and highest prices are the two ends and the items under a price cap are a prefix found by binary search.
+ * The index is sorted once when it is built and never changes. Prices that change afterwards are checked by the
+ * facet index on its own, so no change has to shift or copy the arrays.
+ */
+
+package bookstore.inventory;
+
+import java.util.Arrays;
+
+public class PriceIndex {
+
+    // sorted by price then ordinal, so every entry has one exact place
+    private final long[] cents;
+    private final int[] ordinals;
+    private final int size;
+
+    /**
+     * Index the given items at once, sorting them a single time
+     * @param centsByOrdinal price of each item in cents, by ordinal
+     * @param size number of items, from ordinal 0
+     * @author Maisha Abdullah
+     */
+    public PriceIndex(long[] centsByOrdinal, int size) {
+        Integer[] order = new Integer[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            order[ordinal] = ordinal;
+        }
+        Arrays.sort(order, (first, second) -> centsByOrdinal[first] != centsByOrdinal[second]
+                ? Long.compare(centsByOrdinal[first], centsByOrdinal[second]) : Integer.compare(first, second));
+
+        cents = new long[size];
+        ordinals = new int[size];
+        for (int i = 0; i < size; i++) {
+            cents[i] = centsByOrdinal[order[i]];
+            ordinals[i] = order[i];
+        }
+        this.size = size;
+    }
+
+    /**
+     * Convert a price to whole cents
+     * @param price the price
+     * @return the price in cents
+     * @author Maisha Abdullah
+     */
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    /**
+     * Get the number of items indexed
+     * @return number of items
+     * @author Maisha Abdullah
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the lowest price
+     * @return the price in cents, or null if nothing is indexed
+     * @author Maisha Abdullah
+     */
+    public Long lowest() {
+        return size == 0 ? null : cents[0];
+    }
+
+    /**
+     * Get the highest price
+     * @return the price in cents, or null if nothing is indexed
+     * @author Maisha Abdullah
+     */
+    public Long highest() {
+        return size == 0 ? null : cents[size - 1];
+    }
+
+    /**
+     * Set the bits of the ordinals of all items priced at most a cap in a plain bitmap
+     * @param maxCents highest price to keep, in cents
+     * @param words bitmap to add to, laid out the way java.util.BitSet does
+     * @author Maisha Abdullah
+     */
+    public void orAtMost(long maxCents, long[] words) {
+        // first entry priced over the cap, everything before it is under
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cents[middle] <= maxCents) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = 0; i < low; i++) {
+            words[ordinals[i] >>> 6] |= 1L << ordinals[i];
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package bookstore.inventory;
+
+/**
+ * Book fields covered by the inventory search
+ */
+public enum SearchField {
+    TITLE(3.0),
+    AUTHOR(2.5),
+    GENRE(1.5),
+    PUBLISHER(1.5),
+    DESCRIPTION(1.0);
+
+    public final double defaultBoost;
+
+    /**
+     * Create new search field
+     * @author Maisha Abdullah
+     * @param defaultBoost weight of a match in this field unless configured otherwise
+     */
+    SearchField(double defaultBoost) {
+        this.defaultBoost = defaultBoost;
+    }
+}
@@ -0,0 +1,738 @@
+/**
+ * Inverted index over the searchable fields of inventory items
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+public class SearchIndex {
+
+    // fields are packed into the low bits of every posting, the rest is the item ordinal
+    private static final SearchField[] FIELDS = SearchField.values();
+    private static final int FIELD_BITS = 3;
+
+    // separates author names so that a search can not match across two authors
+    private static final char VALUE_SEPARATOR = '\u0000';
+
+    // marks the start and end of a term so that short terms still have trigrams
+    private static final char TERM_BOUNDARY = '$';
+
+    // stale slots/postings tolerated before a compacted copy is worth building
+    private static final int MIN_STALE_BEFORE_COMPACTION = 64;
+
+    // readers only ever go through these, writers publish complete documents and postings into them
+    private volatile AtomicReferenceArray<Document> documents = new AtomicReferenceArray<>(16);
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Set<String>> termsBySuffix = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> termsByTrigram = new ConcurrentHashMap<>();
+    private final AtomicLongArray totalFieldLengths = new AtomicLongArray(FIELDS.length);
+    private volatile SearchRanking ranking = new SearchRanking();
+
+    // writer state, guarded by writeLock
+    private final Object writeLock = new Object();
+    private final Map<String, Integer> ordinalsByIsbn = new HashMap<>();
+    private int nextOrdinal;
+    private int staleCount;
+    private volatile int liveCount;
+
+    /**
+     * Build an index over the given inventory items, ordinals follow the list order
+     * @param inventoryItems items to index
+     * @author Maisha Abdullah
+     */
+    public SearchIndex(List<InventoryItem> inventoryItems) {
+        for (InventoryItem inventoryItem : inventoryItems) {
+            add(inventoryItem);
+        }
+    }
+
+    /**
+     * Get the number of indexed items
+     * @return number of items
+     * @author Maisha Abdullah
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Set the weights used to rank search results
+     * @param ranking ranking settings
+     * @author Maisha Abdullah
+     */
+    public void setRanking(SearchRanking ranking) {
+        this.ranking = ranking;
+    }
+
+    /**
+     * Search the indexed items, same matching rules as a case-insensitive substring search
+     * @param searchValue value to search with
+     * @return all matching items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> search(String searchValue) {
+        return search(searchValue, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search the indexed items and keep only the best ranked matches
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit matching items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> search(String searchValue, int limit) {
+        return search(searchValue, limit, item -> true);
+    }
+
+    /**
+     * Search the indexed items passing a test and keep only the best ranked of them
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @param keep tests a matching item before it is ranked, e.g. if it is in stock
+     * @return up to limit matching items that passed, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> search(String searchValue, int limit, Predicate<InventoryItem> keep) {
+        AtomicReferenceArray<Document> snapshot = documents;
+        String query = searchValue.toLowerCase();
+        List<String> queryTerms = tokenize(query);
+
+        // a substring of the search value lies inside one indexed term, so look up every term containing it
+        List<Map<String, Double>> termWeights = new ArrayList<>();
+        for (String queryTerm : queryTerms) {
+            termWeights.add(termsContaining(queryTerm));
+        }
+
+        BitSet candidates = new BitSet(snapshot.length());
+        if (queryTerms.isEmpty()) {
+            // nothing to look up (e.g. only punctuation), every item is a candidate
+            candidates.set(0, snapshot.length());
+        }
+        int[] documentFrequencies = collectCandidates(termWeights, candidates);
+
+        return rank(snapshot, candidates, new Scorer(termWeights, documentFrequencies), query, limit, keep);
+    }
+
+    /**
+     * Search the indexed items allowing for typos, every search term has to be within a few edits of a term in the item
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @return up to limit similar items, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> searchSimilar(String searchValue, int limit) {
+        return searchSimilar(searchValue, limit, item -> true);
+    }
+
+    /**
+     * Search the indexed items passing a test allowing for typos, and keep only the best ranked of them
+     * @param searchValue value to search with
+     * @param limit maximum number of items to return
+     * @param keep tests a similar item before it is ranked, e.g. if it is in stock
+     * @return up to limit similar items that passed, best match first
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> searchSimilar(String searchValue, int limit, Predicate<InventoryItem> keep) {
+        AtomicReferenceArray<Document> snapshot = documents;
+        List<String> queryTerms = tokenize(searchValue.toLowerCase());
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Map<String, Double>> termWeights = new ArrayList<>();
+        for (String queryTerm : queryTerms) {
+            termWeights.add(termsSimilarTo(queryTerm));
+        }
+
+        BitSet candidates = new BitSet(snapshot.length());
+        int[] documentFrequencies = collectCandidates(termWeights, candidates);
+
+        return rank(snapshot, candidates, new Scorer(termWeights, documentFrequencies), null, limit, keep);
+    }
+
+    /**
+     * Score the candidates and keep the best ones
+     * @param snapshot document table to read the candidates from
+     * @param candidates ordinals of the candidates
+     * @param scorer scorer for this search
+     * @param query lowercase search value each item has to contain, or null if every query term just has to match
+     * @param limit maximum number of items to return
+     * @param keep tests an item before it is scored, so the limit only counts items that passed
+     * @return up to limit items, best match first
+     * @author Maisha Abdullah
+     */
+    private List<InventoryItem> rank(AtomicReferenceArray<Document> snapshot, BitSet candidates, Scorer scorer, String query,
+                                     int limit, Predicate<InventoryItem> keep) {
+        // min-heap of the best matches so far, never holds more than limit entries
+        PriorityQueue<ScoredItem> best = new PriorityQueue<>();
+        for (int ordinal = candidates.nextSetBit(0); ordinal >= 0 && ordinal < snapshot.length(); ordinal = candidates.nextSetBit(ordinal + 1)) {
+            // read each document once so an item is judged on a single version
+            Document document = snapshot.get(ordinal);
+            if (document == null || !keep.test(document.item) || (query != null && !matches(document.text, query))) {
+                continue;
+            }
+            double score = scorer.score(document);
+            if (query == null && score < 0) {
+                // postings left behind by an edit, the current version lacks a query term
+                continue;
+            }
+            ScoredItem scoredItem = new ScoredItem(document.item, score, ordinal);
+            if (best.size() < limit) {
+                best.add(scoredItem);
+            } else if (limit > 0 && scoredItem.compareTo(best.peek()) > 0) {
+                best.poll();
+                best.add(scoredItem);
+            }
+        }
+
+        InventoryItem[] rankedItems = new InventoryItem[best.size()];
+        for (int i = rankedItems.length - 1; i >= 0; i--) {
+            rankedItems[i] = best.poll().item;
+        }
+        return new ArrayList<>(Arrays.asList(rankedItems));
+    }
+
+    /**
+     * Find the indexed terms containing a query term
+     * @param queryTerm the query term
+     * @return matching terms, weighted by the share of the term the query term covers
+     * @author Maisha Abdullah
+     */
+    private Map<String, Double> termsContaining(String queryTerm) {
+        Map<String, Double> weights = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : termsBySuffix.tailMap(queryTerm).entrySet()) {
+            if (!entry.getKey().startsWith(queryTerm)) {
+                break;
+            }
+            for (String term : entry.getValue()) {
+                weights.put(term, (double) queryTerm.length() / term.length());
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Find the indexed terms within a few edits of a query term; terms sharing trigrams with it are
+     * looked up first so the edit distance is only computed for likely matches
+     * @param queryTerm the query term
+     * @return similar terms, weighted down by their edit distance
+     * @author Maisha Abdullah
+     */
+    private Map<String, Double> termsSimilarTo(String queryTerm) {
+        int maxEdits = maxEdits(queryTerm);
+        Map<String, Double> weights = new HashMap<>();
+        if (maxEdits == 0) {
+            if (postings.containsKey(queryTerm)) {
+                weights.put(queryTerm, 1.0);
+            }
+            return weights;
+        }
+
+        // every edit breaks at most three trigrams, so closer terms share at least this many
+        List<String> queryTrigrams = trigrams(queryTerm);
+        int minShared = Math.max(1, queryTrigrams.size() - 3 * maxEdits);
+
+        Map<String, Integer> sharedTrigrams = new HashMap<>();
+        for (String trigram : new LinkedHashSet<>(queryTrigrams)) {
+            for (String term : termsByTrigram.getOrDefault(trigram, Set.of())) {
+                if (Math.abs(term.length() - queryTerm.length()) <= maxEdits) {
+                    sharedTrigrams.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : sharedTrigrams.entrySet()) {
+            if (entry.getValue() >= minShared) {
+                int distance = editDistance(queryTerm, entry.getKey(), maxEdits);
+                if (distance <= maxEdits) {
+                    weights.put(entry.getKey(), 1.0 - (double) distance / (queryTerm.length() + 1));
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Number of typos allowed in a query term, longer terms allow more
+     * @param queryTerm the query term
+     * @return maximum edit distance
+     * @author Maisha Abdullah
+     */
+    static int maxEdits(String queryTerm) {
+        if (queryTerm.length() <= 2) {
+            return 0;
+        }
+        return queryTerm.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Levenshtein distance between two terms, giving up once it is known to be above a limit
+     * @param a first term
+     * @param b second term
+     * @param limit largest distance of interest
+     * @return the distance, or limit + 1 if it is larger than limit
+     * @author Maisha Abdullah
+     */
+    static int editDistance(String a, String b, int limit) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Trigrams of a term with its boundaries marked
+     * @param term the term
+     * @return trigrams in order, may repeat
+     * @author Maisha Abdullah
+     */
+    private static List<String> trigrams(String term) {
+        String padded = TERM_BOUNDARY + term + TERM_BOUNDARY;
+        List<String> trigrams = new ArrayList<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Find the items that have a matching term for every query term
+     * @param termWeights matching indexed terms for each query term
+     * @param candidates set to the ordinals of the matching items
+     * @return number of items matching each query term
+     * @author Maisha Abdullah
+     */
+    private int[] collectCandidates(List<Map<String, Double>> termWeights, BitSet candidates) {
+        int[] documentFrequencies = new int[termWeights.size()];
+        for (int j = 0; j < termWeights.size(); j++) {
+            BitSet matches = new BitSet();
+            for (String term : termWeights.get(j).keySet()) {
+                Postings termPostings = postings.get(term);
+                if (termPostings != null) {
+                    for (int i = 0; i < termPostings.size; i++) {
+                        matches.set(termPostings.entries[i] >>> FIELD_BITS);
+                    }
+                }
+            }
+
+            documentFrequencies[j] = matches.cardinality();
+            if (j == 0) {
+                candidates.or(matches);
+            } else {
+                candidates.and(matches);
+            }
+        }
+        return documentFrequencies;
+    }
+
+    /**
+     * Add an item to the end of the index, or re-index it if its book is already indexed
+     * @param inventoryItem item to add
+     * @author Maisha Abdullah
+     */
+    public void add(InventoryItem inventoryItem) {
+        synchronized (writeLock) {
+            String isbn = inventoryItem.getBook().getIsbn();
+            if (ordinalsByIsbn.containsKey(isbn)) {
+                reindex(ordinalsByIsbn.get(isbn), inventoryItem);
+                return;
+            }
+
+            int ordinal = nextOrdinal++;
+            Document document = new Document(inventoryItem);
+            addPostings(ordinal, document, null);
+
+            // publish only once every posting is in place
+            ensureCapacity(ordinal + 1);
+            addFieldLengths(document, 1);
+            documents.set(ordinal, document);
+            ordinalsByIsbn.put(isbn, ordinal);
+            liveCount++;
+        }
+    }
+
+    /**
+     * Re-index an item after its book's fields were edited
+     * @param inventoryItem the item holding the edited book
+     * @return true if the item's book is in the index
+     * @author Maisha Abdullah
+     */
+    public boolean update(InventoryItem inventoryItem) {
+        synchronized (writeLock) {
+            Integer ordinal = ordinalsByIsbn.get(inventoryItem.getBook().getIsbn());
+            if (ordinal == null) {
+                return false;
+            }
+            reindex(ordinal, inventoryItem);
+            return true;
+        }
+    }
+
+    /**
+     * Remove the item holding a book from the index
+     * @param isbn isbn of the book
+     * @return true if the book was in the index
+     * @author Maisha Abdullah
+     */
+    public boolean remove(String isbn) {
+        synchronized (writeLock) {
+            Integer ordinal = ordinalsByIsbn.remove(isbn);
+            if (ordinal == null) {
+                return false;
+            }
+            // the postings stay behind, searches skip ordinals without a document
+            addFieldLengths(documents.get(ordinal), -1);
+            documents.set(ordinal, null);
+            staleCount++;
+            liveCount--;
+            return true;
+        }
+    }
+
+    /**
+     * Check if enough stale entries built up that a compacted copy should replace this index
+     * @return true if the index should be compacted
+     * @author Maisha Abdullah
+     */
+    public boolean needsCompaction() {
+        synchronized (writeLock) {
+            return staleCount > Math.max(MIN_STALE_BEFORE_COMPACTION, liveCount);
+        }
+    }
+
+    /**
+     * Build a copy of this index without stale entries, keeping the item order
+     * @return compacted index
+     * @author Maisha Abdullah
+     */
+    public SearchIndex compact() {
+        List<InventoryItem> liveItems = new ArrayList<>();
+        synchronized (writeLock) {
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                Document document = documents.get(ordinal);
+                if (document != null) {
+                    liveItems.add(document.item);
+                }
+            }
+        }
+        SearchIndex compacted = new SearchIndex(liveItems);
+        compacted.setRanking(ranking);
+        return compacted;
+    }
+
+    /**
+     * Swap in a fresh document for an ordinal, only adding postings for terms it did not have before
+     * @param ordinal ordinal of the item
+     * @param inventoryItem the item
+     * @author Maisha Abdullah
+     */
+    private void reindex(int ordinal, InventoryItem inventoryItem) {
+        Document previous = documents.get(ordinal);
+        Document document = new Document(inventoryItem);
+        addPostings(ordinal, document, previous);
+
+        // postings only for the old text stay behind, the document check filters them out
+        addFieldLengths(document, 1);
+        addFieldLengths(previous, -1);
+        documents.set(ordinal, document);
+        staleCount++;
+    }
+
+    /**
+     * Append one posting per distinct term and field of a document
+     * @param ordinal ordinal of the document
+     * @param document document to index
+     * @param previous earlier version of the document whose postings already exist, or null
+     * @author Maisha Abdullah
+     */
+    private void addPostings(int ordinal, Document document, Document previous) {
+        for (SearchField field : FIELDS) {
+            Set<String> terms = new LinkedHashSet<>(Arrays.asList(document.terms[field.ordinal()]));
+            if (previous != null) {
+                Arrays.asList(previous.terms[field.ordinal()]).forEach(terms::remove);
+            }
+            for (String term : terms) {
+                addPosting(term, (ordinal << FIELD_BITS) | field.ordinal());
+            }
+        }
+    }
+
+    /**
+     * Add or subtract a document's field lengths from the totals used for length normalization
+     * @param document the document
+     * @param sign 1 to add, -1 to subtract
+     * @author Maisha Abdullah
+     */
+    private void addFieldLengths(Document document, int sign) {
+        for (SearchField field : FIELDS) {
+            totalFieldLengths.addAndGet(field.ordinal(), sign * document.terms[field.ordinal()].length);
+        }
+    }
+
+    /**
+     * Append a posting for a term, registering the term's suffixes if it is new
+     * @param term indexed term
+     * @param posting packed ordinal and field
+     * @author Maisha Abdullah
+     */
+    private void addPosting(String term, int posting) {
+        Postings termPostings = postings.get(term);
+        if (termPostings == null) {
+            postings.put(term, Postings.EMPTY.append(posting));
+            for (int i = 0; i < term.length(); i++) {
+                termsBySuffix.computeIfAbsent(term.substring(i), suffix -> ConcurrentHashMap.newKeySet()).add(term);
+            }
+            for (String trigram : trigrams(term)) {
+                termsByTrigram.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(term);
+            }
+        } else {
+            postings.put(term, termPostings.append(posting));
+        }
+    }
+
+    /**
+     * Grow the document table, readers keep using the table they started with
+     * @param capacity required capacity
+     * @author Maisha Abdullah
+     */
+    private void ensureCapacity(int capacity) {
+        AtomicReferenceArray<Document> current = documents;
+        if (capacity <= current.length()) {
+            return;
+        }
+        AtomicReferenceArray<Document> grown = new AtomicReferenceArray<>(Math.max(capacity, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        documents = grown;
+    }
+
+    /**
+     * Check if the search value is in one of the searchable fields
+     * @param text normalized fields of an item
+     * @param query lowercase search value
+     * @return true if a field contains the search value
+     * @author Maisha Abdullah
+     */
+    private static boolean matches(String[] text, String query) {
+        for (String fieldText : text) {
+            if (fieldText.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lowercase the searchable fields of a book
+     * @param book the book
+     * @return lowercase field values, indexed by field
+     * @author Maisha Abdullah
+     */
+    static String[] normalizedFields(Book book) {
+        StringBuilder authors = new StringBuilder();
+        for (Author author : book.getAuthor()) {
+            if (authors.length() > 0) {
+                authors.append(VALUE_SEPARATOR);
+            }
+            authors.append(author.getFullName().toLowerCase());
+        }
+
+        String[] text = new String[FIELDS.length];
+        text[SearchField.TITLE.ordinal()] = lowercase(book.getTitle());
+        text[SearchField.AUTHOR.ordinal()] = authors.toString();
+        text[SearchField.GENRE.ordinal()] = lowercase(book.getGenre());
+        text[SearchField.PUBLISHER.ordinal()] = lowercase(book.getPublisher());
+        text[SearchField.DESCRIPTION.ordinal()] = lowercase(book.getDescription());
+        return text;
+    }
+
+    private static String lowercase(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    /**
+     * Split lowercase text into terms made of letters and digits
+     * @param text lowercase text
+     * @return terms in order of appearance
+     * @author Maisha Abdullah
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            terms.add(text.substring(start));
+        }
+        return terms;
+    }
+
+    /**
+     * Immutable snapshot of an indexed item and its lowercase fields
+     */
+    private static final class Document {
+        private final InventoryItem item;
+        private final String[] text;
+        private final String[][] terms;
+
+        private Document(InventoryItem item) {
+            this.item = item;
+            this.text = normalizedFields(item.getBook());
+            this.terms = new String[text.length][];
+            for (int field = 0; field < text.length; field++) {
+                terms[field] = tokenize(text[field]).toArray(new String[0]);
+            }
+        }
+    }
+
+    /**
+     * BM25F scorer for one search: term frequencies are boosted and length-normalized per field,
+     * summed, then saturated once per query term. Each indexed term matching a query term counts
+     * with its weight, e.g. the share of the term a substring covers, so "kite" counts fully for
+     * "kite" and "to" counts a little for "story".
+     */
+    private final class Scorer {
+        private final List<Map<String, Double>> termWeights;
+        private final double[] idf;
+        private final double[] boosts = new double[FIELDS.length];
+        private final double[] averageLengths = new double[FIELDS.length];
+        private final double k1;
+        private final double b;
+
+        private Scorer(List<Map<String, Double>> termWeights, int[] documentFrequencies) {
+            SearchRanking settings = ranking;
+            int documentCount = Math.max(1, liveCount);
+            this.termWeights = termWeights;
+            this.k1 = settings.getK1();
+            this.b = settings.getB();
+            this.idf = new double[termWeights.size()];
+            for (int j = 0; j < idf.length; j++) {
+                double frequency = Math.min(documentFrequencies[j], documentCount);
+                idf[j] = Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5));
+            }
+            for (SearchField field : FIELDS) {
+                boosts[field.ordinal()] = settings.getBoost(field);
+                averageLengths[field.ordinal()] = Math.max(1.0, (double) totalFieldLengths.get(field.ordinal()) / documentCount);
+            }
+        }
+
+        /**
+         * @return the score, or -1 if the document has no matching term for one of the query terms
+         */
+        private double score(Document document) {
+            double score = 0;
+            for (int j = 0; j < termWeights.size(); j++) {
+                Map<String, Double> weights = termWeights.get(j);
+                double weightedFrequency = 0;
+                boolean found = false;
+                for (int field = 0; field < FIELDS.length; field++) {
+                    String[] fieldTerms = document.terms[field];
+                    double frequency = 0;
+                    for (String term : fieldTerms) {
+                        Double weight = weights.get(term);
+                        if (weight != null) {
+                            frequency += weight;
+                        }
+                    }
+                    if (frequency > 0) {
+                        found = true;
+                        double lengthNorm = 1 - b + b * fieldTerms.length / averageLengths[field];
+                        weightedFrequency += boosts[field] * frequency / lengthNorm;
+                    }
+                }
+                if (!found) {
+                    return -1;
+                }
+                score += idf[j] * weightedFrequency * (k1 + 1) / (weightedFrequency + k1);
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Search match with its score, ordered from worst to best; ties go to the item indexed first
+     */
+    private static final class ScoredItem implements Comparable<ScoredItem> {
+        private final InventoryItem item;
+        private final double score;
+        private final int ordinal;
+
+        private ScoredItem(InventoryItem item, double score, int ordinal) {
+            this.item = item;
+            this.score = score;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(ScoredItem other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(other.ordinal, ordinal);
+        }
+    }
+
+    /**
+     * Immutable view of the packed postings for one term; appending shares the array with older views,
+     * which never read past their own size
+     */
+    private static final class Postings {
+        private static final Postings EMPTY = new Postings(new int[0], 0);
+
+        private final int[] entries;
+        private final int size;
+
+        private Postings(int[] entries, int size) {
+            this.entries = entries;
+            this.size = size;
+        }
+
+        private Postings append(int posting) {
+            int[] target = entries;
+            if (size == entries.length) {
+                target = Arrays.copyOf(entries, Math.max(4, size * 2));
+            }
+            target[size] = posting;
+            return new Postings(target, size + 1);
+        }
+    }
+}
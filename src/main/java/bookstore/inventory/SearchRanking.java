@@ -0,0 +1,87 @@
+/**
+ * Settings for ranking search results with BM25
+ */
+
+package bookstore.inventory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+public class SearchRanking {
+
+    private final Map<SearchField, Double> boosts = new EnumMap<>(SearchField.class);
+    private double k1 = 1.2;
+    private double b = 0.75;
+
+    /**
+     * Default constructor, every field uses its default boost
+     * @author Maisha Abdullah
+     */
+    public SearchRanking() {
+        for (SearchField field : SearchField.values()) {
+            boosts.put(field, field.defaultBoost);
+        }
+    }
+
+    /**
+     * Get the boost of a field
+     * @param field the field
+     * @return weight of a match in the field
+     * @author Maisha Abdullah
+     */
+    public double getBoost(SearchField field) {
+        return boosts.get(field);
+    }
+
+    /**
+     * Set the boost of a field
+     * @param field the field
+     * @param boost weight of a match in the field, must not be negative
+     * @author Maisha Abdullah
+     */
+    public void setBoost(SearchField field, double boost) {
+        if (boost >= 0) {
+            boosts.put(field, boost);
+        }
+    }
+
+    /**
+     * Get the term frequency saturation
+     * @return k1
+     * @author Maisha Abdullah
+     */
+    public double getK1() {
+        return k1;
+    }
+
+    /**
+     * Set the term frequency saturation, higher values let repeated terms count for longer
+     * @param k1 k1, must not be negative
+     * @author Maisha Abdullah
+     */
+    public void setK1(double k1) {
+        if (k1 >= 0) {
+            this.k1 = k1;
+        }
+    }
+
+    /**
+     * Get the field length normalization
+     * @return b
+     * @author Maisha Abdullah
+     */
+    public double getB() {
+        return b;
+    }
+
+    /**
+     * Set the field length normalization, 0 ignores field length and 1 fully normalizes by it
+     * @param b b, between 0 and 1
+     * @author Maisha Abdullah
+     */
+    public void setB(double b) {
+        if (b >= 0 && b <= 1) {
+            this.b = b;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * Cache of book listing results, keyed on the normalized search parameters. It is bounded by the number of isbns the
+ * results hold rather than by the number of results, since one broad search can hold as many as thousands of narrow
+ * ones. Reads and writes don't lock, once over the bound the least recently used results are dropped.
+ * A result names the books it depends on, so a book selling out or coming back only drops the results it could change.
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class SearchResultCache {
+
+    private final long maxIsbns;
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong(); // isbns held, plus one per result
+    private final AtomicLong clock = new AtomicLong(); // orders the uses of the results
+    private final Object evictionLock = new Object();
+
+    // results by the isbns they depend on, and the results depending on every book
+    private final Map<String, Set<Entry>> entriesByIsbn = new ConcurrentHashMap<>();
+    private final Set<Entry> entriesOnEveryBook = ConcurrentHashMap.newKeySet();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // compiled filters, kept across catalog changes since they don't depend on the books
+    private static final int MAX_PLANS = 1024;
+    private final Map<String, FilterPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty cache
+     * @param maxIsbns number of isbns to hold across all results before the least recently used ones are dropped
+     * @author Maisha Abdullah
+     */
+    public SearchResultCache(long maxIsbns) {
+        if (maxIsbns <= 0) {
+            throw new IllegalArgumentException("maxIsbns must be positive");
+        }
+        this.maxIsbns = maxIsbns;
+    }
+
+    /**
+     * Build the cache key for a listing, so that equivalent requests share an entry
+     * @param inventoryId id of the inventory listed
+     * @param searchValue search text
+     * @param sort sort criteria
+     * @param authors selected authors, or null for none
+     * @param genres selected genres, or null for none
+     * @param publishers selected publishers, or null for none
+     * @param price maximum price, or null for the highest price
+     * @return the key
+     * @author Maisha Abdullah
+     */
+    public static String key(Long inventoryId, String searchValue, String sort, List<String> authors,
+                             List<String> genres, List<String> publishers, String price) {
+        // the unit separator can't be typed into the search box, so parameters can't run into each other
+        return inventoryId + "\u001f" + AutocompleteIndex.normalize(searchValue) + "\u001f" + sort
+                + "\u001f" + filterKey(authors, genres, publishers, price);
+    }
+
+    /**
+     * Build the part of the cache key naming the filters, so that listings with the same filters share a plan
+     * @param authors selected authors, or null for none
+     * @param genres selected genres, or null for none
+     * @param publishers selected publishers, or null for none
+     * @param price maximum price, or null for the highest price
+     * @return the key
+     * @author Maisha Abdullah
+     */
+    public static String filterKey(List<String> authors, List<String> genres, List<String> publishers, String price) {
+        return normalize(authors) + "\u001f" + normalize(genres) + "\u001f" + normalize(publishers)
+                + "\u001f" + (price == null ? "" : price.trim());
+    }
+
+    /**
+     * Get the compiled plan of some filters, compiling it on first use
+     * @param filterKey key of the filters, from filterKey
+     * @param compile compiles the plan
+     * @return the plan
+     * @author Maisha Abdullah
+     */
+    public FilterPlan plan(String filterKey, Supplier<FilterPlan> compile) {
+        FilterPlan plan = plans.get(filterKey);
+        if (plan == null) {
+            if (plans.size() >= MAX_PLANS) {
+                plans.clear(); // cheap to compile again, not worth tracking which are in use
+            }
+            plan = compile.get();
+            plans.put(filterKey, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Get a cached result, dropping it if the catalog changed since it was computed
+     * @param key the key
+     * @return the result, or null if there is no up to date result
+     * @author Maisha Abdullah
+     */
+    public Result get(String key) {
+        Entry entry = results.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.result.getCatalogVersion() != CatalogVersion.current()) {
+            remove(key, entry);
+            return null;
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        return entry.result;
+    }
+
+    /**
+     * Cache a result, dropping the least recently used results if the cache holds too many isbns
+     * @param key the key
+     * @param result the result
+     * @author Maisha Abdullah
+     */
+    public void put(String key, Result result) {
+        Entry entry = new Entry(key, result, clock.incrementAndGet());
+        if (result.getCatalogVersion() != CatalogVersion.current() || entry.weight > maxIsbns) {
+            return;
+        }
+        // findable by its books before it can be read, then checked for changes made while it was worked out
+        register(entry);
+        Entry previous = results.put(key, entry);
+        if (previous != null) {
+            unregister(previous);
+        }
+        long added = entry.weight - (previous == null ? 0 : previous.weight);
+        if (invalidations.get() != result.getInvalidationsSeen()) {
+            // some book changed meanwhile, not worth finding out which
+            weight.addAndGet(added);
+            remove(key, entry);
+            return;
+        }
+        if (weight.addAndGet(added) > maxIsbns) {
+            evict();
+        }
+    }
+
+    /**
+     * Drop the results that depend on a book, e.g. once it sold out or came back
+     * @param isbn isbn of the book
+     * @author Maisha Abdullah
+     */
+    public void invalidate(String isbn) {
+        invalidations.incrementAndGet();
+        Set<Entry> dependents = entriesByIsbn.remove(isbn);
+        if (dependents != null) {
+            for (Entry entry : dependents) {
+                remove(entry.key, entry);
+            }
+        }
+        for (Entry entry : entriesOnEveryBook) {
+            remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Get the number of books changed so far, read before working out a result
+     * @return number of invalidations
+     * @author Maisha Abdullah
+     */
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Get the number of cached results
+     * @return number of results
+     * @author Maisha Abdullah
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Get the number of isbns held by the cached results
+     * @return isbns held, plus one per result
+     * @author Maisha Abdullah
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    /**
+     * Drop the least recently used results until the cache is back under its bound, with some room to spare so that
+     * the next few puts don't sort the entries again
+     * @author Maisha Abdullah
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            long target = maxIsbns - maxIsbns / 8;
+            if (weight.get() <= maxIsbns) {
+                return; // another put evicted in the meantime
+            }
+            List<Map.Entry<String, Entry>> byLastUse = new ArrayList<>(results.entrySet());
+            byLastUse.sort(Comparator.comparingLong(cached -> cached.getValue().lastUsed));
+            for (Map.Entry<String, Entry> cached : byLastUse) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                remove(cached.getKey(), cached.getValue());
+            }
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (results.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+            unregister(entry);
+        }
+    }
+
+    private void register(Entry entry) {
+        Set<String> dependsOn = entry.result.getDependsOn();
+        if (dependsOn == null) {
+            entriesOnEveryBook.add(entry);
+            return;
+        }
+        for (String isbn : dependsOn) {
+            // added while the set is locked, so it can't go into a set an invalidation just took out
+            entriesByIsbn.compute(isbn, (unused, entries) -> {
+                Set<Entry> dependents = entries == null ? ConcurrentHashMap.newKeySet() : entries;
+                dependents.add(entry);
+                return dependents;
+            });
+        }
+    }
+
+    private void unregister(Entry entry) {
+        Set<String> dependsOn = entry.result.getDependsOn();
+        if (dependsOn == null) {
+            entriesOnEveryBook.remove(entry);
+            return;
+        }
+        for (String isbn : dependsOn) {
+            entriesByIsbn.computeIfPresent(isbn, (unused, entries) -> {
+                entries.remove(entry);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+    }
+
+    private static String normalize(List<String> values) {
+        if (values == null) {
+            return "";
+        }
+        // order and repeats of the selected checkboxes don't change the listing
+        return String.join("\u001e", new TreeSet<>(values));
+    }
+
+    /**
+     * A cached result and when it was last used
+     */
+    private static class Entry {
+        private final String key;
+        private final Result result;
+        private final long weight;
+        private volatile long lastUsed;
+
+        private Entry(String key, Result result, long lastUsed) {
+            this.key = key;
+            this.result = result;
+            // an empty result still takes a slot
+            this.weight = result.getIsbns().size() + (result.getDependsOn() == null ? 0 : result.getDependsOn().size()) + 1L;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * A computed listing: the matching books in order, and the filter options shown next to them
+     */
+    public static class Result {
+        private final long catalogVersion;
+        private final long invalidationsSeen;
+        private final List<String> isbns;
+        private final Set<String> dependsOn;
+        private final FacetCounts facetCounts;
+        private final boolean similarMatches;
+        private final boolean noMatches;
+
+        /**
+         * Create a result
+         * @param catalogVersion catalog version read before the listing was computed
+         * @param invalidationsSeen invalidations of the cache read before the listing was computed
+         * @param isbns isbns of the listed books, in order
+         * @param dependsOn isbns of every book whose stock could change the listing, or null if any book could
+         * @param facetCounts counts of the values to filter by
+         * @param similarMatches if nothing matched the search exactly and similar spellings were used
+         * @param noMatches if nothing matched the search at all
+         * @author Maisha Abdullah
+         */
+        public Result(long catalogVersion, long invalidationsSeen, List<String> isbns, Collection<String> dependsOn,
+                      FacetCounts facetCounts, boolean similarMatches, boolean noMatches) {
+            this.catalogVersion = catalogVersion;
+            this.invalidationsSeen = invalidationsSeen;
+            this.isbns = Collections.unmodifiableList(new ArrayList<>(isbns));
+            this.dependsOn = dependsOn == null ? null : Collections.unmodifiableSet(new HashSet<>(dependsOn));
+            this.facetCounts = facetCounts;
+            this.similarMatches = similarMatches;
+            this.noMatches = noMatches;
+        }
+
+        /**
+         * Get the catalog version the result was computed from
+         * @return the version
+         * @author Maisha Abdullah
+         */
+        public long getCatalogVersion() {
+            return catalogVersion;
+        }
+
+        /**
+         * Get the invalidations of the cache read before the result was computed
+         * @return number of invalidations
+         * @author Maisha Abdullah
+         */
+        public long getInvalidationsSeen() {
+            return invalidationsSeen;
+        }
+
+        /**
+         * Get the isbns of the books whose stock could change the listing, e.g. every match of a search
+         * @return the isbns, or null if any book could
+         * @author Maisha Abdullah
+         */
+        public Set<String> getDependsOn() {
+            return dependsOn;
+        }
+
+        /**
+         * Get the isbns of the listed books
+         * @return isbns in listing order
+         * @author Maisha Abdullah
+         */
+        public List<String> getIsbns() {
+            return isbns;
+        }
+
+        /**
+         * Get the counts of the values to filter by
+         * @return facet counts and price bounds
+         * @author Maisha Abdullah
+         */
+        public FacetCounts getFacetCounts() {
+            return facetCounts;
+        }
+
+        /**
+         * Get if the listing shows similar spellings because nothing matched the search exactly
+         * @return if similar matches are listed
+         * @author Maisha Abdullah
+         */
+        public boolean isSimilarMatches() {
+            return similarMatches;
+        }
+
+        /**
+         * Get if nothing matched the search, not even similar spellings
+         * @return if there were no matches
+         * @author Maisha Abdullah
+         */
+        public boolean isNoMatches() {
+            return noMatches;
+        }
+    }
+}
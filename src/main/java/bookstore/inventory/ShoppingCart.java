@@ -8,7 +8,10 @@ import jakarta.persistence.*;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Entity
 public class ShoppingCart {
@@ -19,13 +22,15 @@ public class ShoppingCart {
 
     @OneToMany(mappedBy = "shoppingCart", cascade = CascadeType.ALL)
     private List<ShoppingCartItem> booksInCart = new ArrayList<>();
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
-    @JoinColumn(name = "booksForRecommendations")
-    private List<ShoppingCartItem> booksForRecommendations = new ArrayList<>();;
 
     @ManyToOne // many shoppingCarts should be able to map to the same inventory
     private Inventory inventory;
-    private Double totalPrice;
+    private long totalCents; // running total, moved by the change of each line
+    private int totalQuantity; // running number of copies in the cart
+    @Transient
+    private Map<String, ShoppingCartItem> itemsByIsbn; // the lines by isbn in cart order, booksInCart follows it
+    @Transient
+    private boolean linesRemoved; // booksInCart still holds lines taken out of itemsByIsbn
 
     /**
      * Constructor for ShoppingCart
@@ -34,7 +39,6 @@ public class ShoppingCart {
      */
     public ShoppingCart(Inventory inventory){
         this.inventory = inventory;
-        this.totalPrice = 0.0;
     }
 
     /**
@@ -43,7 +47,28 @@ public class ShoppingCart {
      */
     public ShoppingCart() {
         this.inventory = new Inventory();
-        this.totalPrice = 0.0;
+    }
+
+    /**
+     * Constructor copying the lines of a stored cart, e.g. to keep the cart in memory between requests
+     * @param stored the cart to copy
+     * @author Maisha Abdullah
+     */
+    public ShoppingCart(ShoppingCart stored) {
+        // through the getters, the stored cart can be a lazy proxy
+        this.id = stored.getId();
+        // not the stored cart's inventory, a copy is changed through the items each request loads
+        this.inventory = new Inventory();
+        this.itemsByIsbn = new LinkedHashMap<>();
+        for (ShoppingCartItem storedItem : stored.getBooksInCart()) {
+            if (storedItem.getQuantity() > 0) { // an emptied line is only waiting to be deleted
+                ShoppingCartItem cartItem = new ShoppingCartItem(storedItem.getBook(), storedItem.getQuantity(), this);
+                cartItem.setId(storedItem.getId());
+                addLine(cartItem);
+                totalCents += cartItem.getLineTotalCents();
+                totalQuantity += cartItem.getQuantity();
+            }
+        }
     }
 
     /**
@@ -64,90 +89,184 @@ public class ShoppingCart {
 
         // Add only if the book is still in inventory
         if (inventoryItem != null && inventoryItem.getQuantity() >= quantity) {
+            putInCart(book, quantity);
 
-            boolean bookExistsInCart = false;
-
-            for (ShoppingCartItem cartItem : booksInCart) {
-                // If the item exists in cart, increase the quantity
-                if (cartItem.getBook().getIsbn().equals(book.getIsbn()) && inventoryItem.getQuantity() >= quantity) {
-                    cartItem.setQuantity(cartItem.getQuantity() + quantity);
-
-                    // Reduce quantity from the inventory
-                    inventory.reduceFromInventory(book, quantity);
-
-                    bookExistsInCart = true;
-                }
-            }
-
-            if (!bookExistsInCart){
-                // Book is available in the inventory
-                ShoppingCartItem newCartItem = new ShoppingCartItem(book, quantity, this);
-                booksInCart.add(newCartItem);
-                // Reduce quantity from the inventory
-                inventory.reduceFromInventory(book, quantity);
-            }
-
-            updateTotalPrice();
+            // Reduce quantity from the inventory
+            inventory.reduceFromInventory(book, quantity);
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Method to add copies of an inventory item to cart, taking them from that item instead of the cart's inventory
+     * @param inventoryItem the item, as loaded by the request making the change
+     * @param quantity the quantity of books
+     * @return returns if the copies were added to cart
+     * @author Maisha Abdullah
+     */
+    public boolean addToCart(InventoryItem inventoryItem, int quantity){
+        // Handle invalid quantity
+        if (quantity <= 0 || inventoryItem.getQuantity() < quantity) {
+            return false;
+        }
+
+        putInCart(inventoryItem.getBook(), quantity);
+        inventoryItem.setQuantity(inventoryItem.getQuantity() - quantity);
+        return true;
+    }
+
     /**
      * Method to remove from cart
      * @param book      the Book user wishes to remove from cart
      * @param quantity  the quantity of books
-     * @return          returns if book was added to cart
+     * @return          returns if book was removed from cart
      * @author Maisha Abdullah
      * @author Thanuja Sivaananthan
      */
     public boolean removeFromCart(Book book, int quantity){
-        InventoryItem inventoryItem = inventory.findAvailableBook(book.getIsbn());
+        if (!takeOutOfCart(book.getIsbn(), quantity)) {
+            return false;
+        }
 
+        // Put the quantity back into the inventory
+        inventory.putBackIntoInventory(book, quantity);
+        return true;
+    }
+
+    /**
+     * Method to remove copies of an inventory item from cart, putting them back into that item instead of the
+     * cart's inventory
+     * @param inventoryItem the item, as loaded by the request making the change
+     * @param quantity the quantity of books
+     * @return returns if the copies were removed from cart
+     * @author Maisha Abdullah
+     */
+    public boolean removeFromCart(InventoryItem inventoryItem, int quantity){
+        if (!takeOutOfCart(inventoryItem.getBook().getIsbn(), quantity)) {
+            return false;
+        }
+
+        inventoryItem.setQuantity(inventoryItem.getQuantity() + quantity);
+        return true;
+    }
+
+    /**
+     * Method to take copies out of the cart without putting them back into the cart's inventory,
+     * e.g. when they are written back to the stored stock directly
+     * @param isbn      isbn of the book
+     * @param quantity  the quantity of books
+     * @return          returns if the copies were taken out of the cart
+     * @author Maisha Abdullah
+     */
+    public boolean takeOutOfCart(String isbn, int quantity){
         // Handle invalid quantity
         if (quantity <= 0) {
             return false;
         }
 
-        for (ShoppingCartItem cartItem : booksInCart) {
-            // Item exists in cart, increase the quantity
-            if (cartItem.getBook().getIsbn().equals(book.getIsbn()) && cartItem.getQuantity() >= quantity) {
-                int newQuantity = cartItem.getQuantity() - quantity;
-
-                // this always needs to happen for some reason?
+        ShoppingCartItem cartItem = findCartItem(isbn);
+        if (cartItem == null || cartItem.getQuantity() < quantity) {
+            return false;
+        }
 
-                cartItem.setQuantity(cartItem.getQuantity() - quantity);
+        long lineTotalBefore = cartItem.getLineTotalCents();
+        cartItem.setQuantity(cartItem.getQuantity() - quantity);
+        totalCents += cartItem.getLineTotalCents() - lineTotalBefore;
+        totalQuantity -= quantity;
 
-                if (newQuantity <= 0) {
-                    booksInCart.remove(cartItem);
-                }
+        if (cartItem.getQuantity() <= 0) {
+            removeLine(isbn);
+        }
+        return true;
+    }
 
-                // Reduce quantity from the inventory
-                inventory.putBackIntoInventory(book, quantity);
-                updateTotalPrice();
-                return true;
+    /**
+     * Make the lines and totals of this cart match a copy of it that was changed elsewhere, e.g. in memory
+     * @param source the changed copy
+     * @return the lines no longer in the copy, emptied and taken out of this cart so they can be deleted
+     * @author Maisha Abdullah
+     */
+    public List<ShoppingCartItem> copyLinesFrom(ShoppingCart source) {
+        Map<String, ShoppingCartItem> leftOver = new HashMap<>(getItemsByIsbn());
+        for (ShoppingCartItem sourceItem : source.getItemsByIsbn().values()) {
+            ShoppingCartItem cartItem = leftOver.remove(sourceItem.getBook().getIsbn());
+            if (cartItem == null) {
+                addLine(new ShoppingCartItem(sourceItem.getBook(), sourceItem.getQuantity(), this));
+            } else {
+                cartItem.setQuantity(sourceItem.getQuantity());
             }
         }
 
-        updateTotalPrice();
-        return false;
+        List<ShoppingCartItem> emptied = new ArrayList<>(leftOver.values());
+        for (ShoppingCartItem cartItem : emptied) {
+            cartItem.setQuantity(0);
+            removeLine(cartItem.getBook().getIsbn());
+        }
+        totalCents = source.totalCents;
+        totalQuantity = source.totalQuantity;
+        return emptied;
     }
 
     /**
-     * Method to update total price
+     * Method to find the line of a book in the cart
+     * @param isbn  isbn of the book
+     * @return      the cart item, or null if the book isn't in the cart
+     * @author Maisha Abdullah
+     */
+    public ShoppingCartItem findCartItem(String isbn) {
+        return getItemsByIsbn().get(isbn);
+    }
+
+    /**
+     * Get the lines of the cart by isbn, in cart order, built from the list JPA loaded the first time they're needed;
+     * from then on the lines only change through this class
+     * @return the lines by isbn
      * @author Maisha Abdullah
-     * @author Shrimei Chock
-     * @author Thanuja Sivaananthan
      */
-    private void updateTotalPrice(){
-        totalPrice = 0.0;
-        //update price
-        for (ShoppingCartItem item : booksInCart){
-            totalPrice += (item.getBook().getPrice() * item.getQuantity());
+    private Map<String, ShoppingCartItem> getItemsByIsbn() {
+        if (itemsByIsbn == null) {
+            Map<String, ShoppingCartItem> items = new LinkedHashMap<>();
+            for (ShoppingCartItem cartItem : booksInCart) {
+                if (cartItem.getQuantity() > 0) { // an emptied line is only waiting to be deleted
+                    items.putIfAbsent(cartItem.getBook().getIsbn(), cartItem);
+                }
+            }
+            linesRemoved = items.size() != booksInCart.size();
+            itemsByIsbn = items;
+        }
+        return itemsByIsbn;
+    }
+
+    private void putInCart(Book book, int quantity) {
+        ShoppingCartItem cartItem = findCartItem(book.getIsbn());
+
+        if (cartItem != null) {
+            // If the item exists in cart, increase the quantity
+            long lineTotalBefore = cartItem.getLineTotalCents();
+            cartItem.setQuantity(cartItem.getQuantity() + quantity);
+            totalCents += cartItem.getLineTotalCents() - lineTotalBefore;
+            totalQuantity += quantity;
+        } else {
+            // Book is available in the inventory
+            ShoppingCartItem newCartItem = new ShoppingCartItem(book, quantity, this);
+            addLine(newCartItem);
+            totalCents += newCartItem.getLineTotalCents();
+            totalQuantity += quantity;
         }
     }
 
+    private void addLine(ShoppingCartItem cartItem) {
+        getItemsByIsbn().put(cartItem.getBook().getIsbn(), cartItem);
+        booksInCart.add(cartItem); // a new isbn goes last in both, so the list keeps the order of the map
+    }
+
+    private void removeLine(String isbn) {
+        getItemsByIsbn().remove(isbn);
+        linesRemoved = true; // taken out of the list when it is next read, not searched for on every removal
+    }
+
     /**
      * Method to get the total price of cart
      * @return  the total price
@@ -155,39 +274,48 @@ public class ShoppingCart {
      * @author Shrimei Chock
      */
     public Double getTotalPrice() {
-        return totalPrice;
+        return totalCents / 100.0;
     }
 
     /**
-     * Method to get the books in cart
-     * @return  books in cart
+     * Method to get the total price of cart in cents
+     * @return  the total price in cents
      * @author Maisha Abdullah
      */
-    public List<ShoppingCartItem> getBooksInCart() {
-        return booksInCart;
+    public long getTotalCents() {
+        return totalCents;
     }
 
     /**
-     * Method to get books for recommendations
-     * @return books in cart
-     * @author Waheeb Hashmi
+     * Method to get the books in cart
+     * @return  books in cart
+     * @author Maisha Abdullah
      */
-    public List<ShoppingCartItem> getBooksForRecommendations(){
-        return booksForRecommendations;
+    public List<ShoppingCartItem> getBooksInCart() {
+        if (linesRemoved) {
+            booksInCart.clear();
+            booksInCart.addAll(itemsByIsbn.values());
+            linesRemoved = false;
+        }
+        return booksInCart;
     }
 
     /**
-     * Method to clear cart once checkout is completed?
+     * Method to clear cart once checkout is completed, what was bought is kept with the order
+     * @return the lines taken out of the cart, to be deleted
      * @author Maisha Abdullah
      */
-    public void checkout(){
-        for (ShoppingCartItem itemInCart : booksInCart) {
-            booksForRecommendations.add(itemInCart);
-        }
-        for (ShoppingCartItem itemInCart : booksInCart) {
+    public List<ShoppingCartItem> checkout(){
+        List<ShoppingCartItem> bought = new ArrayList<>(getItemsByIsbn().values());
+        for (ShoppingCartItem itemInCart : bought) {
             itemInCart.setQuantity(0);
         }
         booksInCart.clear();
+        itemsByIsbn.clear();
+        linesRemoved = false;
+        totalCents = 0;
+        totalQuantity = 0;
+        return bought;
     }
 
     /**
@@ -232,11 +360,7 @@ public class ShoppingCart {
      * @author Maisha Abdullah
      */
     public int getTotalQuantityOfCart(){
-        int total = 0;
-        for (ShoppingCartItem itemInCart : booksInCart) {
-            total += itemInCart.getQuantity();
-        }
-        return total;
+        return totalQuantity;
     }
 
 }
@@ -15,6 +15,7 @@ public class ShoppingCartItem extends Item {
     @ManyToOne
     @JoinColumn(name = "shopping_cart_id")
     private ShoppingCart shoppingCart;
+    private long lineTotalCents; // price of the book times the quantity, kept in step by setQuantity
 
     /**
      * Default constructor
@@ -32,6 +33,7 @@ public class ShoppingCartItem extends Item {
      */
     public ShoppingCartItem(Book book, int quantity){
         super(book, quantity);
+        updateLineTotal();
     }
 
 
@@ -45,6 +47,31 @@ public class ShoppingCartItem extends Item {
     public ShoppingCartItem(Book book, int quantity, ShoppingCart shoppingCart){
         super(book,quantity);
         this.shoppingCart = shoppingCart;
+        updateLineTotal();
+    }
+
+    /**
+     * Set the quantity, repricing the line at the current price of the book
+     * @param quantity  the quantity
+     * @author Maisha Abdullah
+     */
+    @Override
+    public void setQuantity(int quantity) {
+        super.setQuantity(quantity);
+        updateLineTotal();
+    }
+
+    /**
+     * Get the total of the line
+     * @return price of the book times the quantity, in cents
+     * @author Maisha Abdullah
+     */
+    public long getLineTotalCents() {
+        return lineTotalCents;
+    }
+
+    private void updateLineTotal() {
+        lineTotalCents = getBook() == null ? 0 : PriceIndex.toCents(getBook().getPrice()) * getQuantity();
     }
 
     /**
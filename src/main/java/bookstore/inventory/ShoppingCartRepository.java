@@ -4,7 +4,22 @@
  */
 package bookstore.inventory;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
 public interface ShoppingCartRepository extends CrudRepository<ShoppingCart, Long> {
     ShoppingCart findById(long id);
+
+    /**
+     * Get carts by id with all their lines, so they can be read outside a transaction
+     * @param ids ids of the carts
+     * @return the carts found
+     * @author Maisha Abdullah
+     */
+    @Query("SELECT DISTINCT c FROM ShoppingCart c LEFT JOIN FETCH c.booksInCart WHERE c.id IN :ids")
+    List<ShoppingCart> findAllWithLines(@Param("ids") Collection<Long> ids);
 }
@@ -1,21 +1,47 @@
 package bookstore.inventory;
 
+import java.util.Comparator;
+
 /**
  * Criteria for sorting books by
  */
 public enum SortCriteria {
-    LOW_TO_HIGH("low_to_high"),
-    HIGH_TO_LOW("high_to_low"),
-    ALPHABETICAL("alphabetical");
+    // ties are broken by isbn the same way the database queries do, so both list books in the same order
+    LOW_TO_HIGH("low_to_high", Comparator.comparing((InventoryItem item) -> item.getBook().getPrice())
+            .thenComparing(item -> item.getBook().getIsbn())),
+    HIGH_TO_LOW("high_to_low", LOW_TO_HIGH.comparator.reversed()),
+    ALPHABETICAL("alphabetical", Comparator.comparing((InventoryItem item) -> item.getBook().getTitle())
+            .thenComparing(item -> item.getBook().getIsbn())),
+    RELEVANCE("relevance", null);
 
     public final String label;
 
+    // null when the order is decided elsewhere, e.g. by search ranking
+    public final Comparator<InventoryItem> comparator;
+
     /**
      * Create new sorting criteria
      * @author Shrimei Chock
      * @param label criteria label
+     * @param comparator order of the items, or null to keep the order they come in
      */
-    SortCriteria(String label) {
+    SortCriteria(String label, Comparator<InventoryItem> comparator) {
         this.label = label;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Find the sorting criteria with a label
+     * @param label criteria label
+     * @return the criteria, or null if no criteria has the label
+     * @author Maisha Abdullah
+     */
+    public static SortCriteria fromLabel(String label) {
+        for (SortCriteria criteria : values()) {
+            if (criteria.label.equals(label)) {
+                return criteria;
+            }
+        }
+        return null;
     }
 }
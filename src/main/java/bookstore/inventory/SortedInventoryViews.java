@@ -0,0 +1,197 @@
+/**
+ * The available books in every sort order, kept in order as books come and go. Every order is a skip list, so
+ * adding, removing or moving one book costs O(log n) whatever the size of the catalog. Readers get a read only
+ * snapshot of an order, copied on the first read after a change and shared by the reads after it.
+ */
+
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SortedInventoryViews {
+
+    // snapshots read while a writer is busy are tried this many times before waiting for the writer
+    private static final int MAX_OPTIMISTIC_READS = 2;
+
+    private final Map<SortCriteria, ConcurrentSkipListSet<Entry>> views = new EnumMap<>(SortCriteria.class);
+    private final Map<SortCriteria, Snapshot> snapshots = Collections.synchronizedMap(new EnumMap<>(SortCriteria.class));
+
+    // odd while a writer is changing the views, so a reader can tell its copy may be half way through a change
+    private final AtomicLong version = new AtomicLong();
+
+    // writer state, guarded by this
+    private final Map<InventoryItem, Entry> entries = new IdentityHashMap<>();
+    private long nextSequence;
+
+    /**
+     * Sort the items once for every sort order
+     * @param items items to sort, in catalog order
+     * @author Maisha Abdullah
+     */
+    public SortedInventoryViews(List<InventoryItem> items) {
+        for (SortCriteria criteria : SortCriteria.values()) {
+            views.put(criteria, new ConcurrentSkipListSet<>(orderOf(criteria.comparator)));
+        }
+        for (InventoryItem item : items) {
+            if (!entries.containsKey(item)) {
+                insert(new Entry(item, nextSequence++));
+            }
+        }
+    }
+
+    /**
+     * Get the items in a sort order, copying them only if they changed since the last read
+     * @param criteria sort order, relevance keeps catalog order
+     * @return read only snapshot of the items
+     * @author Maisha Abdullah
+     */
+    public List<InventoryItem> get(SortCriteria criteria) {
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_READS; attempt++) {
+            long seen = version.get();
+            Snapshot snapshot = snapshots.get(criteria);
+            if (snapshot != null && snapshot.version == seen) {
+                return snapshot.items;
+            }
+            if ((seen & 1) == 0) {
+                List<InventoryItem> items = copy(criteria);
+                if (version.get() == seen) {
+                    snapshots.put(criteria, new Snapshot(seen, items));
+                    return items;
+                }
+            }
+        }
+        synchronized (this) {
+            // books keep changing, copy between two changes
+            List<InventoryItem> items = copy(criteria);
+            snapshots.put(criteria, new Snapshot(version.get(), items));
+            return items;
+        }
+    }
+
+    /**
+     * Get the number of items
+     * @return number of items
+     * @author Maisha Abdullah
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Put a new item in its place in every sort order
+     * @param item the new item
+     * @author Maisha Abdullah
+     */
+    public synchronized void add(InventoryItem item) {
+        if (entries.containsKey(item)) {
+            return;
+        }
+        version.incrementAndGet();
+        insert(new Entry(item, nextSequence++));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Take an item out of every sort order
+     * @param item the item, matched by identity
+     * @author Maisha Abdullah
+     */
+    public synchronized void remove(InventoryItem item) {
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            return;
+        }
+        version.incrementAndGet();
+        delete(entry);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Swap an item for one holding its changed book (e.g. a new price or title), in its new place in every sort order
+     * @param item the old item, matched by identity
+     * @param changedItem the item replacing it
+     * @author Maisha Abdullah
+     */
+    public synchronized void replace(InventoryItem item, InventoryItem changedItem) {
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            add(changedItem);
+            return;
+        }
+        version.incrementAndGet();
+        delete(entry);
+        // catalog order doesn't depend on the book, keep the item's place
+        insert(new Entry(changedItem, entry.sequence));
+        version.incrementAndGet();
+    }
+
+    private void insert(Entry entry) {
+        entries.put(entry.item, entry);
+        for (ConcurrentSkipListSet<Entry> view : views.values()) {
+            view.add(entry);
+        }
+    }
+
+    private void delete(Entry entry) {
+        entries.remove(entry.item);
+        for (ConcurrentSkipListSet<Entry> view : views.values()) {
+            view.remove(entry);
+        }
+    }
+
+    private List<InventoryItem> copy(SortCriteria criteria) {
+        List<InventoryItem> items = new ArrayList<>();
+        for (Entry entry : views.get(criteria)) {
+            items.add(entry.item);
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Get the order of the entries in a view, items that sort the same keep catalog order
+     * @param comparator order of the items, or null for catalog order
+     * @return the order of the entries
+     * @author Maisha Abdullah
+     */
+    private static Comparator<Entry> orderOf(Comparator<InventoryItem> comparator) {
+        Comparator<Entry> bySequence = Comparator.comparingLong(entry -> entry.sequence);
+        if (comparator == null) {
+            return bySequence;
+        }
+        return Comparator.<Entry, InventoryItem>comparing(entry -> entry.item, comparator).thenComparing(bySequence);
+    }
+
+    /**
+     * An item and its place in catalog order
+     */
+    private static class Entry {
+        private final InventoryItem item;
+        private final long sequence;
+
+        private Entry(InventoryItem item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A copy of a view and the version it was copied at
+     */
+    private static class Snapshot {
+        private final long version;
+        private final List<InventoryItem> items;
+
+        private Snapshot(long version, List<InventoryItem> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copies left of each book, shared by every request so most carts that would take more copies than are left are
+ * turned away without a write. Each book has its own atomic counter: reserving is a compare-and-set loop that
+ * never goes below zero, putting copies back is a single atomic add, and no lock is shared between books.
+ * The counts are only a hint. Copies put back by another app instance, or reclaimed there, never reach them,
+ * so a refusal is checked against the stored stock before it's final, and copies reserved here are still taken
+ * with InventoryStock's conditional update, which is what keeps two carts from both taking the last copy.
+ */
+
+package bookstore.inventory;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+@Service
+public class StockLedger {
+
+    private final ConcurrentMap<String, AtomicInteger> copiesLeft = new ConcurrentHashMap<>();
+
+    /**
+     * Take copies of a book if enough are left
+     * @param isbn isbn of the book
+     * @param quantity number of copies to take
+     * @param storedStock reads the stored stock, called the first time the book is reserved and when too few
+     *                    copies seem to be left
+     * @return if the copies were taken
+     * @author Maisha Abdullah
+     */
+    public boolean reserve(String isbn, int quantity, IntSupplier storedStock) {
+        if (quantity <= 0) {
+            return false;
+        }
+        AtomicInteger counter = copiesLeft.get(isbn);
+        if (counter == null) {
+            // just read, so a refusal is final
+            return take(copiesLeft.computeIfAbsent(isbn, key -> new AtomicInteger(storedStock.getAsInt())), quantity);
+        }
+        if (take(counter, quantity)) {
+            return true;
+        }
+        // copies may have come back without passing through here, e.g. on another instance, count them again
+        counter.set(storedStock.getAsInt());
+        return take(counter, quantity);
+    }
+
+    /**
+     * Take copies off a counter if enough are left
+     * @param counter copies left of a book
+     * @param quantity number of copies to take
+     * @return if the copies were taken
+     * @author Maisha Abdullah
+     */
+    private static boolean take(AtomicInteger counter, int quantity) {
+        while (true) {
+            int left = counter.get();
+            if (left < quantity) {
+                return false;
+            }
+            if (counter.compareAndSet(left, left - quantity)) {
+                return true;
+            }
+            // another cart took or returned copies in between, try again with the new count
+        }
+    }
+
+    /**
+     * Put copies of a book back
+     * @param isbn isbn of the book
+     * @param quantity number of copies to put back
+     * @author Maisha Abdullah
+     */
+    public void release(String isbn, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        // not counted yet, the stored stock read on first use will include these copies, or the next refusal reads it again
+        AtomicInteger counter = copiesLeft.get(isbn);
+        if (counter != null) {
+            counter.addAndGet(quantity);
+        }
+    }
+
+    /**
+     * Stop counting a book, e.g. after its stock was set by hand, so the stored stock is read again on next use
+     * @param isbn isbn of the book
+     * @author Maisha Abdullah
+     */
+    public void forget(String isbn) {
+        copiesLeft.remove(isbn);
+    }
+
+    /**
+     * Get the copies left of a book
+     * @param isbn isbn of the book
+     * @return copies left, or null if the book isn't counted yet
+     * @author Maisha Abdullah
+     */
+    public Integer available(String isbn) {
+        AtomicInteger counter = copiesLeft.get(isbn);
+        return counter == null ? null : counter.get();
+    }
+}
@@ -0,0 +1,74 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AutocompleteIndex Tests
+ * @author Maisha Abdullah
+ */
+public class AutocompleteIndexTest {
+
+    private AutocompleteIndex autocompleteIndex;
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        Book book1 = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960");
+        Book book2 = new Book("978-0-06-240985-0", "Go Set a Watchman", author_list, 14.99, "14/07/2015");
+
+        ArrayList<Author> author_list2 = new ArrayList<>();
+        author_list2.add(new Author("Khaled", "Hosseini"));
+        Book book3 = new Book("1573222453", "The Kite Runner", author_list2, 22.00, "29/05/2003");
+
+        List<Book> books = new ArrayList<>();
+        books.add(book1);
+        books.add(book2);
+        books.add(book3);
+        autocompleteIndex = new AutocompleteIndex(books);
+    }
+
+    @Test
+    public void testDuplicateAuthorsIndexedOnce(){
+        assertEquals(5, autocompleteIndex.size());
+    }
+
+    @Test
+    public void testCompleteTitle(){
+        List<AutocompleteIndex.Completion> completions = autocompleteIndex.complete("The K", 10);
+        assertEquals(1, completions.size());
+        assertEquals("The Kite Runner", completions.get(0).getText());
+        assertEquals(AutocompleteIndex.TITLE, completions.get(0).getType());
+    }
+
+    @Test
+    public void testCompleteInnerWord(){
+        List<AutocompleteIndex.Completion> completions = autocompleteIndex.complete("mock", 10);
+        assertEquals(1, completions.size());
+        assertEquals("To Kill a Mockingbird", completions.get(0).getText());
+
+        completions = autocompleteIndex.complete("hoss", 10);
+        assertEquals(1, completions.size());
+        assertEquals("Khaled Hosseini", completions.get(0).getText());
+        assertEquals(AutocompleteIndex.AUTHOR, completions.get(0).getType());
+    }
+
+    @Test
+    public void testCompleteOrderAndLimit(){
+        // "Khaled Hosseini" starts with "k", the two titles only have a word starting with it
+        List<AutocompleteIndex.Completion> completions = autocompleteIndex.complete("k", 10);
+        assertEquals(3, completions.size());
+        assertEquals("Khaled Hosseini", completions.get(0).getText()); // starts with the prefix
+
+        assertEquals(1, autocompleteIndex.complete("k", 1).size());
+        assertTrue(autocompleteIndex.complete("", 10).isEmpty());
+        assertTrue(autocompleteIndex.complete("xyz", 10).isEmpty());
+    }
+}
@@ -6,9 +6,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.ui.Model;
 
@@ -50,6 +52,10 @@ public class BookControllerTest {
     private Model model;
     @Mock
     private UserRepository userRepository;
+    @Spy
+    private StockLedger stockLedger = new StockLedger();
+    @Mock
+    private CatalogIndex catalogIndex;
 
     private Inventory mockInventory;
     private List<InventoryItem> availableBooks;
@@ -82,6 +88,20 @@ public class BookControllerTest {
 
     }
 
+    /**
+     * Build a controller using the mocks stubbed in this test, the runner built the injected one with its own
+     * @return the controller
+     * @author Maisha Abdullah
+     */
+    private BookController stubbedController() {
+        BookController controller = new BookController(bookRepository, inventoryItemRepository, inventoryRepository);
+        ReflectionTestUtils.setField(controller, "userController", userController);
+        ReflectionTestUtils.setField(controller, "authorRepository", authorRepository);
+        ReflectionTestUtils.setField(controller, "stockLedger", stockLedger);
+        ReflectionTestUtils.setField(controller, "catalogIndex", catalogIndex);
+        return controller;
+    }
+
     @Test
     public void testShowUploadForm() {
         // Arrange
@@ -222,6 +242,19 @@ public class BookControllerTest {
         verify(inventoryItemRepository, never()).save(any(InventoryItem.class));
     }
 
+    @Test
+    public void testHandleUploadForm_RecountsStock() {
+        Book book = new Book(ISBN, "Test Book", new ArrayList<>(), 10.99, "2023-01-01");
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+        when(inventoryRepository.save(inventory)).thenReturn(inventory);
+        assertFalse(stockLedger.reserve(ISBN, 1, () -> 0)); // counted while out of stock
+
+        String viewName = stubbedController().handleUploadForm(book, AUTHORS_INPUT, QUANTITY, model);
+
+        assertEquals("redirect:/listAvailableBooks", viewName);
+        assertNull(stockLedger.available(ISBN));
+        verify(catalogIndex).stockChanged(inventory.findAvailableBook(ISBN));
+    }
 
     @Test
     public void testHandleEditForm_Success() {
@@ -243,10 +276,11 @@ public class BookControllerTest {
         when(inventoryItemRepository.save(any(InventoryItem.class))).thenReturn(inventoryItem);
 
         // Act
-        String viewName = bookController.handleEditForm(book, AUTHORS_INPUT, QUANTITY, model);
+        String viewName = stubbedController().handleEditForm(book, AUTHORS_INPUT, QUANTITY, model);
 
         // Assert
         assertEquals("redirect:/viewBook?isbn=" + ISBN, viewName);
+        verify(catalogIndex).edited(inventoryItem);
         //verify(bookRepository).save(book);
         //verify(inventoryItemRepository).save(inventoryItem);
         verify(model, never()).addAttribute(eq("errorMessage"), anyString());
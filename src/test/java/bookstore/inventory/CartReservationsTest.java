@@ -0,0 +1,191 @@
+package bookstore.inventory;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * CartReservations Tests
+ * @author Maisha Abdullah
+ */
+public class CartReservationsTest {
+
+    private static final long MINUTE = 60_000;
+
+    private Book book1;
+    private InventoryItem item1;
+    private Inventory inventory;
+    private ShoppingCart storedCart;
+    private ShoppingCart shoppingCart;
+    private CartStore cartStore;
+    private StockLedger stockLedger;
+    private ShoppingCartRepository shoppingCartRepository;
+    private CartTotalEvents cartTotalEvents;
+    private CartReservations reservations;
+    private InventoryItemRepository inventoryItemRepository;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private CartHoldRepository cartHoldRepository;
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        book1 = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960", "", "Grand Central Publishing", "Classical", "");
+        inventory = new Inventory(new ArrayList<>());
+        item1 = new InventoryItem(book1, 5);
+        item1.setId(1L);
+        inventory.addItemToInventory(item1);
+
+        storedCart = new ShoppingCart(inventory);
+        storedCart.setId(7L);
+        stockLedger = new StockLedger();
+
+        shoppingCartRepository = mock(ShoppingCartRepository.class);
+        when(shoppingCartRepository.findAllById(any())).thenReturn(List.of(storedCart));
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        cartStore = new CartStore(shoppingCartRepository, mock(ShoppingCartItemRepository.class), transactionManager, Duration.ofSeconds(2));
+        shoppingCart = cartStore.cartOf(storedCart);
+        inventoryItemRepository = mock(InventoryItemRepository.class);
+        when(inventoryItemRepository.putBookBackIntoStock(anyLong(), anyString(), anyInt())).thenReturn(1);
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        // every statement of a batch writes its row
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class)))
+                .thenAnswer(invocation -> new int[invocation.getArgument(1, SqlParameterSource[].class).length]);
+        when(jdbcTemplate.batchUpdate(eq(InventoryItemRepository.PUT_BOOK_BACK_INTO_STOCK), any(SqlParameterSource[].class)))
+                .thenAnswer(invocation -> ones(invocation.getArgument(1, SqlParameterSource[].class).length));
+        InventoryStock inventoryStock = new InventoryStock(inventoryItemRepository, jdbcTemplate, mock(EntityManager.class), transactionManager, mock(CatalogIndex.class));
+        cartTotalEvents = mock(CartTotalEvents.class);
+        cartHoldRepository = mock(CartHoldRepository.class);
+        reservations = new CartReservations(stockLedger, inventoryStock, cartStore, cartHoldRepository, jdbcTemplate, cartTotalEvents, Duration.ofMinutes(15));
+    }
+
+    private static int[] ones(int length) {
+        int[] rows = new int[length];
+        Arrays.fill(rows, 1);
+        return rows;
+    }
+
+    private void addToCart(){
+        assertTrue(stockLedger.reserve("0446310786", 1, () -> 5));
+        boolean added = cartStore.update(storedCart, cart -> cart.addToCart(item1, 1));
+        assertTrue(added);
+        reservations.hold(7L, "0446310786", 1);
+    }
+
+    @Test
+    public void testExpiredHoldsGoBack(){
+        long now = System.currentTimeMillis();
+        addToCart();
+        addToCart();
+        addToCart();
+        assertEquals(2, inventory.findAvailableBook("0446310786").getQuantity());
+        assertEquals(1, cartStore.flush());
+        assertEquals(3, storedCart.getTotalQuantityOfCart());
+
+        // the customer puts one back themselves, the other two run out
+        shoppingCart.removeFromCart(item1, 1);
+        stockLedger.release("0446310786", 1);
+        reservations.release(7L, "0446310786", 1);
+
+        assertEquals(0, reservations.reclaimExpired(now + MINUTE));
+        assertEquals(2, reservations.reclaimExpired(now + 20 * MINUTE));
+        assertEquals(0, shoppingCart.getTotalQuantityOfCart());
+        // straight to the stored stock in one batch, the inventory the cart was loaded with only saw the customer's copy
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(InventoryItemRepository.PUT_BOOK_BACK_INTO_STOCK),
+                argThat((SqlParameterSource[] parameters) -> parameters.length == 2
+                        && "0446310786".equals(parameters[0].getValue("isbn")) && Integer.valueOf(1).equals(parameters[1].getValue("quantity"))));
+        assertEquals(3, inventory.findAvailableBook("0446310786").getQuantity());
+        assertEquals(5, stockLedger.available("0446310786"));
+        verify(cartTotalEvents).publish(7L, 0);
+
+        // the emptied cart is written behind
+        assertEquals(1, cartStore.waiting());
+        assertEquals(1, cartStore.flush());
+        assertTrue(storedCart.getBooksInCart().isEmpty());
+        assertEquals(0, storedCart.getTotalQuantityOfCart());
+
+        assertEquals(0, reservations.reclaimExpired(now + 40 * MINUTE));
+    }
+
+    @Test
+    public void testBoughtCopiesStay(){
+        long now = System.currentTimeMillis();
+        addToCart();
+        reservations.clear(7L);
+
+        assertEquals(0, reservations.reclaimExpired(now + 20 * MINUTE));
+        assertEquals(1, shoppingCart.getTotalQuantityOfCart());
+        assertEquals(4, stockLedger.available("0446310786"));
+    }
+
+    @Test
+    public void testHoldsStoredWithStock(){
+        reservations.store(7L, List.of("0446310786", "0446310786", "1573222453"), 1);
+        // one statement per book, none of them held yet so both are inserted
+        verify(jdbcTemplate).batchUpdate(eq(CartHoldRepository.HOLD), argThat((SqlParameterSource[] parameters) -> parameters.length == 2
+                && Integer.valueOf(2).equals(parameters[0].getValue("quantity")) && "1573222453".equals(parameters[1].getValue("isbn"))));
+        verify(jdbcTemplate).batchUpdate(eq(CartHoldRepository.NEW_HOLD), argThat((SqlParameterSource[] parameters) -> parameters.length == 2
+                && (long) parameters[0].getValue("heldUntil") >= System.currentTimeMillis() + 14 * MINUTE));
+
+        reservations.storeReleases(7L, List.of("0446310786"), 1);
+        verify(jdbcTemplate).batchUpdate(eq(CartHoldRepository.RELEASE), argThat((SqlParameterSource[] parameters) -> parameters.length == 1));
+        reservations.store(null, List.of("0446310786"), 1);
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(CartHoldRepository.HOLD), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void testHoldsRestoredFromStoredHolds(){
+        long now = System.currentTimeMillis();
+        Book book2 = new Book("1573222453", "The Kite Runner", new ArrayList<>(), 22.00, "29/05/2003");
+        InventoryItem item2 = new InventoryItem(book2, 5);
+        addToCart();
+        addToCart();
+        cartStore.update(storedCart, cart -> cart.addToCart(item2, 1));
+        assertEquals(1, cartStore.flush());
+
+        // a third copy was taken but its line never written, the copy of book2 went back but its line still shows it
+        long heldUntil = now + 15 * MINUTE;
+        when(cartHoldRepository.findAll()).thenReturn(List.of(new CartHold(7L, "0446310786", 3, heldUntil),
+                new CartHold(7L, "1573222453", 0, heldUntil)));
+        when(shoppingCartRepository.findAllWithLines(any())).thenReturn(List.of(new ShoppingCart(storedCart)));
+        CartStore restartedStore = new CartStore(shoppingCartRepository, mock(ShoppingCartItemRepository.class), mock(PlatformTransactionManager.class), Duration.ofSeconds(2));
+        InventoryStock inventoryStock = new InventoryStock(inventoryItemRepository, jdbcTemplate, mock(EntityManager.class), mock(PlatformTransactionManager.class), mock(CatalogIndex.class));
+        CartReservations restarted = new CartReservations(new StockLedger(), inventoryStock, restartedStore, cartHoldRepository, jdbcTemplate, cartTotalEvents, Duration.ofMinutes(15));
+
+        assertEquals(1, restarted.restore());
+        assertTrue(restarted.holdsCopies(7L));
+        ShoppingCart restartedCart = restartedStore.cached(7L);
+        assertEquals(2, restartedCart.getTotalQuantityOfCart());
+        assertEquals(null, restartedCart.findCartItem("1573222453"));
+        verify(jdbcTemplate).batchUpdate(eq(InventoryItemRepository.PUT_BOOK_BACK_INTO_STOCK), argThat((SqlParameterSource[] parameters) ->
+                parameters.length == 1 && Integer.valueOf(1).equals(parameters[0].getValue("quantity"))));
+        verify(jdbcTemplate).batchUpdate(eq(CartHoldRepository.RELEASE), any(SqlParameterSource[].class));
+        // the trimmed cart is written behind
+        assertEquals(1, restartedStore.waiting());
+
+        assertEquals(0, restarted.reclaimExpired(now + MINUTE));
+        assertEquals(2, restarted.reclaimExpired(heldUntil + 1000));
+        assertEquals(0, restartedCart.getTotalQuantityOfCart());
+    }
+}
@@ -0,0 +1,139 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * CartStore Tests
+ * @author Maisha Abdullah
+ */
+public class CartStoreTest {
+
+    private Book book1;
+    private Book book2;
+    private InventoryItem item1;
+    private InventoryItem item2;
+    private ShoppingCart storedCart;
+    private ShoppingCartRepository shoppingCartRepository;
+    private ShoppingCartItemRepository shoppingCartItemRepository;
+    private CartStore cartStore;
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        book1 = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960", "", "Grand Central Publishing", "Classical", "");
+        book2 = new Book("1573222453", "The Kite Runner", author_list, 22.00, "29/05/2003", "", "Riverhead Books", "Historical fiction", "");
+
+        Inventory inventory = new Inventory(new ArrayList<>());
+        item1 = new InventoryItem(book1, 5);
+        item2 = new InventoryItem(book2, 5);
+        inventory.addItemToInventory(item1);
+        inventory.addItemToInventory(item2);
+        storedCart = new ShoppingCart(inventory);
+        storedCart.setId(7L);
+
+        shoppingCartRepository = mock(ShoppingCartRepository.class);
+        shoppingCartItemRepository = mock(ShoppingCartItemRepository.class);
+        when(shoppingCartRepository.findAllById(any())).thenReturn(List.of(storedCart));
+        when(shoppingCartRepository.findById(7L)).thenReturn(storedCart);
+        cartStore = new CartStore(shoppingCartRepository, shoppingCartItemRepository, mock(PlatformTransactionManager.class), Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void testChangesAreWrittenBehind(){
+        ShoppingCart cart = cartStore.cartOf(storedCart);
+        assertNotSame(storedCart, cart);
+        assertSame(cart, cartStore.cartOf(storedCart));
+
+        // several clicks, nothing written yet
+        cartStore.update(storedCart, c -> c.addToCart(item1, 2));
+        cartStore.update(storedCart, c -> c.addToCart(item2, 1));
+        cartStore.update(storedCart, c -> c.removeFromCart(item1, 1));
+        verify(shoppingCartRepository, never()).saveAll(any());
+        assertEquals(0, storedCart.getTotalQuantityOfCart());
+        assertEquals(1, cartStore.waiting());
+
+        // written once, coalesced
+        assertEquals(1, cartStore.flush());
+        verify(shoppingCartRepository, times(1)).saveAll(any());
+        assertEquals(2, storedCart.getTotalQuantityOfCart());
+        assertEquals(1, storedCart.findCartItem("0446310786").getQuantity());
+        assertEquals(cart.getTotalCents(), storedCart.getTotalCents());
+        assertEquals(0, cartStore.waiting());
+        assertEquals(0, cartStore.flush());
+
+        // a line taken out in memory is deleted when written
+        ShoppingCartItem storedLine = storedCart.findCartItem("1573222453");
+        cartStore.update(storedCart, c -> c.removeFromCart(item2, 1));
+        cartStore.flush();
+        verify(shoppingCartItemRepository).deleteAll(List.of(storedLine));
+        assertEquals(1, storedCart.getBooksInCart().size());
+    }
+
+    @Test
+    public void testIdleCartsAreLetGo(){
+        long minute = 60_000;
+        cartStore = new CartStore(shoppingCartRepository, shoppingCartItemRepository, mock(PlatformTransactionManager.class),
+                Duration.ofSeconds(2), Duration.ofMinutes(10));
+        ShoppingCart cart = cartStore.cartOf(storedCart);
+        // the request's inventory isn't kept with the cart
+        assertNotSame(storedCart.getInventory(), cart.getInventory());
+        cartStore.update(storedCart, c -> c.addToCart(item1, 1));
+
+        // not written yet, and then still in use
+        assertEquals(0, cartStore.evictIdle(System.currentTimeMillis() + 20 * minute));
+        cartStore.flush();
+        assertEquals(0, cartStore.evictIdle(System.currentTimeMillis() + minute));
+
+        // kept while it holds copies
+        cartStore.keepWhile(cartId -> cartId == 7L);
+        assertEquals(0, cartStore.evictIdle(System.currentTimeMillis() + 20 * minute));
+        cartStore.keepWhile(cartId -> false);
+        assertEquals(1, cartStore.evictIdle(System.currentTimeMillis() + 20 * minute));
+        assertEquals(0, cartStore.inMemory());
+
+        // copied again from the stored cart on next use
+        ShoppingCart reloaded = cartStore.cartOf(storedCart);
+        assertNotSame(cart, reloaded);
+        assertEquals(1, reloaded.getTotalQuantityOfCart());
+    }
+
+    @Test
+    public void testCheckoutIsWrittenRightAway(){
+        ShoppingCart cart = cartStore.cartOf(storedCart);
+        cartStore.update(storedCart, c -> c.addToCart(item1, 3));
+
+        // nothing recorded, the cart stays
+        assertNull(cartStore.checkout(storedCart, c -> null));
+        assertEquals(3, cart.getTotalQuantityOfCart());
+
+        assertEquals("order", cartStore.checkout(storedCart, c -> "order"));
+
+        verify(shoppingCartRepository).save(storedCart);
+        assertEquals(0, cartStore.waiting());
+        assertEquals(0, cart.getTotalQuantityOfCart());
+        assertEquals(0, storedCart.getTotalQuantityOfCart());
+        assertTrue(storedCart.getBooksInCart().isEmpty());
+        // bought lines are kept with the order, not in the cart
+        verify(shoppingCartItemRepository).deleteAll(argThat(lines -> lines.iterator().hasNext()));
+    }
+}
@@ -0,0 +1,34 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * CartTotalEvents Tests
+ * @author Maisha Abdullah
+ */
+public class CartTotalEventsTest {
+
+    @Test
+    public void testStreamsPerCart(){
+        CartTotalEvents events = new CartTotalEvents();
+
+        SseEmitter firstTab = events.subscribe(7L, 1);
+        SseEmitter secondTab = events.subscribe(7L, 1);
+        events.subscribe(8L, 0);
+
+        assertNotSame(firstTab, secondTab);
+        assertEquals(2, events.subscribers(7L));
+        assertEquals(1, events.subscribers(8L));
+        assertEquals(0, events.subscribers(9L));
+
+        // nobody listening to a cart is not an error
+        assertDoesNotThrow(() -> events.publish(9L, 3));
+        assertDoesNotThrow(() -> events.publish(null, 3));
+        assertDoesNotThrow(() -> events.publish(7L, 2));
+    }
+}
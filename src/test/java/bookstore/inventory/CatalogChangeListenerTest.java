@@ -0,0 +1,41 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CatalogChangeListener Tests
+ * @author Maisha Abdullah
+ */
+public class CatalogChangeListenerTest {
+
+    /**
+     * Test book details version - stock and inventory changes leave it alone, book and author changes bump it
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testBookDetailsVersion(){
+        CatalogChangeListener listener = new CatalogChangeListener();
+        Author author = new Author("Harper", "Lee");
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(author);
+        Book book = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960");
+
+        long catalog = CatalogVersion.current();
+        long details = CatalogVersion.currentBookDetails();
+        listener.catalogUpdated(new InventoryItem(book, 1));
+        listener.catalogUpdated(new Inventory());
+        listener.catalogChanged(new InventoryItem(book, 1));
+        assertEquals(details, CatalogVersion.currentBookDetails());
+        assertTrue(CatalogVersion.current() > catalog);
+
+        listener.catalogUpdated(book);
+        assertEquals(details + 1, CatalogVersion.currentBookDetails());
+        listener.catalogChanged(author);
+        assertEquals(details + 2, CatalogVersion.currentBookDetails());
+    }
+}
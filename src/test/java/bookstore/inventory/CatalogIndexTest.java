@@ -0,0 +1,210 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * CatalogIndex Tests
+ * @author Maisha Abdullah
+ */
+public class CatalogIndexTest {
+    private Book book1;
+    private Book book2;
+    private InventoryItem item1;
+    private InventoryItem item2;
+    private CatalogIndex catalogIndex;
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        Author author1 = new Author("Harper", "Lee");
+        author_list.add(author1);
+
+        String description1 = "Compassionate, dramatic, and deeply moving, To Kill A Mockingbird takes readers to the roots of human behavior - to innocence and experience, kindness and cruelty, love and hatred, humor and pathos.";
+        this.book1 = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960", "https://m.media-amazon.com/images/W/AVIF_800250-T2/images/I/71FxgtFKcQL._SL1500_.jpg", "Grand Central Publishing", "Classical", description1);
+        this.item1 = new InventoryItem(book1, 5);
+
+        ArrayList<Author> author_list2 = new ArrayList<>();
+        Author author2 = new Author("Khaled", "Hosseini");
+        author_list2.add(author2);
+        String description2 = "The Kite Runner tells the story of Amir, a young boy from the Wazir Akbar Khan district of Kabul";
+        this.book2 = new Book("1573222453", "The Kite Runner", author_list2, 22.00, "29/05/2003", "https://upload.wikimedia.org/wikipedia/en/6/62/Kite_runner.jpg", "Riverhead Books", "Historical fiction", description2);
+        this.item2 = new InventoryItem(book2, 10);
+
+        catalogIndex = new CatalogIndex(mock(InventoryItemRepository.class));
+        catalogIndex.rebuild(List.of(item1, item2));
+    }
+
+    /**
+     * Test book search - best ranked matches come first and the limit is applied
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchRankedLimit(){
+        // only a description match for the mockingbird, title match for the kite runner
+        List<InventoryItem> searchedBooks = catalogIndex.search("the", 1);
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item2, searchedBooks.get(0));
+
+        assertEquals(2, catalogIndex.search("the", 5).size());
+        assertEquals(0, catalogIndex.search("the", 0).size());
+    }
+
+    /**
+     * Test similar book search - misspelled search terms still find the book
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchSimilar(){
+        assertEquals(0, catalogIndex.search("Hoseini", 10).size());
+
+        List<InventoryItem> searchedBooks = catalogIndex.searchSimilar("Hoseini", 10);
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item2, searchedBooks.get(0));
+
+        searchedBooks = catalogIndex.searchSimilar("kyte runer", 10);
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item2, searchedBooks.get(0));
+
+        searchedBooks = catalogIndex.searchSimilar("harpr mockinbird", 10);
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item1, searchedBooks.get(0));
+
+        assertEquals(0, catalogIndex.searchSimilar("invalid", 10).size());
+    }
+
+    /**
+     * Test book search - books selling out and coming back are followed without rebuilding
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchAfterStockChange(){
+        item2.setQuantity(0);
+        catalogIndex.stockChanged(item2);
+        assertEquals(0, catalogIndex.search("kite", 10).size());
+        assertEquals(1, catalogIndex.search("harper", 10).size());
+
+        item2.setQuantity(3);
+        catalogIndex.stockChanged(item2);
+        List<InventoryItem> searchedBooks = catalogIndex.search("kite", 10);
+        assertEquals(1, searchedBooks.size());
+        assertEquals(book2, searchedBooks.get(0).getBook());
+    }
+
+    /**
+     * Test finding books by isbn - the lookup follows books selling out and coming back
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testFindAllFollowsStockChanges(){
+        assertEquals(List.of(item2, item1), catalogIndex.findAll(List.of("1573222453", "0446310786")));
+
+        item1.setQuantity(0);
+        catalogIndex.stockChanged(item1);
+        assertEquals(List.of(item2), catalogIndex.findAll(List.of("1573222453", "0446310786")));
+
+        item1.setQuantity(2);
+        catalogIndex.stockChanged(item1);
+        List<InventoryItem> foundBooks = catalogIndex.findAll(List.of("0446310786"));
+        assertEquals(1, foundBooks.size());
+        assertEquals(book1, foundBooks.get(0).getBook());
+        assertEquals(2, foundBooks.get(0).getQuantity());
+    }
+
+    /**
+     * Test sorted books - every order is kept as books are edited and sell out
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSortedBooks(){
+        catalogIndex.rebuild(List.of(item2, item1));
+
+        List<InventoryItem> lowToHigh = catalogIndex.sortedBy(SortCriteria.LOW_TO_HIGH);
+        assertEquals(List.of(item1, item2), lowToHigh);
+        assertEquals(List.of(item2, item1), catalogIndex.sortedBy(SortCriteria.HIGH_TO_LOW));
+        assertEquals(List.of(item2, item1), catalogIndex.sortedBy(SortCriteria.ALPHABETICAL));
+        assertEquals(List.of(item2, item1), catalogIndex.sortedBy(SortCriteria.RELEVANCE));
+
+        //check that an edited price moves the book, without changing lists already handed out
+        Book cheaperBook2 = new Book(book2.getIsbn(), book2.getTitle(), new ArrayList<>(book2.getAuthor()), 10.00, book2.getDate());
+        catalogIndex.edited(new InventoryItem(cheaperBook2, 10));
+        List<InventoryItem> edited = catalogIndex.sortedBy(SortCriteria.LOW_TO_HIGH);
+        assertEquals(cheaperBook2, edited.get(0).getBook());
+        assertEquals(item1, edited.get(1));
+        assertEquals(cheaperBook2, catalogIndex.sortedBy(SortCriteria.RELEVANCE).get(0).getBook());
+        assertEquals(List.of(item1, item2), lowToHigh);
+
+        //check that a sold out book is left out of every listing, while it keeps its place in the orders
+        item1.setQuantity(0);
+        catalogIndex.stockChanged(item1);
+        FilterPlan everything = FilterPlan.compile(null, null, null, Double.MAX_VALUE);
+        List<InventoryItem> listed = catalogIndex.filter(catalogIndex.sortedBy(SortCriteria.ALPHABETICAL), everything);
+        assertEquals(1, listed.size());
+        assertEquals(cheaperBook2, listed.get(0).getBook());
+        assertEquals(Map.of("Khaled Hosseini", 1), catalogIndex.countFacets(catalogIndex.sortedBy(SortCriteria.ALPHABETICAL), everything).getAuthors());
+    }
+
+    /**
+     * Test listing changes - only a book selling out or coming back is reported
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testListingChangesReported(){
+        List<String> changed = new ArrayList<>();
+        catalogIndex.whenListingChanges(changed::add);
+
+        item1.setQuantity(3);
+        catalogIndex.stockChanged(item1);
+        item1.setQuantity(0);
+        catalogIndex.stockChanged(item1);
+        catalogIndex.stockChanged(item1);
+        item1.setQuantity(1);
+        catalogIndex.stockChanged(item1);
+        assertEquals(List.of("0446310786", "0446310786"), changed);
+    }
+
+    /**
+     * Test compaction - sold out books are dropped from the indexes on the background thread once they make up
+     * half of them, and edited prices are folded into the facet index, while reads stay right in the meantime
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testCompactedInBackground() throws Exception {
+        List<InventoryItem> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(new InventoryItem(new Book("isbn-" + i, "Title " + i, new ArrayList<>(), 1.00, ""), 1));
+        }
+        catalogIndex.rebuild(items);
+        for (int i = 0; i < 101; i++) {
+            items.get(i).setQuantity(0);
+            catalogIndex.stockChanged(items.get(i));
+        }
+        assertEquals(99, catalogIndex.search("title", 1000).size());
+        catalogIndex.awaitCompaction();
+        assertEquals(99, catalogIndex.sortedBy(SortCriteria.RELEVANCE).size());
+        assertEquals(items.get(101), catalogIndex.sortedBy(SortCriteria.RELEVANCE).get(0));
+        assertEquals(99, catalogIndex.search("title", 1000).size());
+
+        // a sold out book coming back after it was dropped is indexed again
+        items.get(0).setQuantity(2);
+        catalogIndex.stockChanged(items.get(0));
+        assertEquals(100, catalogIndex.search("title", 1000).size());
+
+        for (int i = 101; i < 200; i++) {
+            Book book = items.get(i).getBook();
+            catalogIndex.edited(new InventoryItem(new Book(book.getIsbn(), book.getTitle(), new ArrayList<>(), 5.00, ""), 1));
+        }
+        FilterPlan cheap = FilterPlan.compile(null, null, null, 2.00);
+        assertEquals(1, catalogIndex.filter(catalogIndex.sortedBy(SortCriteria.RELEVANCE), cheap).size());
+        catalogIndex.awaitCompaction();
+        assertEquals(1, catalogIndex.filter(catalogIndex.sortedBy(SortCriteria.RELEVANCE), cheap).size());
+        assertEquals(100, catalogIndex.sortedBy(SortCriteria.RELEVANCE).size());
+    }
+}
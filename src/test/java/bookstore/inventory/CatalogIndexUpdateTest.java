@@ -0,0 +1,80 @@
+package bookstore.inventory;
+
+import bookstore.mockservlet.MockHttpServletRequest;
+import bookstore.mockservlet.MockHttpServletResponse;
+import bookstore.users.BookUser;
+import bookstore.users.UserController;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.ui.ConcurrentModel;
+import org.springframework.ui.Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * CatalogIndex Tests, books uploaded and edited through the BookController are listed by later requests
+ * @author Maisha Abdullah
+ */
+@SpringBootTest
+@Transactional
+public class CatalogIndexUpdateTest {
+
+    @Autowired
+    private BookController bookController;
+    @Autowired
+    private CheckoutController checkoutController;
+    @Autowired
+    private BookRepository bookRepository;
+    @MockBean
+    private UserController userController;
+
+    /**
+     * Search the books listed to a logged in user
+     * @param searchValue value to search with
+     * @return isbns of the listed books
+     * @author Maisha Abdullah
+     */
+    private List<String> listedIsbns(String searchValue) {
+        when(userController.getLoggedInUser(any())).thenReturn(new BookUser("testUser", "password123"));
+        Model model = new ConcurrentModel();
+        checkoutController.listAvailableBooks(new MockHttpServletRequest(), new MockHttpServletResponse(), searchValue,
+                "low_to_high", null, null, null, null, 0, 20, null, model);
+
+        List<String> isbns = new ArrayList<>();
+        for (Object item : (List<?>) model.getAttribute("inventoryItems")) {
+            isbns.add(((InventoryItem) item).getBook().getIsbn());
+        }
+        return isbns;
+    }
+
+    @Test
+    public void testEditedBookIsSearchable(){
+        Book stored = bookRepository.findByIsbn("1573222453");
+        assertEquals(List.of("1573222453"), listedIsbns("kite"));
+
+        Book edited = new Book(stored.getIsbn(), "A Thousand Splendid Suns", new ArrayList<>(), stored.getPrice(),
+                stored.getDate(), stored.getCover(), stored.getPublisher(), stored.getGenre(), stored.getDescription());
+        bookController.handleEditForm(edited, "Khaled Hosseini", 10, new ConcurrentModel());
+
+        assertEquals(List.of("1573222453"), listedIsbns("splendid"));
+    }
+
+    @Test
+    public void testUploadedBookIsSearchable(){
+        assertEquals(List.of(), listedIsbns("middlemarch"));
+
+        Book uploaded = new Book("9780141439549", "Middlemarch", new ArrayList<>(), 15.0, "01/12/1871",
+                "", "Penguin Classics", "Classical", "A study of provincial life");
+        bookController.handleUploadForm(uploaded, "George Eliot", 3, new ConcurrentModel());
+
+        assertEquals(List.of("9780141439549"), listedIsbns("middlemarch"));
+    }
+}
@@ -21,22 +21,30 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.ui.Model;
 
 import bookstore.users.UserController;
 import bookstore.users.UserRepository;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 
 
@@ -59,7 +67,7 @@ class CheckoutControllerTest {
     private InventoryRepository inventoryRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private OrderLineRepository orderLineRepository;
 
     @Mock
     private ShoppingCart shoppingCart;
@@ -70,6 +78,28 @@ class CheckoutControllerTest {
     @Mock
     private InventoryItemRepository inventoryItemRepository;
 
+    @Spy
+    private StockLedger stockLedger = new StockLedger();
+
+    @Mock
+    private CartReservations cartReservations;
+
+    @Mock
+    private InventoryStock inventoryStock;
+
+    @Mock
+    private CartTotalEvents cartTotalEvents;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private CatalogIndex catalogIndex;
+
+    @Spy
+    private CartStore cartStore = new CartStore(Mockito.mock(ShoppingCartRepository.class), Mockito.mock(ShoppingCartItemRepository.class),
+            Mockito.mock(PlatformTransactionManager.class), Duration.ofSeconds(2));
+
     @Mock
     private HttpServletRequest request;
 
@@ -106,6 +136,14 @@ class CheckoutControllerTest {
         inventory = new Inventory(availableBooks);
         inventory.addItemToInventory(item1);
         inventory.addItemToInventory(item2);
+
+        // the items a request loads to change a cart with
+        when(inventoryItemRepository.findStored(eq(CatalogIndex.INVENTORY_ID), anyCollection())).thenAnswer(invocation -> {
+            Collection<String> isbns = invocation.getArgument(1);
+            return inventory.getAvailableBooks().stream()
+                    .filter(inventoryItem -> isbns.contains(inventoryItem.getBook().getIsbn()))
+                    .collect(Collectors.toList());
+        });
     }
     
     /**
@@ -119,7 +157,7 @@ class CheckoutControllerTest {
     
 
     /**
-     * Test method to ensure that the confirmOrder() method shows the correct page and deletes shopping cart repo
+     * Test method to ensure that the confirmOrder() method places the order and shows the correct page
      * @author Waheeb Hashmi
      */
     @Test
@@ -132,18 +170,17 @@ class CheckoutControllerTest {
         HttpServletRequest request = new MockHttpServletRequest();
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
-        String view = controller.confirmOrder(request, response, model);
+        when(orderService.confirm(bookUser.getId(), shoppingCart, "token-1")).thenReturn(new BookOrder("token-1", bookUser.getId(), null));
+        String view = controller.confirmOrder(request, response, "token-1", model);
 
-        // Verify that the shopping cart is checked out
-        verify(shoppingCart).checkout();
+        // Verify that the order is placed with the number handed out with the form
+        verify(orderService).confirm(bookUser.getId(), shoppingCart, "token-1");
 
         Assertions.assertEquals("order-confirmation", view);
-        Assertions.assertTrue(model.containsAttribute("confirmationNumber"));
-
-        verify(shoppingCartRepository).save(shoppingCart);
-        // verify(shoppingCartItemRepository).saveAll(shoppingCart.getBooksInCart());
-        verify(inventoryRepository).save(inventoryRepository.findById(1));
+        Assertions.assertEquals("token-1", model.getAttribute("confirmationNumber"));
 
+        // nothing left to order, e.g. an empty cart
+        Assertions.assertEquals("redirect:/checkout", controller.confirmOrder(request, response, "token-2", new ConcurrentModel()));
     }
 
     /**
@@ -197,6 +234,21 @@ class CheckoutControllerTest {
         Assertions.assertTrue(model.containsAttribute("totalPrice"));
     }
 
+    /**
+     * Let the mocked stock take every copy asked for, making the change in memory and recording the copies taken
+     * @author Maisha Abdullah
+     */
+    private void takeAnyStock() {
+        when(inventoryStock.takeAll(anyList(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            List<InventoryItem> items = invocation.getArgument(0);
+            Predicate<InventoryItem> change = invocation.getArgument(2);
+            Consumer<List<InventoryItem>> record = invocation.getArgument(3);
+            List<InventoryItem> taken = items.stream().filter(change).collect(Collectors.toList());
+            record.accept(taken);
+            return taken;
+        });
+    }
+
     /**
      * Test method to add to cart
      * @author Maisha Abdullah
@@ -224,10 +276,11 @@ class CheckoutControllerTest {
         bookUser.setShoppingCart(shoppingCart);
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        when(inventoryItemRepository.findById(1)).thenReturn(invItem1);
+        when(inventoryItemRepository.findAllById(List.of(1L))).thenReturn(List.of(invItem1));
+        takeAnyStock();
 
         String[] selectedItems = new String[]{"1"};
-        String view = controller.addToCart(request, response, selectedItems, model);
+        String view = controller.addToCart(request, response, selectedItems, false, model);
 
         model.addAttribute("items", shoppingCart.getBooksInCart());
         model.addAttribute("quantity", inventory.findAvailableBook("0446310786").getQuantity());
@@ -236,9 +289,80 @@ class CheckoutControllerTest {
         Assertions.assertEquals(shoppingCart.getBooksInCart(), model.getAttribute("items"));
         Assertions.assertEquals(inventory.findAvailableBook("0446310786").getQuantity(), model.getAttribute("quantity"));
 
-        verify(inventoryItemRepository).save(invItem1);
-        verify(shoppingCartRepository).save(shoppingCart);
-        verify(shoppingCartItemRepository).saveAll(shoppingCart.getBooksInCart());
+        Assertions.assertEquals(2, shoppingCart.getTotalQuantityOfCart());
+        verify(inventoryStock).takeAll(anyList(), anyInt(), any(), any());
+        // stored with the stock, the cart is written behind
+        verify(cartReservations).store(any(), eq(List.of("0446310786")), eq(1));
+        verify(cartStore).update(eq(shoppingCart), any());
+        verify(shoppingCartRepository, Mockito.never()).save(any());
+    }
+
+    /**
+     * Test method to add to cart when taking the stock fails, the copies reserved are released again
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testAddToCartReleasesReservationWhenTakeFails() {
+        when(userController.getUserAccess()).thenReturn(true);
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+
+        Model model = new ConcurrentModel();
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+
+        InventoryItem invItem1 = new InventoryItem(book1, 5, inventory);
+        invItem1.setId(1L);
+        ShoppingCart shoppingCart = new ShoppingCart(inventory);
+
+        BookUser bookUser = new BookUser("testUser", "password123");
+        bookUser.setShoppingCart(shoppingCart);
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+
+        when(inventoryItemRepository.findAllById(List.of(1L))).thenReturn(List.of(invItem1));
+        when(inventoryStock.takeAll(anyList(), anyInt(), any(), any())).thenThrow(new CannotAcquireLockException("stock is busy"));
+
+        String[] selectedItems = new String[]{"1"};
+        Assertions.assertThrows(CannotAcquireLockException.class,
+                () -> controller.addToCart(request, response, selectedItems, false, model));
+
+        int stock = inventory.findAvailableBook("0446310786").getQuantity();
+        Assertions.assertEquals(stock, stockLedger.available("0446310786"));
+        Assertions.assertEquals(0, shoppingCart.getTotalQuantityOfCart());
+        verify(cartReservations, Mockito.never()).hold(any(), any(), anyInt());
+    }
+
+    /**
+     * Test method to add to cart from the checkout page, where the selected items are the isbns of cart lines
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testAddToCartFromCheckout() {
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+
+        Model model = new ConcurrentModel();
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+
+        ShoppingCart shoppingCart = new ShoppingCart(inventory);
+        shoppingCart.addToCart(book1, 1);
+        ShoppingCartItem cartItem = shoppingCart.getBooksInCart().get(0);
+
+        BookUser bookUser = new BookUser("testUser", "password123");
+        bookUser.setShoppingCart(shoppingCart);
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+        takeAnyStock();
+
+        // a line added since the cart was last written has no id yet
+        String view = controller.addToCart(request, response, new String[]{"0446310786"}, true, model);
+
+        Assertions.assertEquals("redirect:/checkout", view);
+        Assertions.assertEquals(2, cartItem.getQuantity());
+        verify(inventoryItemRepository, Mockito.never()).findAllById(any());
+        verify(shoppingCartItemRepository, Mockito.never()).findAllById(any());
+        verify(cartTotalEvents).publish(shoppingCart.getId(), 2);
+
+        // another user's request without the flag still reads inventory item ids
+        Assertions.assertEquals("redirect:/listAvailableBooks", controller.addToCart(request, response, null, false, model));
     }
 
     /**
@@ -270,10 +394,10 @@ class CheckoutControllerTest {
         bookUser.setShoppingCart(shoppingCart);
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        when(inventoryItemRepository.findById(1)).thenReturn(invItem1);
+        when(inventoryItemRepository.findAllById(List.of(1L))).thenReturn(List.of(invItem1));
 
         String[] selectedItems = new String[]{"1"};
-        String view = controller.removeFromCart(request, response, selectedItems, model);
+        String view = controller.removeFromCart(request, response, selectedItems, false, model);
 
         model.addAttribute("items", shoppingCart.getBooksInCart());
         model.addAttribute("quantity", inventory.findAvailableBook("0446310786").getQuantity());
@@ -282,9 +406,9 @@ class CheckoutControllerTest {
         Assertions.assertEquals(shoppingCart.getBooksInCart(), model.getAttribute("items"));
         Assertions.assertEquals(inventory.findAvailableBook("0446310786").getQuantity(), model.getAttribute("quantity"));
 
-        verify(inventoryItemRepository).save(invItem1);
-        verify(shoppingCartRepository).save(shoppingCart);
-        verify(shoppingCartItemRepository).saveAll(shoppingCart.getBooksInCart());
+        verify(inventoryStock).putBackAll(anyList(), anyInt(), any(), any());
+        verify(cartStore).update(eq(shoppingCart), any());
+        verify(shoppingCartRepository, Mockito.never()).save(any());
     }
 
     /**
@@ -294,31 +418,57 @@ class CheckoutControllerTest {
     @Test
     void testGetRecommendedBooks(){
         long userId = 1;
-        long otherUserId = 2; 
-        ShoppingCart shoppingCart = new ShoppingCart(inventory);
-        shoppingCart.addToCart(book1, 1);
-        BookUser mockUser = new BookUser("testUser", "password123");
-        mockUser.setId(userId); 
-        mockUser.setShoppingCart(shoppingCart);
-    
-        ShoppingCart otherUserCart = new ShoppingCart(inventory);
-        otherUserCart.addToCart(book2, 1); 
-        BookUser otherUser = new BookUser("otherUser", "password123");
-        otherUser.setId(otherUserId);
-        otherUser.setShoppingCart(otherUserCart);
-    
-        Mockito.when(userRepository.findById(userId)).thenReturn(mockUser);
-        Mockito.when(userRepository.findById(otherUserId)).thenReturn(otherUser);
-        Mockito.when(userRepository.findAll()).thenReturn(Arrays.asList(mockUser, otherUser));
-        mockUser.getShoppingCart().checkout();
-        otherUser.getShoppingCart().checkout();
+        long otherUserId = 2;
+        Mockito.when(orderLineRepository.findBooksBoughtBy(userId)).thenReturn(List.of(book1));
+        Mockito.when(orderLineRepository.findPurchasesOfBuyersOf(Set.of(book1.getIsbn()))).thenReturn(Arrays.asList(
+                new Object[]{userId, book1},
+                new Object[]{otherUserId, book1},
+                new Object[]{otherUserId, book2}));
         ArrayList<Book> recommendedBooks = controller.recommendBooks(userId);
-    
+
         Assertions.assertEquals(1, recommendedBooks.size());
         Assertions.assertTrue(recommendedBooks.contains(book2));
-    
+
+        // nothing bought yet, no other purchases are read
+        Assertions.assertTrue(controller.recommendBooks(otherUserId + 1).isEmpty());
+        verify(orderLineRepository, Mockito.times(1)).findPurchasesOfBuyersOf(any());
     }
-    
+
+    /**
+     * Test recommended books - worked out once, then again after an order of a user sharing a book
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testRecommendationsRefreshedAfterOrder(){
+        BookUser bookUser = new BookUser(1L, "testUser", "password123");
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+        when(orderLineRepository.findBooksBoughtBy(1L)).thenReturn(List.of(book1));
+        when(orderLineRepository.findPurchasesOfBuyersOf(Set.of(book1.getIsbn()))).thenReturn(Arrays.asList(
+                new Object[]{1L, book1},
+                new Object[]{2L, book1}));
+
+        Model model = new ConcurrentModel();
+        controller.addToCartForm(request, response, model);
+        controller.addToCartForm(request, response, model);
+        Assertions.assertEquals(List.of(), model.getAttribute("books"));
+        verify(orderLineRepository, Mockito.times(1)).findPurchasesOfBuyersOf(any());
+        verify(orderService).afterEachOrder(eq("recommendations"), any());
+
+        // the other user orders the kite runner, which changes what the first user is recommended
+        when(orderLineRepository.findBooksBoughtBy(2L)).thenReturn(List.of(book1, book2));
+        when(orderLineRepository.findBuyersOf(Set.of(book1.getIsbn(), book2.getIsbn()))).thenReturn(List.of(1L, 2L));
+        when(orderLineRepository.findPurchasesOfBuyersOf(Set.of(book1.getIsbn()))).thenReturn(Arrays.asList(
+                new Object[]{1L, book1},
+                new Object[]{2L, book1},
+                new Object[]{2L, book2}));
+        controller.refreshRecommendations(new BookOrder("token-1", 2L, null));
+
+        controller.addToCartForm(request, response, model);
+        Assertions.assertEquals(List.of(book2), model.getAttribute("books"));
+    }
+
      /**
      * Test method to get books in cart by userid
      * @author Waheeb Hashmi
@@ -326,31 +476,12 @@ class CheckoutControllerTest {
     @Test
     void testGetBooksByUserId(){
         long userId = 1;
-        long otherUserId = 2; 
-        ShoppingCart shoppingCart = new ShoppingCart(inventory);
-        shoppingCart.addToCart(book1, 1);
-        BookUser mockUser = new BookUser("testUser", "password123");
-        mockUser.setId(userId); 
-        mockUser.setShoppingCart(shoppingCart);
-    
-        ShoppingCart otherUserCart = new ShoppingCart(inventory);
-        otherUserCart.addToCart(book2, 1); 
-        BookUser otherUser = new BookUser("otherUser", "password123");
-        otherUser.setId(otherUserId);
-        otherUser.setShoppingCart(otherUserCart);
-    
-        Mockito.when(userRepository.findById(userId)).thenReturn(mockUser);
-        Mockito.when(userRepository.findById(otherUserId)).thenReturn(otherUser);
-        Mockito.when(userRepository.findAll()).thenReturn(Arrays.asList(mockUser, otherUser));
-        mockUser.getShoppingCart().checkout();
+        Mockito.when(orderLineRepository.findBooksBoughtBy(userId)).thenReturn(List.of(book1));
 
         Set<Book> recommendedBooks = controller.getBooksInCartByUserId(userId);
-    
-        Assertions.assertEquals(1, recommendedBooks.size()); 
-        Assertions.assertFalse(recommendedBooks.contains(book2)); 
-    
-    
+
+        Assertions.assertEquals(1, recommendedBooks.size());
+        Assertions.assertFalse(recommendedBooks.contains(book2));
     }
-    
-   
-}
\ No newline at end of file
+
+}
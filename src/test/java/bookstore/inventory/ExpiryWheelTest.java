@@ -0,0 +1,53 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ExpiryWheel Tests
+ * @author Maisha Abdullah
+ */
+public class ExpiryWheelTest {
+
+    @Test
+    public void testExpiresInDeadlineOrder(){
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(8, 1000, 0);
+        wheel.schedule("soon", 1500);
+        wheel.schedule("later", 3000);
+        wheel.schedule("next turn", 9500); // same slot as "soon", one turn further
+        ExpiryWheel.Entry<String> cancelled = wheel.schedule("cancelled", 2000);
+        assertEquals(4, wheel.size());
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(3, wheel.size());
+
+        assertEquals(List.of(), wheel.advance(1000));
+        assertEquals(List.of("soon"), wheel.advance(2000));
+        assertEquals(List.of("later"), wheel.advance(5000));
+        assertEquals(List.of(), wheel.advance(9000));
+        assertEquals(List.of("next turn"), wheel.advance(9999));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCatchesUpAfterLongPause(){
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(4, 1000, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 6000);
+        wheel.schedule("c", 60_000);
+
+        // more than a whole turn went by, everything due comes out at once
+        assertEquals(List.of("a", "b"), wheel.advance(20_000).stream().sorted().toList());
+
+        // a deadline already passed still comes out on the next tick
+        wheel.schedule("late", 1000);
+        assertEquals(List.of("late"), wheel.advance(21_000));
+        assertEquals(1, wheel.size());
+    }
+}
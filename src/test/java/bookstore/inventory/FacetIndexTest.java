@@ -0,0 +1,140 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FacetIndex Tests
+ * @author Maisha Abdullah
+ */
+public class FacetIndexTest {
+
+    private InventoryItem item1;
+    private InventoryItem item2;
+    private InventoryItem item3;
+    private List<InventoryItem> items;
+
+    private FilterPlan plan(List<String> authors, List<String> genres, List<String> publishers, double maxPrice){
+        return FilterPlan.compile(authors, genres, publishers, maxPrice);
+    }
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        item1 = new InventoryItem(new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960", "", "Grand Central Publishing", "Classical", ""), 5);
+        item3 = new InventoryItem(new Book("978-0-06-240985-0", "Go Set a Watchman", author_list, 14.99, "14/07/2015", "", "Harper Collins", "Historical fiction", ""), 2);
+
+        ArrayList<Author> author_list2 = new ArrayList<>();
+        author_list2.add(new Author("Khaled", "Hosseini"));
+        item2 = new InventoryItem(new Book("1573222453", "The Kite Runner", author_list2, 22.98, "29/05/2003", "", "Riverhead Books", "Historical fiction", ""), 10);
+
+        items = List.of(item1, item2, item3);
+    }
+
+    @Test
+    public void testOrWithinAndAcrossFacets(){
+        FacetIndex index = new FacetIndex(items);
+
+        assertEquals(items, index.filter(items, plan(null, null, null, Double.MAX_VALUE)));
+        assertEquals(List.of(item1, item3), index.filter(items, plan(List.of("Harper Lee"), null, null, Double.MAX_VALUE)));
+        assertEquals(List.of(item2, item3), index.filter(items, plan(null, List.of("Historical fiction"), null, Double.MAX_VALUE)));
+        assertEquals(List.of(item3), index.filter(items, plan(List.of("Harper Lee"), List.of("Historical fiction"), null, Double.MAX_VALUE)));
+        assertEquals(List.of(item1, item2), index.filter(items, plan(null, null, List.of("Riverhead Books", "Grand Central Publishing"), Double.MAX_VALUE)));
+        assertEquals(List.of(item3, item2), index.filter(List.of(item3, item2, item1), plan(null, List.of("Historical fiction"), null, Double.MAX_VALUE)));
+        assertEquals(List.of(item1, item3), index.filter(items, plan(null, null, null, 14.99)));
+        assertEquals(List.of(), index.filter(items, plan(List.of(), null, null, Double.MAX_VALUE)));
+        assertEquals(List.of(), index.filter(items, plan(List.of("Jane Austen"), null, null, Double.MAX_VALUE)));
+
+        // parallel mode keeps the same items in the same order
+        FilterPlan historical = plan(null, List.of("Historical fiction"), null, Double.MAX_VALUE);
+        assertEquals(index.filter(List.of(item3, item2, item1), historical), index.filter(List.of(item3, item2, item1), historical.runInParallel(true)));
+    }
+
+    @Test
+    public void testIndexFollowsChanges(){
+        FacetIndex index = new FacetIndex(List.of(item1, item2));
+
+        // another copy of an indexed book is found by its isbn, a book that isn't indexed is left out
+        InventoryItem copy1 = new InventoryItem(item1.getBook(), 1);
+        assertEquals(List.of(copy1), index.filter(List.of(copy1, item3), plan(List.of("Harper Lee"), null, null, Double.MAX_VALUE)));
+        assertEquals(Map.of("Harper Lee", 1), index.count(List.of(copy1, item3), plan(null, null, null, Double.MAX_VALUE)).getAuthors());
+
+        FacetIndex changed = index.withAdded(item3).withRemoved(item1);
+        assertEquals(2, changed.size());
+        assertEquals(List.of(item3), changed.filter(List.of(item2, item3), plan(null, null, List.of("Harper Collins"), Double.MAX_VALUE)));
+
+        // the index it was made from is left as it was
+        assertEquals(2, index.size());
+        assertEquals(List.of(item1), index.filter(List.of(item1, item2), plan(List.of("Harper Lee"), null, null, Double.MAX_VALUE)));
+
+        InventoryItem classical = new InventoryItem(new Book(item3.getBook().getIsbn(), "Go Set a Watchman", new ArrayList<>(item3.getBook().getAuthor()), 14.99, "14/07/2015", "", "Harper Collins", "Classical", ""), 2);
+        changed = changed.withReplaced(item3, classical);
+        assertEquals(List.of(), changed.filter(List.of(item2, classical), plan(null, List.of("Historical fiction"), List.of("Harper Collins"), Double.MAX_VALUE)));
+        assertEquals(List.of(classical), changed.filter(List.of(item2, classical), plan(null, List.of("Classical"), null, Double.MAX_VALUE)));
+
+        item2.getBook().setPrice(9.99);
+        changed = changed.withReplaced(item2, item2);
+        assertEquals(List.of(item2), changed.filter(List.of(item2, classical), plan(null, null, null, 14.98)));
+        assertEquals(List.of(item2, classical), changed.filter(List.of(item2, classical), plan(null, null, null, 14.99)));
+    }
+
+    @Test
+    public void testChangesCountedAndCompacted(){
+        FacetIndex index = new FacetIndex(List.of(item1, item2));
+        assertFalse(index.needsCompaction());
+
+        // counted from the values the books had when they changed, the removed one not at all
+        item2.getBook().setPrice(9.99);
+        FacetIndex changed = index.withAdded(item3).withReplaced(item2, item2).withRemoved(item1);
+        FacetCounts counts = changed.count(List.of(item1, item2, item3), plan(null, List.of("Historical fiction"), null, 14.99));
+        assertEquals(Map.of("Harper Lee", 1, "Khaled Hosseini", 1), counts.getAuthors());
+        assertEquals(Map.of("Historical fiction", 2), counts.getGenres());
+        assertEquals(9.99, counts.getMinPrice());
+        assertEquals(14.99, counts.getMaxPrice());
+
+        // a book added after the bitmaps were built is simply forgotten again
+        assertEquals(1, changed.withRemoved(item3).size());
+        assertEquals(List.of(item2), changed.withRemoved(item3).filter(List.of(item2, item3), plan(null, null, null, Double.MAX_VALUE)));
+
+        // every change copies the earlier ones, so the owner is told to rebuild once there are many
+        for (int i = 0; i < 64; i++) {
+            changed = changed.withReplaced(item2, item2);
+            changed = changed.withAdded(new InventoryItem(new Book("isbn-" + i, "Title", new ArrayList<>(), 1.00, "", "", "", "", ""), 1));
+        }
+        assertTrue(changed.needsCompaction());
+    }
+
+    @Test
+    public void testCountsLeaveOwnFacetOut(){
+        // the indexed items and other copies of them are counted the same
+        List<InventoryItem> copies = List.of(new InventoryItem(item1.getBook(), 1), new InventoryItem(item2.getBook(), 1), new InventoryItem(item3.getBook(), 1));
+        FacetIndex indexed = new FacetIndex(items);
+        for (List<InventoryItem> counted : List.of(items, copies)) {
+            FacetCounts counts = indexed.count(counted, plan(null, List.of("Historical fiction"), null, 20.00));
+            assertEquals(Map.of("Harper Lee", 1, "Khaled Hosseini", 0), counts.getAuthors());
+            assertEquals(Map.of("Classical", 1, "Historical fiction", 1), counts.getGenres());
+            assertEquals(Map.of("Grand Central Publishing", 0, "Harper Collins", 1, "Riverhead Books", 0), counts.getPublishers());
+            assertEquals(14.99, counts.getMinPrice());
+            assertEquals(22.98, counts.getMaxPrice());
+        }
+
+        FacetCounts searched = new FacetIndex(items).count(List.of(item2), plan(null, null, null, Double.MAX_VALUE));
+        assertEquals(Map.of("Khaled Hosseini", 1), searched.getAuthors());
+        assertEquals(22.98, searched.getMinPrice());
+        assertEquals(22.98, searched.getMaxPrice());
+
+        FacetCounts none = new FacetIndex(items).count(List.of(), plan(null, null, null, Double.MAX_VALUE));
+        assertEquals(Map.of(), none.getGenres());
+        assertNull(none.getMaxPrice());
+    }
+}
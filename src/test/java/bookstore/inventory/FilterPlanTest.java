@@ -0,0 +1,47 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FilterPlan Tests
+ * @author Maisha Abdullah
+ */
+public class FilterPlanTest {
+
+    @Test
+    public void testMatches(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Jane", "Austen"));
+        author_list.add(new Author("Vivien", "Jones"));
+        Book book = new Book("9780141439518", "Pride and Prejudice", author_list, 12.00, "28/01/1813", "", "Penguin Classics", "Historical fiction", "");
+
+        assertTrue(FilterPlan.compile(null, null, null, Double.MAX_VALUE).matches(book));
+        assertTrue(FilterPlan.compile(List.of("Vivien Jones"), List.of("Historical fiction"), List.of("Penguin Classics"), 12.00).matches(book));
+        assertFalse(FilterPlan.compile(null, null, null, 11.99).matches(book));
+        assertFalse(FilterPlan.compile(null, List.of("Classical"), null, Double.MAX_VALUE).matches(book));
+        assertFalse(FilterPlan.compile(null, null, List.of("Harper Collins"), Double.MAX_VALUE).matches(book));
+        assertFalse(FilterPlan.compile(List.of("Harper Lee"), null, null, Double.MAX_VALUE).matches(book));
+        assertFalse(FilterPlan.compile(List.of(), null, null, Double.MAX_VALUE).matches(book));
+
+        // a book missing its genre is filtered out rather than failing
+        book.setGenre(null);
+        assertFalse(FilterPlan.compile(null, List.of("Classical"), null, Double.MAX_VALUE).matches(book));
+    }
+
+    @Test
+    public void testParallelSwitch(){
+        FilterPlan plan = FilterPlan.compile(null, null, null, Double.MAX_VALUE);
+        assertFalse(plan.isParallel());
+        assertSame(plan, plan.runInParallel(false));
+        assertTrue(plan.runInParallel(true).isParallel());
+        assertNull(plan.runInParallel(true).getAuthors());
+    }
+}
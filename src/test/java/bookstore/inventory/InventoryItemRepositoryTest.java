@@ -0,0 +1,175 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * InventoryItemRepository Tests, run against the sample inventory loaded on startup
+ * @author Maisha Abdullah
+ */
+@SpringBootTest
+public class InventoryItemRepositoryTest {
+
+    private static final List<String> ANY = List.of("");
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private InventoryStock inventoryStock;
+
+    @Test
+    public void testStockStatements(){
+        InventoryItem item = inventoryItemRepository.findAll().iterator().next();
+        int quantity = item.getQuantity();
+
+        assertFalse(inventoryStock.take(item, quantity + 1, () -> true));
+        assertTrue(inventoryStock.take(item, 1, () -> true));
+        InventoryItem stored = inventoryItemRepository.findById((long) item.getId());
+        assertEquals(quantity - 1, stored.getQuantity());
+        assertEquals(item.getVersion() + 1, stored.getVersion());
+
+        // a save based on the quantity read before the statement is refused instead of overwriting it
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> inventoryItemRepository.save(item));
+
+        assertFalse(inventoryStock.putBack(stored, 1, () -> false));
+        assertTrue(inventoryStock.putBack(stored, 1, () -> true));
+        assertEquals(quantity, inventoryItemRepository.findById((long) item.getId()).getQuantity());
+    }
+
+    @Test
+    public void testStockBatches(){
+        InventoryItem item = inventoryItemRepository.findAll().iterator().next();
+        int quantity = item.getQuantity();
+
+        // one batch, the second copy is turned down in memory and put back
+        boolean[] first = {true};
+        List<InventoryItem> taken = inventoryStock.takeAll(List.of(item, item), 1, inventoryItem -> {
+            boolean accept = first[0];
+            first[0] = false;
+            return accept;
+        });
+        assertEquals(1, taken.size());
+        assertEquals(quantity - 1, inventoryItemRepository.findById((long) item.getId()).getQuantity());
+
+        assertEquals(List.of(), inventoryStock.takeAll(List.of(item), quantity, inventoryItem -> true));
+        assertEquals(1, inventoryStock.putBackAll(List.of(item), 1, inventoryItem -> true).size());
+        assertEquals(quantity, inventoryItemRepository.findById((long) item.getId()).getQuantity());
+    }
+
+    @Test
+    public void testStockStatementsByIsbn(){
+        InventoryItem item = inventoryItemRepository.findAll().iterator().next();
+        String isbn = item.getBook().getIsbn();
+        int quantity = item.getQuantity();
+
+        assertFalse(inventoryStock.putBack(CatalogIndex.INVENTORY_ID, "not an isbn", 1, () -> true));
+        assertFalse(inventoryStock.putBack(CatalogIndex.INVENTORY_ID, isbn, 1, () -> false));
+        assertEquals(quantity, inventoryItemRepository.findById((long) item.getId()).getQuantity());
+
+        assertTrue(inventoryStock.putBack(CatalogIndex.INVENTORY_ID, isbn, 2, () -> true));
+        InventoryItem stored = inventoryItemRepository.findStored(CatalogIndex.INVENTORY_ID, isbn);
+        assertEquals(quantity + 2, stored.getQuantity());
+        assertTrue(stored.getVersion() > item.getVersion());
+
+        assertTrue(inventoryStock.take(stored, 2, () -> true));
+        assertEquals(quantity, inventoryItemRepository.findById((long) item.getId()).getQuantity());
+    }
+
+    private List<String> titles(Slice<InventoryItem> page){
+        return page.getContent().stream().map(item -> item.getBook().getTitle()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSortedPages(){
+        Long inventoryId = inventoryRepository.findById(1).getId();
+
+        Page<InventoryItem> firstPage = inventoryItemRepository.sortByPriceAsc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(0, 3));
+        assertEquals(List.of("Pride and Prejudice", "To Kill a Mockingbird", "Go Set a Watchman"), titles(firstPage));
+        assertEquals(4, firstPage.getTotalElements());
+        assertEquals(2, firstPage.getTotalPages());
+
+        Page<InventoryItem> secondPage = inventoryItemRepository.sortByPriceAsc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(1, 3));
+        assertEquals(List.of("The Kite Runner"), titles(secondPage));
+
+        Page<InventoryItem> highToLow = inventoryItemRepository.sortByPriceDesc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(0, 2));
+        assertEquals(List.of("The Kite Runner", "Go Set a Watchman"), titles(highToLow));
+
+        Page<InventoryItem> alphabetical = inventoryItemRepository.sortByTitleAsc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(0, 2));
+        assertEquals(List.of("Go Set a Watchman", "Pride and Prejudice"), titles(alphabetical));
+    }
+
+    @Test
+    public void testFilteredPages(){
+        Long inventoryId = inventoryRepository.findById(1).getId();
+
+        Page<InventoryItem> byAuthor = inventoryItemRepository.sortByPriceAsc(inventoryId, false, List.of("Harper Lee"), true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(0, 10));
+        assertEquals(List.of("To Kill a Mockingbird", "Go Set a Watchman"), titles(byAuthor));
+
+        Page<InventoryItem> byGenreAndPrice = inventoryItemRepository.sortByTitleAsc(inventoryId, true, ANY, false, List.of("Historical fiction"), true, ANY, 15.0, PageRequest.of(0, 10));
+        assertEquals(List.of("Go Set a Watchman", "Pride and Prejudice"), titles(byGenreAndPrice));
+
+        Page<InventoryItem> byPublisher = inventoryItemRepository.sortByPriceDesc(inventoryId, true, ANY, true, ANY, false, List.of("Riverhead Books", "Penguin Classics"), Double.MAX_VALUE, PageRequest.of(0, 10));
+        assertEquals(List.of("The Kite Runner", "Pride and Prejudice"), titles(byPublisher));
+    }
+
+    @Test
+    public void testSeekPages(){
+        Long inventoryId = inventoryRepository.findById(1).getId();
+
+        // walk the whole price order one book at a time, always resuming from the last book
+        List<String> walked = new ArrayList<>();
+        Slice<InventoryItem> slice = inventoryItemRepository.sortByPriceAsc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, PageRequest.of(0, 1));
+        walked.addAll(titles(slice));
+        while (slice.hasNext()) {
+            Book last = slice.getContent().get(0).getBook();
+            slice = inventoryItemRepository.seekByPriceAsc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, last.getPrice(), last.getIsbn(), PageRequest.of(0, 1));
+            walked.addAll(titles(slice));
+        }
+        assertEquals(List.of("Pride and Prejudice", "To Kill a Mockingbird", "Go Set a Watchman", "The Kite Runner"), walked);
+
+        Slice<InventoryItem> highToLow = inventoryItemRepository.seekByPriceDesc(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE, 14.99, "978-0-06-240985-0", PageRequest.of(0, 10));
+        assertEquals(List.of("To Kill a Mockingbird", "Pride and Prejudice"), titles(highToLow));
+        assertFalse(highToLow.hasNext());
+
+        Slice<InventoryItem> alphabetical = inventoryItemRepository.seekByTitleAsc(inventoryId, false, List.of("Harper Lee", "Khaled Hosseini"), true, ANY, true, ANY, Double.MAX_VALUE, "Go Set a Watchman", "978-0-06-240985-0", PageRequest.of(0, 10));
+        assertEquals(List.of("The Kite Runner", "To Kill a Mockingbird"), titles(alphabetical));
+    }
+
+    @Test
+    public void testFilterValues(){
+        Long inventoryId = inventoryRepository.findById(1).getId();
+
+        FacetCounts all = inventoryItemRepository.countFacets(inventoryId, true, ANY, true, ANY, true, ANY, Double.MAX_VALUE);
+        assertEquals(Map.of("Harper Lee", 2, "Jane Austen", 1, "Khaled Hosseini", 1, "Vivien Jones", 1), all.getAuthors());
+        assertEquals(List.of("Harper Lee", "Jane Austen", "Khaled Hosseini", "Vivien Jones"), new ArrayList<>(all.getAuthors().keySet()));
+        assertEquals(Map.of("Classical", 1, "Historical fiction", 3), all.getGenres());
+        assertEquals(4, all.getPublishers().size());
+        assertEquals(12.00, all.getMinPrice());
+        assertEquals(22.00, all.getMaxPrice());
+
+        // each facet is counted within the other selections and the price, but not its own
+        FacetCounts historical = inventoryItemRepository.countFacets(inventoryId, true, ANY, false, List.of("Historical fiction"), true, ANY, 15.00);
+        assertEquals(Map.of("Harper Lee", 1, "Jane Austen", 1, "Khaled Hosseini", 0, "Vivien Jones", 1), historical.getAuthors());
+        assertEquals(Map.of("Classical", 1, "Historical fiction", 2), historical.getGenres());
+        assertEquals(Map.of("Grand Central Publishing", 0, "Harper Collins", 1, "Penguin Classics", 1, "Riverhead Books", 0), historical.getPublishers());
+        assertEquals(12.00, historical.getMinPrice());
+        assertEquals(22.00, historical.getMaxPrice());
+    }
+}
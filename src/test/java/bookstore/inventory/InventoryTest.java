@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
@@ -123,4 +124,24 @@ public class InventoryTest {
 
         assertEquals(15, inventory.getAvailableBooks().get(0).getQuantity());
     }
+
+    @Test
+    public void testIsbnLookupFollowsChanges(){
+        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
+        Inventory inventory = new Inventory(availableBooks);
+        inventory.addItemToInventory(item1);
+        assertEquals(item1, inventory.findAvailableBook("0446310786"));
+        assertNull(inventory.findAvailableBook("1573222453"));
+
+        // filled in directly, the way JPA loads it
+        availableBooks.add(item2);
+        assertEquals(item2, inventory.findAvailableBook("1573222453"));
+
+        assertTrue(inventory.reduceFromInventory(book1, 5));
+        assertNull(inventory.findAvailableBook("0446310786"));
+        assertFalse(inventory.putBackIntoInventory(book1, 1));
+
+        assertTrue(inventory.putBackIntoInventory(book2, 1));
+        assertEquals(11, inventory.findAvailableBook("1573222453").getQuantity());
+    }
 }
@@ -0,0 +1,42 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * ListingCursor Tests
+ * @author Maisha Abdullah
+ */
+public class ListingCursorTest {
+
+    private InventoryItem item(String title, double price){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        return new InventoryItem(new Book("0446310786", title, author_list, price, "11/07/1960"), 5);
+    }
+
+    @Test
+    public void testRoundTrip(){
+        String priceCursor = ListingCursor.after(SortCriteria.HIGH_TO_LOW.label, item("To Kill a Mockingbird", 12.99)).encode();
+        ListingCursor decoded = ListingCursor.decode(priceCursor, SortCriteria.HIGH_TO_LOW.label);
+        assertEquals(12.99, decoded.getPrice());
+        assertEquals("0446310786", decoded.getIsbn());
+
+        // titles can hold anything, including characters that need escaping in a URL
+        String titleCursor = ListingCursor.after(SortCriteria.ALPHABETICAL.label, item("Mockingbird? A & B / C", 12.99)).encode();
+        assertEquals("Mockingbird? A & B / C", ListingCursor.decode(titleCursor, SortCriteria.ALPHABETICAL.label).getTitle());
+    }
+
+    @Test
+    public void testRejectedCursors(){
+        String priceCursor = ListingCursor.after(SortCriteria.LOW_TO_HIGH.label, item("To Kill a Mockingbird", 12.99)).encode();
+
+        assertNull(ListingCursor.decode(priceCursor, SortCriteria.ALPHABETICAL.label));
+        assertNull(ListingCursor.decode("not a cursor!", SortCriteria.LOW_TO_HIGH.label));
+        assertNull(ListingCursor.decode("", SortCriteria.LOW_TO_HIGH.label));
+    }
+}
@@ -0,0 +1,64 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OrderLineRepository Tests, run against the sample books loaded on startup
+ * @author Maisha Abdullah
+ */
+@SpringBootTest
+public class OrderLineRepositoryTest {
+
+    @Autowired
+    private OrderLineRepository orderLineRepository;
+    @Autowired
+    private BookOrderRepository bookOrderRepository;
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Test
+    public void testPurchasesOfUsers(){
+        Book book1 = bookRepository.findByIsbn("0446310786");
+        Book book2 = bookRepository.findByIsbn("9780141439518");
+
+        BookOrder first = new BookOrder("history-1", 901L, LocalDateTime.now());
+        first.addLine(book1, 2);
+        bookOrderRepository.save(first);
+        BookOrder second = new BookOrder("history-2", 901L, LocalDateTime.now());
+        second.addLine(book1, 1);
+        second.addLine(book2, 1);
+        bookOrderRepository.save(second);
+        BookOrder other = new BookOrder("history-3", 902L, LocalDateTime.now());
+        other.addLine(book2, 1);
+        bookOrderRepository.save(other);
+
+        // a book bought twice is listed once
+        List<Book> bought = orderLineRepository.findBooksBoughtBy(901L);
+        assertEquals(Set.of("0446310786", "9780141439518"), bought.stream().map(Book::getIsbn).collect(Collectors.toSet()));
+        assertEquals(2, bought.size());
+        assertTrue(orderLineRepository.findBooksBoughtBy(903L).isEmpty());
+
+        // everything bought by the buyers of a book, not only that book
+        Set<String> purchases = orderLineRepository.findPurchasesOfBuyersOf(Set.of("9780141439518")).stream()
+                .filter(purchase -> ((Long) purchase[0]) > 900L)
+                .map(purchase -> purchase[0] + ":" + ((Book) purchase[1]).getIsbn())
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("901:0446310786", "901:9780141439518", "902:9780141439518"), purchases);
+
+        purchases = orderLineRepository.findPurchasesOfBuyersOf(Set.of("0446310786")).stream()
+                .filter(purchase -> ((Long) purchase[0]) > 900L)
+                .map(purchase -> purchase[0] + ":" + ((Book) purchase[1]).getIsbn())
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("901:0446310786", "901:9780141439518"), purchases);
+    }
+}
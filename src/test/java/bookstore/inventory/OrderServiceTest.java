@@ -0,0 +1,106 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * OrderService Tests
+ * @author Maisha Abdullah
+ */
+public class OrderServiceTest {
+
+    private Book book1;
+    private InventoryItem item1;
+    private ShoppingCart storedCart;
+    private CartStore cartStore;
+    private OrderFollowUps orderFollowUps;
+    private OrderService orderService;
+
+    @BeforeEach
+    public void setUp(){
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        book1 = new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960", "", "Grand Central Publishing", "Classical", "");
+
+        Inventory inventory = new Inventory(new ArrayList<>());
+        item1 = new InventoryItem(book1, 5);
+        inventory.addItemToInventory(item1);
+        storedCart = new ShoppingCart(inventory);
+        storedCart.setId(7L);
+
+        ShoppingCartRepository shoppingCartRepository = mock(ShoppingCartRepository.class);
+        when(shoppingCartRepository.findById(7L)).thenReturn(storedCart);
+        cartStore = new CartStore(shoppingCartRepository, mock(ShoppingCartItemRepository.class), mock(PlatformTransactionManager.class), Duration.ofSeconds(2));
+
+        // orders kept by user and confirmation number, like the unique constraint
+        Map<String, BookOrder> orders = new HashMap<>();
+        BookOrderRepository bookOrderRepository = mock(BookOrderRepository.class);
+        when(bookOrderRepository.findByUserIdAndConfirmationNumber(any(), anyString()))
+                .thenAnswer(invocation -> orders.get(invocation.getArgument(0) + ":" + invocation.getArgument(1)));
+        when(bookOrderRepository.save(any())).thenAnswer(invocation -> {
+            BookOrder order = invocation.getArgument(0);
+            orders.put(order.getUserId() + ":" + order.getConfirmationNumber(), order);
+            return order;
+        });
+        orderFollowUps = mock(OrderFollowUps.class);
+        orderService = new OrderService(bookOrderRepository, cartStore, orderFollowUps, mock(CartHoldRepository.class));
+    }
+
+    @Test
+    public void testSubmittedTwiceOrdersOnce(){
+        cartStore.update(storedCart, cart -> cart.addToCart(item1, 2));
+
+        BookOrder order = orderService.confirm(1L, storedCart, "token-1");
+        assertEquals("token-1", order.getConfirmationNumber());
+        assertEquals(1, order.getLines().size());
+        assertEquals(2, order.getLines().get(0).getQuantity());
+        assertEquals(2 * 1299, order.getTotalCents());
+        assertEquals(0, cartStore.cartOf(storedCart).getTotalQuantityOfCart());
+
+        // the same form again, after something new went into the cart
+        cartStore.update(storedCart, cart -> cart.addToCart(item1, 1));
+        assertSame(order, orderService.confirm(1L, storedCart, "token-1"));
+        assertEquals(1, cartStore.cartOf(storedCart).getTotalQuantityOfCart());
+        verify(orderFollowUps, times(1)).orderPlaced(any());
+    }
+
+    @Test
+    public void testConfirmationNumberOfAnotherUser(){
+        cartStore.update(storedCart, cart -> cart.addToCart(item1, 2));
+        BookOrder order = orderService.confirm(1L, storedCart, "token-1");
+
+        // another user sending the same number places their own order instead of getting the first one back
+        ShoppingCart otherCart = new ShoppingCart(new Inventory(new ArrayList<>()));
+        otherCart.setId(8L);
+        cartStore.update(otherCart, cart -> cart.addToCart(item1, 1));
+        BookOrder otherOrder = orderService.confirm(2L, otherCart, "token-1");
+        assertNotSame(order, otherOrder);
+        assertEquals(2L, otherOrder.getUserId());
+        assertEquals(1, otherOrder.getLines().get(0).getQuantity());
+        assertEquals(0, cartStore.cartOf(otherCart).getTotalQuantityOfCart());
+        verify(orderFollowUps, times(2)).orderPlaced(any());
+    }
+
+    @Test
+    public void testEmptyCartPlacesNoOrder(){
+        assertNull(orderService.confirm(1L, storedCart, "token-1"));
+        verify(orderFollowUps, times(0)).orderPlaced(any());
+    }
+}
@@ -0,0 +1,61 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OrdinalBitmap Tests
+ * @author Maisha Abdullah
+ */
+public class OrdinalBitmapTest {
+
+    @Test
+    public void testSparseAndDenseChunks(){
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        BitSet expected = new BitSet();
+
+        // a few ordinals in a far chunk, and enough in the first chunk to switch it to a bitmap
+        for (int ordinal = 200_000; ordinal < 200_010; ordinal++) {
+            bitmap.add(ordinal);
+            expected.set(ordinal);
+        }
+        for (int ordinal = 0; ordinal < 20_000; ordinal += 3) {
+            bitmap.add(ordinal);
+            expected.set(ordinal);
+        }
+        bitmap.add(3); // already there
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+
+        bitmap.remove(3);
+        expected.clear(3);
+        bitmap.remove(200_005);
+        expected.clear(200_005);
+        bitmap.remove(1); // never there
+
+        assertFalse(bitmap.contains(3));
+        assertTrue(bitmap.contains(6));
+        assertTrue(bitmap.contains(200_009));
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+
+        long[] words = new long[(200_010 + 63) / 64];
+        bitmap.orInto(words);
+        assertEquals(expected, BitSet.valueOf(words));
+    }
+
+    @Test
+    public void testOrIntoShorterBitmap(){
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        bitmap.add(5);
+        bitmap.add(70_000);
+
+        // ordinals past the end of the target are left out
+        long[] words = new long[1];
+        bitmap.orInto(words);
+        assertEquals(1L << 5, words[0]);
+    }
+}
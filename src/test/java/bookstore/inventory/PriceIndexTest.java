@@ -0,0 +1,61 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * PriceIndex Tests
+ * @author Maisha Abdullah
+ */
+public class PriceIndexTest {
+
+    private BitSet atMost(PriceIndex index, long maxCents){
+        long[] words = new long[4];
+        index.orAtMost(maxCents, words);
+        return BitSet.valueOf(words);
+    }
+
+    @Test
+    public void testPriceBoundsAndCap(){
+        PriceIndex empty = new PriceIndex(new long[0], 0);
+        assertNull(empty.lowest());
+        assertNull(empty.highest());
+        assertEquals(new BitSet(), atMost(empty, Long.MAX_VALUE));
+
+        // several items at the same price
+        long[] centsByOrdinal = new long[20];
+        for (int ordinal = 0; ordinal < 20; ordinal++) {
+            centsByOrdinal[ordinal] = 1000 + (ordinal % 5) * 100;
+        }
+        PriceIndex index = new PriceIndex(centsByOrdinal, 20);
+        assertEquals(20, index.size());
+        assertEquals(1000, index.lowest());
+        assertEquals(1400, index.highest());
+
+        BitSet expected = new BitSet();
+        for (int ordinal = 0; ordinal < 20; ordinal++) {
+            if (ordinal % 5 <= 1) {
+                expected.set(ordinal);
+            }
+        }
+        assertEquals(expected, atMost(index, 1199));
+        assertEquals(new BitSet(), atMost(index, 999));
+        assertEquals(20, atMost(index, Long.MAX_VALUE).cardinality());
+        assertEquals(1299, PriceIndex.toCents(12.99));
+    }
+
+    @Test
+    public void testBuiltFromPrefix(){
+        // only the first size ordinals are indexed
+        long[] centsByOrdinal = {1400, 1000, 1200, 1000, 1300, 900};
+        PriceIndex index = new PriceIndex(centsByOrdinal, 5);
+        assertEquals(5, index.size());
+        assertEquals(1000, index.lowest());
+        assertEquals(1400, index.highest());
+        assertEquals(BitSet.valueOf(new long[]{0b01110}), atMost(index, 1299));
+    }
+}
@@ -2,13 +2,14 @@ package bookstore.inventory;
 
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class InventorySearchTest {
+public class SearchIndexTest {
     private Book book1;
     private Book book2;
     private InventoryItem item1;
@@ -35,23 +36,15 @@ public class InventorySearchTest {
 
 
     /**
-     * Test empty book search
+     * Test empty book search - nothing to look up, every book matches
      * @author Thanuja Sivaananthan
      */
     @Test
     public void testEmptySearchBook(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        List<InventoryItem> searchedBooks;
-        Inventory inventory = new Inventory(availableBooks);
+        assertEquals(0, new SearchIndex(List.of()).search("").size());
 
-        searchedBooks = inventory.getBooksMatchingSearch("");
-        assertEquals(inventory.getAvailableBooks(), searchedBooks);
-
-        availableBooks.add(item1);
-        availableBooks.add(item2);
-
-        searchedBooks = inventory.getBooksMatchingSearch("");
-        assertEquals(inventory.getAvailableBooks(), searchedBooks);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
+        assertEquals(2, index.search("").size());
     }
 
     /**
@@ -60,13 +53,9 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookNoResults(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
-
-        availableBooks.add(item1);
-        availableBooks.add(item2);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("invalid");
+        List<InventoryItem> searchedBooks = index.search("invalid");
         assertEquals(0, searchedBooks.size());
     }
 
@@ -76,13 +65,9 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookByTitle(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        availableBooks.add(item1);
-        availableBooks.add(item2);
-
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("kite");
+        List<InventoryItem> searchedBooks = index.search("kite");
         assertEquals(1, searchedBooks.size());
         assertEquals(item2, searchedBooks.get(0));
     }
@@ -93,13 +78,9 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookByAuthor(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
-
-        availableBooks.add(item1);
-        availableBooks.add(item2);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("harper");
+        List<InventoryItem> searchedBooks = index.search("harper");
         assertEquals(1, searchedBooks.size());
         assertEquals(item1, searchedBooks.get(0));
     }
@@ -110,13 +91,9 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookByDescription(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        availableBooks.add(item1);
-        availableBooks.add(item2);
-
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("amir");
+        List<InventoryItem> searchedBooks = index.search("amir");
         assertEquals(1, searchedBooks.size());
         assertEquals(item2, searchedBooks.get(0));
     }
@@ -127,13 +104,9 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookOrder1(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
-
-        availableBooks.add(item1);
-        availableBooks.add(item2);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("to");
+        List<InventoryItem> searchedBooks = index.search("to");
         assertEquals(2, searchedBooks.size());
         assertEquals(item1, searchedBooks.get(0));
         assertEquals(item2, searchedBooks.get(1));
@@ -145,15 +118,67 @@ public class InventorySearchTest {
      */
     @Test
     public void testSearchBookOrder2(){
-        ArrayList<InventoryItem> availableBooks = new ArrayList<>();
-        Inventory inventory = new Inventory(availableBooks);
-
-        availableBooks.add(item1);
-        availableBooks.add(item2);
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
 
-        List<InventoryItem> searchedBooks = inventory.getBooksMatchingSearch("the");
+        List<InventoryItem> searchedBooks = index.search("the");
         assertEquals(2, searchedBooks.size());
         assertEquals(item2, searchedBooks.get(0));
         assertEquals(item1, searchedBooks.get(1));
     }
+
+    /**
+     * Test book search - text inside a word and across words still matches
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchBookSubstring(){
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
+
+        List<InventoryItem> searchedBooks = index.search("ngbir");
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item1, searchedBooks.get(0));
+
+        searchedBooks = index.search("KITE RUN");
+        assertEquals(1, searchedBooks.size());
+        assertEquals(item2, searchedBooks.get(0));
+
+        searchedBooks = index.search("runner kite");
+        assertEquals(0, searchedBooks.size());
+    }
+
+    /**
+     * Test book search - index follows books added and removed
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchBookAfterInventoryChange(){
+        SearchIndex index = new SearchIndex(List.of(item1));
+
+        assertEquals(0, index.search("kite").size());
+
+        index.add(item2);
+        assertEquals(1, index.search("kite").size());
+
+        assertTrue(index.remove(book2.getIsbn()));
+        assertEquals(0, index.search("kite").size());
+        assertEquals(1, index.search("harper").size());
+    }
+
+    /**
+     * Test book search - edited book details are searchable without rebuilding
+     * @author Maisha Abdullah
+     */
+    @Test
+    public void testSearchBookAfterEdit(){
+        SearchIndex index = new SearchIndex(List.of(item1, item2));
+        assertEquals(1, index.search("kite").size());
+
+        Book editedBook = new Book(book2.getIsbn(), "A Thousand Splendid Suns", new ArrayList<>(book2.getAuthor()), 22.00, "22/05/2007", book2.getCover(), book2.getPublisher(), book2.getGenre(), "Mariam and Laila");
+        assertTrue(index.update(new InventoryItem(editedBook, 10)));
+
+        assertEquals(0, index.search("kite").size());
+        List<InventoryItem> searchedBooks = index.search("splendid");
+        assertEquals(1, searchedBooks.size());
+        assertEquals(editedBook, searchedBooks.get(0).getBook());
+    }
 }
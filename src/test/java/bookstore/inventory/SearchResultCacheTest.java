@@ -0,0 +1,131 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * SearchResultCache Tests
+ * @author Maisha Abdullah
+ */
+public class SearchResultCacheTest {
+
+    private SearchResultCache.Result result(String isbn){
+        List<String> isbns = new ArrayList<>();
+        isbns.add(isbn);
+        return new SearchResultCache.Result(CatalogVersion.current(), 0, isbns, null,
+                new FacetCounts(new HashMap<>(), new HashMap<>(), new HashMap<>(), 12.99, 12.99), false, false);
+    }
+
+    @Test
+    public void testEquivalentSearchesShareKey(){
+        List<String> authors = new ArrayList<>();
+        authors.add("Harper Lee");
+        authors.add("Khaled Hosseini");
+        List<String> reordered = new ArrayList<>();
+        reordered.add("Khaled Hosseini");
+        reordered.add("Harper Lee");
+
+        assertEquals(SearchResultCache.key(1L, "Kite  Runner", "low_to_high", authors, null, null, null),
+                SearchResultCache.key(1L, " kite runner", "low_to_high", reordered, null, null, null));
+        assertNotEquals(SearchResultCache.key(1L, "kite", "low_to_high", authors, null, null, null),
+                SearchResultCache.key(1L, "kite", "low_to_high", null, authors, null, null));
+        assertNotEquals(SearchResultCache.key(1L, "kite", "low_to_high", null, null, null, null),
+                SearchResultCache.key(1L, "kite", "high_to_low", null, null, null, null));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted(){
+        SearchResultCache cache = new SearchResultCache(4); // two results of one book each
+        cache.put("a", result("0446310786"));
+        cache.put("b", result("1573222453"));
+        cache.get("a");
+        cache.put("c", result("978-0-06-240985-0"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("978-0-06-240985-0", cache.get("c").getIsbns().get(0));
+    }
+
+    @Test
+    public void testBoundedByIsbnsHeld(){
+        SearchResultCache cache = new SearchResultCache(8);
+        cache.put("a", result("0446310786"));
+        cache.put("b", result("1573222453"));
+        assertEquals(4, cache.weight());
+
+        List<String> isbns = List.of("0446310786", "1573222453", "978-0-06-240985-0", "9780141439518", "9780141439549");
+        cache.put("broad", new SearchResultCache.Result(CatalogVersion.current(), 0, isbns, null,
+                new FacetCounts(new HashMap<>(), new HashMap<>(), new HashMap<>(), 12.99, 22.00), false, false));
+
+        // the broad result only fits once both narrow ones are dropped
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.weight());
+        assertNotNull(cache.get("broad"));
+
+        List<String> twice = new ArrayList<>(isbns);
+        twice.addAll(isbns);
+        cache.put("too broad", new SearchResultCache.Result(CatalogVersion.current(), 0, twice, null,
+                new FacetCounts(new HashMap<>(), new HashMap<>(), new HashMap<>(), 12.99, 22.00), false, false));
+        assertNull(cache.get("too broad"));
+        assertNotNull(cache.get("broad"));
+    }
+
+    @Test
+    public void testCatalogChangeInvalidates(){
+        SearchResultCache cache = new SearchResultCache(4);
+        cache.put("a", result("0446310786"));
+        assertNotNull(cache.get("a"));
+
+        ArrayList<Author> author_list = new ArrayList<>();
+        author_list.add(new Author("Harper", "Lee"));
+        Inventory inventory = new Inventory(new ArrayList<>());
+        inventory.addItemToInventory(new InventoryItem(new Book("0446310786", "To Kill a Mockingbird", author_list, 12.99, "11/07/1960"), 1));
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBookChangeDropsDependentResults(){
+        SearchResultCache cache = new SearchResultCache(100);
+        FacetCounts counts = new FacetCounts(new HashMap<>(), new HashMap<>(), new HashMap<>(), 12.99, 12.99);
+        // a search depends on every match, sold out ones too, browsing on every book
+        cache.put("kite", new SearchResultCache.Result(CatalogVersion.current(), 0, List.of("1573222453"), List.of("1573222453", "9780141439518"), counts, false, false));
+        cache.put("harper", new SearchResultCache.Result(CatalogVersion.current(), 0, List.of("0446310786"), List.of("0446310786"), counts, false, false));
+        cache.put("browse", result("0446310786"));
+        assertEquals(3, cache.size());
+
+        cache.invalidate("9780141439518");
+        assertNull(cache.get("kite"));
+        assertNull(cache.get("browse"));
+        assertNotNull(cache.get("harper"));
+        assertEquals(3, cache.weight());
+
+        // worked out before a book changed, so it may be stale and isn't kept
+        cache.put("kite", new SearchResultCache.Result(CatalogVersion.current(), 0, List.of("1573222453"), List.of("1573222453"), counts, false, false));
+        assertNull(cache.get("kite"));
+        cache.put("kite", new SearchResultCache.Result(CatalogVersion.current(), cache.invalidations(), List.of("1573222453"), List.of("1573222453"), counts, false, false));
+        assertNotNull(cache.get("kite"));
+        assertEquals(6, cache.weight());
+    }
+
+    @Test
+    public void testPlansSharedByFilters(){
+        SearchResultCache cache = new SearchResultCache(4);
+        String filters = SearchResultCache.filterKey(List.of("Harper Lee"), null, null, "15.00");
+        FilterPlan plan = cache.plan(filters, () -> FilterPlan.compile(List.of("Harper Lee"), null, null, 15.00));
+
+        assertSame(plan, cache.plan(SearchResultCache.filterKey(List.of("Harper Lee"), null, null, " 15.00"), () -> null));
+        assertNotEquals(filters, SearchResultCache.filterKey(null, List.of("Harper Lee"), null, "15.00"));
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -132,6 +134,71 @@ public class ShoppingCartTest {
         assertEquals(22.00, shoppingCart.getTotalPrice(), PRICE_DELTA);
     }
 
+    @Test
+    public void testFindCartItem(){
+        ShoppingCart shoppingCart = new ShoppingCart(inventory);
+        assertNull(shoppingCart.findCartItem(book1.getIsbn()));
+
+        shoppingCart.addToCart(book1, 2);
+        shoppingCart.addToCart(book2, 1);
+        assertEquals(2, shoppingCart.findCartItem(book1.getIsbn()).getQuantity());
+
+        shoppingCart.removeFromCart(book2, 1);
+        assertNull(shoppingCart.findCartItem(book2.getIsbn()));
+
+        // lines put in the list directly, as JPA does on load, are found too
+        ShoppingCart loadedCart = new ShoppingCart(inventory);
+        loadedCart.getBooksInCart().add(new ShoppingCartItem(book2, 3, loadedCart));
+        assertEquals(3, loadedCart.findCartItem(book2.getIsbn()).getQuantity());
+    }
+
+    @Test
+    public void testLinesKeepCartOrder(){
+        ShoppingCart shoppingCart = new ShoppingCart(inventory);
+        shoppingCart.addToCart(book1, 1);
+        shoppingCart.addToCart(book2, 1);
+
+        // the emptied line leaves the list, a book added again goes last
+        assertTrue(shoppingCart.removeFromCart(book1, 1));
+        assertEquals(List.of(book2), booksOf(shoppingCart));
+        assertTrue(shoppingCart.addToCart(book1, 2));
+        assertEquals(List.of(book2, book1), booksOf(shoppingCart));
+
+        ShoppingCart copy = new ShoppingCart(shoppingCart);
+        assertTrue(copy.removeFromCart(book2, 1));
+        List<ShoppingCartItem> emptied = shoppingCart.copyLinesFrom(copy);
+        assertEquals(1, emptied.size());
+        assertEquals(0, emptied.get(0).getQuantity());
+        assertEquals(List.of(book1), booksOf(shoppingCart));
+        assertEquals(2, shoppingCart.findCartItem(book1.getIsbn()).getQuantity());
+    }
+
+    private List<Book> booksOf(ShoppingCart shoppingCart){
+        return shoppingCart.getBooksInCart().stream().map(ShoppingCartItem::getBook).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTotalsInCents(){
+        ShoppingCart shoppingCart = new ShoppingCart(inventory);
+
+        // ten copies at 12.99 add up to exactly 12990 cents, no rounding drift
+        for (int i = 0; i < 10; i++) {
+            assertTrue(shoppingCart.addToCart(book1, 1));
+        }
+        assertTrue(shoppingCart.addToCart(book2, 2));
+        assertEquals(12990, shoppingCart.getBooksInCart().get(0).getLineTotalCents());
+        assertEquals(12990 + 4400, shoppingCart.getTotalCents());
+        assertEquals(12, shoppingCart.getTotalQuantityOfCart());
+
+        assertTrue(shoppingCart.removeFromCart(book2, 2));
+        assertEquals(12990, shoppingCart.getTotalCents());
+        assertEquals(10, shoppingCart.getTotalQuantityOfCart());
+
+        shoppingCart.checkout();
+        assertEquals(0, shoppingCart.getTotalCents());
+        assertEquals(0, shoppingCart.getTotalQuantityOfCart());
+    }
+
     @Test
     public void testCheckout(){
         ShoppingCart shoppingCart = new ShoppingCart(inventory);
@@ -11,12 +11,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.ui.Model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 /**
@@ -34,6 +37,10 @@ public class SortFilterTest {
     private InventoryRepository inventoryRepository;
     @Mock
     private BookRepository bookRepository;
+    @Mock
+    private OrderService orderService;
+    @Spy
+    private CatalogIndex catalogIndex = new CatalogIndex(mock(InventoryItemRepository.class));
     private Book book1;
     private Book book2;
     private Book book3;
@@ -79,6 +86,7 @@ public class SortFilterTest {
         bookRepository.save(book2);
         bookRepository.save(book3);
         inventoryRepository.save(inventory);
+        catalogIndex.rebuild(inventory.getAvailableBooks());
     }
 
     /**
@@ -134,24 +142,27 @@ public class SortFilterTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
-        Assertions.assertEquals(inventory.getAvailableBooks(), model.getAttribute("inventoryItems"));
+        Assertions.assertEquals(List.of(item1, item3, item2), model.getAttribute("inventoryItems"));
 
         //Test high_to_low
         filter_option = SortCriteria.HIGH_TO_LOW.label;
-        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
-        Assertions.assertEquals(inventory.getAvailableBooks(), model.getAttribute("inventoryItems"));
+        Assertions.assertEquals(List.of(item2, item3, item1), model.getAttribute("inventoryItems"));
 
         //Test alphabetical
         filter_option = SortCriteria.ALPHABETICAL.label;
-        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
-        Assertions.assertEquals(inventory.getAvailableBooks(), model.getAttribute("inventoryItems"));
+        Assertions.assertEquals(List.of(item3, item2, item1), model.getAttribute("inventoryItems"));
+
+        //sorting must not reorder the inventory itself
+        Assertions.assertEquals(List.of(item1, item2, item3), inventory.getAvailableBooks());
     }
 
     /**
@@ -178,7 +189,7 @@ public class SortFilterTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response, "", filter_option, authorList, defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, "", filter_option, authorList, defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         //hardcode expected value
         ArrayList<InventoryItem> expected = new ArrayList<>();
@@ -192,7 +203,7 @@ public class SortFilterTest {
         List<String> genreList = new ArrayList<>();
         genreList.add(book2.getGenre());
 
-        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), genreList, defaultFilters.get(2), null, model);
+        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), genreList, defaultFilters.get(2), null, 0, 20, null, model);
 
         //hardcode expected value
         expected = new ArrayList<>();
@@ -206,7 +217,7 @@ public class SortFilterTest {
         List<String> publisherList = new ArrayList<>();
         publisherList.add(book3.getPublisher());
 
-        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), publisherList, null, model);
+        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1), publisherList, null, 0, 20, null, model);
 
         //hardcode expected value
         expected = new ArrayList<>();
@@ -218,7 +229,7 @@ public class SortFilterTest {
         //Change filters for price
         String mid_price = String.valueOf(book3.getPrice());
 
-        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1),  defaultFilters.get(2), mid_price, model);
+        view = controller.listAvailableBooks(request, response, "", filter_option, defaultFilters.get(0), defaultFilters.get(1),  defaultFilters.get(2), mid_price, 0, 20, null, model);
 
         //hardcode expected value
         expected = new ArrayList<>();
@@ -254,7 +265,7 @@ public class SortFilterTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response,"", filter_option, defaultFilters.get(0), genreList, defaultFilters.get(2), mid_price, model);
+        String view = controller.listAvailableBooks(request, response,"", filter_option, defaultFilters.get(0), genreList, defaultFilters.get(2), mid_price, 0, 20, null, model);
 
         //hardcode expected value
         ArrayList<InventoryItem> expected = new ArrayList<>();
@@ -291,7 +302,7 @@ public class SortFilterTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response,"", filter_option, authorList, defaultFilters.get(0), publisherList, min_price, model);
+        String view = controller.listAvailableBooks(request, response,"", filter_option, authorList, defaultFilters.get(0), publisherList, min_price, 0, 20, null, model);
 
         //expecting no books to show up
         ArrayList<InventoryItem> expected = new ArrayList<>();
@@ -299,4 +310,46 @@ public class SortFilterTest {
         Assertions.assertEquals("home", view);
         Assertions.assertEquals(expected, model.getAttribute("inventoryItems"));
     }
+
+    /**
+     * Test searching more books than a plain search lists, the sort order and filters still see every match
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testSearchBeyondListedMatches(){
+        // title matches rank above the one description match, which is also the cheapest book
+        List<InventoryItem> items = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            Book book = new Book("kite-" + i, "Kite Flying " + i, new ArrayList<>(book2.getAuthor()), 30.00 + i, "01/01/2000", book2.getCover(), book2.getPublisher(), book2.getGenre(), "A book");
+            items.add(new InventoryItem(book, 1));
+        }
+        Book cheapBook = new Book("kite-cheap", "Windy Days", new ArrayList<>(book1.getAuthor()), 1.99, "01/01/2000", book1.getCover(), book1.getPublisher(), "Poetry", "Flying a kite");
+        InventoryItem cheapItem = new InventoryItem(cheapBook, 1);
+        items.add(cheapItem);
+        catalogIndex.rebuild(items);
+
+        when(userController.getUserAccess()).thenReturn(true);
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+        BookUser bookUser = new BookUser("testUser", "password123");
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+
+        // cheapest first finds the book ranked last
+        Model model = new ConcurrentModel();
+        controller.listAvailableBooks(request, response, "kite", SortCriteria.LOW_TO_HIGH.label, null, null, null, null, 0, 20, null, model);
+        Assertions.assertEquals(cheapItem, ((List<?>) model.getAttribute("inventoryItems")).get(0));
+        Assertions.assertEquals(56, model.getAttribute("totalPages"));
+
+        // its genre is counted and can be picked in relevance order
+        Assertions.assertEquals(1, ((Map<?, ?>) model.getAttribute("genres")).get("Poetry"));
+        model = new ConcurrentModel();
+        controller.listAvailableBooks(request, response, "kite", SortCriteria.RELEVANCE.label, null, List.of("Poetry"), null, null, 0, 20, null, model);
+        Assertions.assertEquals(List.of(cheapItem), model.getAttribute("inventoryItems"));
+
+        // a plain search only lists the best matches
+        model = new ConcurrentModel();
+        controller.listAvailableBooks(request, response, "kite", SortCriteria.RELEVANCE.label, null, null, null, null, 0, 20, null, model);
+        Assertions.assertEquals(50, model.getAttribute("totalPages"));
+    }
 }
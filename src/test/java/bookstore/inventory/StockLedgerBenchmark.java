@@ -0,0 +1,86 @@
+package bookstore.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark for StockLedger, not run with the tests. Every thread reserves and puts back copies,
+ * once all on the same book (worst case, one hot counter) and once spread over many books, for 1 thread up to
+ * the number of cores, and prints the throughput of each run.
+ * Run after mvn -B test-compile with: java -cp target/classes:target/test-classes bookstore.inventory.StockLedgerBenchmark
+ * @author Maisha Abdullah
+ */
+public class StockLedgerBenchmark {
+
+    private static final long RUN_MILLIS = 1000;
+    private static final int BOOKS = 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-8s %-10s %15s%n", "threads", "books", "ops/s");
+        for (int books : new int[]{1, BOOKS}) {
+            run(1, books); // warm up
+            // doubling up to the number of cores, which is always the last run
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                System.out.printf("%-8d %-10d %,15d%n", threads, books, run(threads, books));
+                if (threads == cores) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hammer a ledger with reserve and release calls
+     * @param threads number of threads
+     * @param books number of books the threads spread over
+     * @return reserve and release calls per second, all threads together
+     * @author Maisha Abdullah
+     */
+    private static long run(int threads, int books) throws InterruptedException {
+        StockLedger ledger = new StockLedger();
+        String[] isbns = new String[books];
+        for (int i = 0; i < books; i++) {
+            isbns[i] = "isbn-" + i;
+            ledger.reserve(isbns[i], 1, () -> 1_000_001); // start counting every book
+        }
+
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                int next = offset;
+                while (System.nanoTime() < deadline[0]) {
+                    for (int i = 0; i < 1000; i++) {
+                        String isbn = isbns[next++ % books];
+                        if (ledger.reserve(isbn, 1, () -> 0)) {
+                            ledger.release(isbn, 1);
+                        }
+                    }
+                    done += 2000;
+                }
+                operations.add(done);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        deadline[0] = System.nanoTime() + RUN_MILLIS * 1_000_000;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1000 / RUN_MILLIS;
+    }
+}
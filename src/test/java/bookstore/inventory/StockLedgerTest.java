@@ -0,0 +1,119 @@
+package bookstore.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StockLedger Tests
+ * @author Maisha Abdullah
+ */
+public class StockLedgerTest {
+
+    @Test
+    public void testReserveAndRelease(){
+        StockLedger ledger = new StockLedger();
+        ledger.release("0446310786", 1); // not counted yet, nothing to add to
+        assertNull(ledger.available("0446310786"));
+
+        assertTrue(ledger.reserve("0446310786", 2, () -> 3));
+        assertTrue(ledger.reserve("0446310786", 1, () -> 100)); // stored stock isn't read while enough are left
+        assertEquals(0, ledger.available("0446310786"));
+        assertFalse(ledger.reserve("0446310786", 1, () -> 0));
+        assertFalse(ledger.reserve("0446310786", 0, () -> 100));
+
+        ledger.release("0446310786", 1);
+        assertEquals(1, ledger.available("0446310786"));
+
+        ledger.forget("0446310786");
+        assertTrue(ledger.reserve("0446310786", 5, () -> 5));
+    }
+
+    @Test
+    public void testRefusalReadsStoredStockAgain(){
+        StockLedger ledger = new StockLedger();
+        assertTrue(ledger.reserve("0446310786", 2, () -> 2));
+        assertEquals(0, ledger.available("0446310786"));
+
+        // two copies put back on another instance, this one never heard of them
+        assertTrue(ledger.reserve("0446310786", 1, () -> 2));
+        assertEquals(1, ledger.available("0446310786"));
+
+        // sold out for real, refused
+        assertFalse(ledger.reserve("0446310786", 2, () -> 1));
+        assertEquals(1, ledger.available("0446310786"));
+    }
+
+    @Test
+    public void testNoOversellUnderContention() throws Exception {
+        StockLedger ledger = new StockLedger();
+        int copies = 1000;
+        int threads = 8;
+        AtomicInteger stored = new AtomicInteger(copies);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Integer>> carts = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                carts.add(() -> {
+                    start.await();
+                    int taken = 0;
+                    for (int attempt = 0; attempt < copies; attempt++) {
+                        // a reservation then takes the copy from the stored stock with a conditional update
+                        if (ledger.reserve("1573222453", 1, stored::get)) {
+                            if (takeIfLeft(stored)) {
+                                taken++;
+                            } else {
+                                ledger.forget("1573222453");
+                            }
+                        }
+                    }
+                    return taken;
+                });
+            }
+            List<Future<Integer>> results = new ArrayList<>();
+            for (Callable<Integer> cart : carts) {
+                results.add(executor.submit(cart));
+            }
+            start.countDown();
+
+            int taken = 0;
+            for (Future<Integer> result : results) {
+                taken += result.get();
+            }
+            assertEquals(copies, taken);
+            assertEquals(0, stored.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Take a copy from the stored stock the way the conditional update does, only if one is left
+     * @param stored the stored stock
+     * @return if a copy was taken
+     * @author Maisha Abdullah
+     */
+    private static boolean takeIfLeft(AtomicInteger stored) {
+        int left;
+        do {
+            left = stored.get();
+            if (left == 0) {
+                return false;
+            }
+        } while (!stored.compareAndSet(left, left - 1));
+        return true;
+    }
+}
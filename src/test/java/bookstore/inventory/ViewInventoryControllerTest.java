@@ -11,6 +11,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.ui.Model;
@@ -20,6 +21,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 /**
@@ -42,6 +44,12 @@ public class ViewInventoryControllerTest {
     @Mock
     private BookRepository bookRepository;
 
+    @Mock
+    private OrderService orderService;
+
+    @Spy
+    private CatalogIndex catalogIndex = new CatalogIndex(mock(InventoryItemRepository.class));
+
     private Book book1;
     private Book book2;
     private Inventory inventory;
@@ -76,6 +84,7 @@ public class ViewInventoryControllerTest {
         bookRepository.save(book1);
         bookRepository.save(book2);
         inventoryRepository.save(inventory);
+        catalogIndex.rebuild(inventory.getAvailableBooks());
     }
 
     /**
@@ -133,7 +142,7 @@ public class ViewInventoryControllerTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
         Assertions.assertEquals(inventory.getAvailableBooks(), model.getAttribute("inventoryItems"));
@@ -157,7 +166,7 @@ public class ViewInventoryControllerTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(null);
 
-        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("access-denied", view);
     }
@@ -181,7 +190,7 @@ public class ViewInventoryControllerTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
         Assertions.assertEquals(inventory.getAvailableBooks(), model.getAttribute("inventoryItems"));
@@ -206,10 +215,63 @@ public class ViewInventoryControllerTest {
         HttpServletResponse response = new MockHttpServletResponse();
         when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
 
-        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, model);
+        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
 
         Assertions.assertEquals("home", view);
         Assertions.assertEquals(Collections.singletonList(inventory.getAvailableBooks().get(0)), model.getAttribute("inventoryItems"));
     }
 
+
+    /**
+     * Test method to view inventory with a misspelled search
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testViewAvailableBooksWithMisspelledSearch(){
+        String searchValue = "Hoseini";
+
+        List<List<String>> defaultFilters = getDefaultFilterValues();
+
+        when(userController.getUserAccess()).thenReturn(true);
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+
+        Model model = new ConcurrentModel();
+        BookUser bookUser = new BookUser("testUser", "password123");
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+
+        String view = controller.listAvailableBooks(request, response, searchValue, "low_to_high", defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
+
+        Assertions.assertEquals("home", view);
+        Assertions.assertEquals(Collections.singletonList(inventory.getAvailableBooks().get(1)), model.getAttribute("inventoryItems"));
+        Assertions.assertTrue(model.containsAttribute("searchNotice"));
+    }
+
+    /**
+     * Test method to view inventory with a search and no sort chosen, best match first
+     * @author Maisha Abdullah
+     */
+    @Test
+    void testViewAvailableBooksWithSearchByRelevance(){
+        String searchValue = "the";
+
+        List<List<String>> defaultFilters = getDefaultFilterValues();
+
+        when(userController.getUserAccess()).thenReturn(true);
+        when(inventoryRepository.findById(1)).thenReturn(inventory);
+
+        Model model = new ConcurrentModel();
+        BookUser bookUser = new BookUser("testUser", "password123");
+        HttpServletRequest request = new MockHttpServletRequest();
+        HttpServletResponse response = new MockHttpServletResponse();
+        when(userController.getLoggedInUser(request.getCookies())).thenReturn(bookUser);
+
+        String view = controller.listAvailableBooks(request, response, searchValue, null, defaultFilters.get(0), defaultFilters.get(1), defaultFilters.get(2), null, 0, 20, null, model);
+
+        // the title match of the kite runner ranks above the cheaper book's description match
+        Assertions.assertEquals("home", view);
+        Assertions.assertEquals(List.of(inventory.getAvailableBooks().get(1), inventory.getAvailableBooks().get(0)), model.getAttribute("inventoryItems"));
+        Assertions.assertEquals("relevance", model.getAttribute("sort"));
+    }
 }